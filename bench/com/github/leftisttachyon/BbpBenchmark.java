@@ -0,0 +1,61 @@
+package com.github.leftisttachyon;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks computing hex digits of pi with the BBP formula, one
+ * evaluation and one block at a time, far into pi. The time of an
+ * evaluation grows a little faster than its position, and shrinks with the
+ * number of cores.
+ *
+ * @author Jed Wang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+public class BbpBenchmark {
+
+    /**
+     * The position to compute digits at
+     */
+    @Param({"100000", "1000000"})
+    public long position;
+
+    /**
+     * The digits
+     */
+    private final BbpDigitSource source = new BbpDigitSource();
+
+    /**
+     * Computes one digit, with one evaluation
+     *
+     * @return the digit
+     */
+    @Benchmark
+    public int digit() {
+        return source.digitAt(position);
+    }
+
+    /**
+     * Computes the block of digits a BlockCache reads
+     *
+     * @return the digits
+     */
+    @Benchmark
+    public byte[] block() {
+        return source.copyRange(position, BbpDigitSource.BLOCK_SIZE);
+    }
+}
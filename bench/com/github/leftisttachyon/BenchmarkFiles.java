@@ -0,0 +1,86 @@
+package com.github.leftisttachyon;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Creates the digit files that the benchmarks run against
+ *
+ * @author Jed Wang
+ */
+final class BenchmarkFiles {
+
+    /**
+     * The directory the files are created in
+     */
+    private static final File DIR = new File(System.getProperty(
+            "java.io.tmpdir"), "pimemorization-bench");
+
+    /**
+     * Not instantiable
+     */
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * Returns an ASCII digit file with the given number of digits, creating
+     * it if needed. Files with more digits than pi.dat are padded with
+     * pseudo-random digits.
+     *
+     * @param digits the number of digits
+     * @return the digit file
+     * @throws IOException the standard IOException reasons
+     */
+    static File digitFile(int digits) throws IOException {
+        File file = new File(DIR, "digits-" + digits + ".dat");
+        if (file.isFile() && file.length() == digits) {
+            return file;
+        }
+
+        DIR.mkdirs();
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(file), 1 << 16);
+                InputStream pi = new FileInputStream(Main.PI_FILE)) {
+            int written = 0, c;
+            while (written < digits && (c = pi.read()) >= 0) {
+                if (c >= '0' && c <= '9') {
+                    out.write(c);
+                    written++;
+                }
+            }
+            Random random = new Random(314159);
+            for (; written < digits; written++) {
+                out.write('0' + random.nextInt(10));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Returns a packed digit source with the given number of digits
+     *
+     * @param digits the number of digits
+     * @return the digit source
+     * @throws IOException the standard IOException reasons
+     */
+    static DigitSource digitSource(int digits) throws IOException {
+        return PackedDigitSource.open(digitFile(digits));
+    }
+
+    /**
+     * Returns a dense digit source with the given number of digits
+     *
+     * @param digits the number of digits
+     * @return the digit source
+     * @throws IOException the standard IOException reasons
+     */
+    static DenseDigitSource denseSource(int digits) throws IOException {
+        return DenseDigitSource.open(digitFile(digits));
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.leftisttachyon;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading digits out of the dense format against the packed
+ * one, in bulk and one at a time. The bulk scores are in digits per
+ * microsecond, so 1000 is a billion digits a second.
+ *
+ * @author Jed Wang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DenseDecodeBenchmark {
+
+    /**
+     * The number of digits decoded by each bulk call
+     */
+    private static final int BLOCK = 1 << 20;
+
+    /**
+     * The digits, densely
+     */
+    private DenseDigitSource dense;
+
+    /**
+     * The digits, packed
+     */
+    private DigitSource packed;
+
+    /**
+     * Where decoded digits go
+     */
+    private byte[] out;
+
+    /**
+     * The position of the next single digit read
+     */
+    private long position;
+
+    /**
+     * Opens both copies of the digits.
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Setup
+    public void setUp() throws IOException {
+        dense = BenchmarkFiles.denseSource(10_000_000);
+        packed = BenchmarkFiles.digitSource(10_000_000);
+        out = new byte[BLOCK];
+    }
+
+    /**
+     * Decodes a block of dense digits
+     *
+     * @return the decoded digits
+     */
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public byte[] denseBlock() {
+        dense.decode(4_000_001, out, 0, BLOCK);
+        return out;
+    }
+
+    /**
+     * Copies a block of packed digits
+     *
+     * @return the copied digits
+     */
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public byte[] packedBlock() {
+        return packed.copyRange(4_000_001, BLOCK);
+    }
+
+    /**
+     * Reads one dense digit, striding through the file
+     *
+     * @return the digit
+     */
+    @Benchmark
+    public int denseDigit() {
+        position = (position + 7_919) % dense.length();
+        return dense.digitAt(position);
+    }
+
+    /**
+     * Reads one packed digit, striding through the file
+     *
+     * @return the digit
+     */
+    @Benchmark
+    public int packedDigit() {
+        position = (position + 7_919) % packed.length();
+        return packed.digitAt(position);
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.leftisttachyon;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks loading a digit file: the old String-building getPi(), packing
+ * a digit file, and mapping an already packed one.
+ *
+ * @author Jed Wang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DigitLoadBenchmark {
+
+    /**
+     * The number of digits in the file
+     */
+    @Param({"100000", "10000000"})
+    public int digits;
+
+    /**
+     * The ASCII digit file
+     */
+    private File ascii;
+
+    /**
+     * The packed digit file
+     */
+    private File packed;
+
+    /**
+     * Writes a digit file of the benchmarked size.
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ascii = BenchmarkFiles.digitFile(digits);
+        packed = new File(ascii.getPath() + PackedDigitSource.EXTENSION);
+        try (InputStream in = new FileInputStream(ascii)) {
+            PackedDigitSource.pack(in, packed);
+        }
+    }
+
+    /**
+     * Deletes the packed file
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        packed.delete();
+    }
+
+    /**
+     * The way getPi() used to load the digits: into a String on the heap
+     *
+     * @return the digits
+     * @throws IOException the standard IOException reasons
+     */
+    @Benchmark
+    public String readString() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        try (BufferedReader piIn = new BufferedReader(new FileReader(ascii))) {
+            String line;
+            while ((line = piIn.readLine()) != null) {
+                builder.append(line);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Packing a digit file, which getPi() does the first time it sees one
+     *
+     * @return the number of digits packed
+     * @throws IOException the standard IOException reasons
+     */
+    @Benchmark
+    public long pack() throws IOException {
+        File out = new File(packed.getPath() + ".bench");
+        try (InputStream in = new FileInputStream(ascii)) {
+            return PackedDigitSource.pack(in, out);
+        } finally {
+            out.delete();
+        }
+    }
+
+    /**
+     * Mapping an already packed file, which is what getPi() does normally
+     *
+     * @return the digit source
+     * @throws IOException the standard IOException reasons
+     */
+    @Benchmark
+    public DigitSource mapPacked() throws IOException {
+        return new PackedDigitSource(packed);
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.leftisttachyon;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks scanning a digit file for statistics, with nothing cached and
+ * with every block cached. The scores are in digits per microsecond, so
+ * 1000 is a billion digits a second.
+ *
+ * @author Jed Wang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DigitStatisticsBenchmark {
+
+    /**
+     * The number of digits scanned
+     */
+    private static final int DIGITS = 10_000_000;
+
+    /**
+     * The digits
+     */
+    private DigitSource source;
+
+    /**
+     * Statistics with every block cached
+     */
+    private DigitStatistics warm;
+
+    /**
+     * Opens the digits and caches every block once.
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Setup
+    public void setUp() throws IOException {
+        source = BenchmarkFiles.denseSource(DIGITS);
+        warm = new DigitStatistics();
+        warm.scan(source);
+    }
+
+    /**
+     * Scans every block
+     *
+     * @return the summary
+     */
+    @Benchmark
+    @OperationsPerInvocation(DIGITS)
+    public DigitStatistics.Summary cold() {
+        return new DigitStatistics().scan(source);
+    }
+
+    /**
+     * Merges the cached summaries of every block
+     *
+     * @return the summary
+     */
+    @Benchmark
+    @OperationsPerInvocation(DIGITS)
+    public DigitStatistics.Summary cached() {
+        return warm.scan(source);
+    }
+}
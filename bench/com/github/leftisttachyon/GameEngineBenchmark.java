@@ -0,0 +1,119 @@
+package com.github.leftisttachyon;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the rules of the game headlessly: whole explore sessions of
+ * simulated key presses pushed through a GameEngine with a listener
+ * attached. The scores are in keys per microsecond.
+ *
+ * @author Jed Wang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameEngineBenchmark {
+
+    /**
+     * The number of keys typed in each session
+     */
+    private static final int KEYS = 4096;
+
+    /**
+     * One in how many keys is wrong, or 0 for none
+     */
+    @Param({"0", "20"})
+    public int errorEvery;
+
+    /**
+     * Where in the digits the sessions start
+     */
+    private static final long START = 1_000_000;
+
+    /**
+     * The game
+     */
+    private GameEngine engine;
+
+    /**
+     * The keys typed in each session
+     */
+    private int[] keys;
+
+    /**
+     * When each key was typed
+     */
+    private long[] times;
+
+    /**
+     * The number of right keys the listener has seen
+     */
+    private long right;
+
+    /**
+     * Builds the game and the keys to type.
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Setup
+    public void setUp() throws IOException {
+        DigitSource pi = BenchmarkFiles.digitSource(10_000_000);
+        engine = new GameEngine(pi, 0);
+        engine.addListener(new GameEngine.Listener() {
+            @Override
+            public void keyJudged(GameEngine engine, long position, int key,
+                    boolean correct, long time, long delta) {
+                if (correct) {
+                    right++;
+                }
+            }
+        });
+
+        keys = new int[KEYS];
+        times = new long[KEYS];
+        long position = START;
+        for (int i = 0; i < KEYS; i++) {
+            char digit = pi.charAt(position);
+            if (errorEvery > 0 && i % errorEvery == errorEvery - 1) {
+                keys[i] = digit == '9' ? '0' : digit + 1;
+            } else {
+                keys[i] = digit;
+                position++;
+            }
+            times[i] = 1_000_000L * (i + 1);
+        }
+    }
+
+    /**
+     * Plays one explore session from the prompt back to the prompt
+     *
+     * @return the number of right keys seen so far
+     */
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public long session() {
+        engine.answer(true);
+        engine.explore(START);
+        engine.keys(keys, times, KEYS);
+        engine.key(KeyEvent.VK_PAUSE, times[KEYS - 1]);
+        engine.answer(true);
+        return right;
+    }
+}
@@ -0,0 +1,68 @@
+package com.github.leftisttachyon;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks handing key presses from the EDT to the game thread through a
+ * KeyPressQueue, with one producer and one consumer running at once.
+ *
+ * @author Jed Wang
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyHandoffBenchmark {
+
+    /**
+     * The queue being benchmarked
+     */
+    private final KeyPressQueue queue = new KeyPressQueue(1024);
+
+    /**
+     * The consumer's batch of key codes
+     */
+    private final int[] keys = new int[64];
+
+    /**
+     * The consumer's batch of press times
+     */
+    private final long[] times = new long[64];
+
+    /**
+     * Offers one press, the way a key action does
+     *
+     * @return whether the press fit
+     */
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean offer() {
+        return queue.offer('5', System.nanoTime());
+    }
+
+    /**
+     * Drains a batch of presses, the way startGame() does
+     *
+     * @return the number of presses drained
+     */
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public int poll() {
+        return queue.poll(keys, times);
+    }
+}
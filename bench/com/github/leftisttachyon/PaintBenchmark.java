@@ -0,0 +1,96 @@
+package com.github.leftisttachyon;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks DrawPanel.paint() with a steady number of live particles,
+ * rendered into an offscreen image.
+ *
+ * @author Jed Wang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+    /**
+     * The number of live particles
+     */
+    @Param({"10", "1000", "10000"})
+    public int particles;
+
+    /**
+     * The panel being painted
+     */
+    private DrawPanel panel;
+
+    /**
+     * The image that is painted into
+     */
+    private BufferedImage image;
+
+    /**
+     * The graphics of the image
+     */
+    private Graphics2D g2D;
+
+    /**
+     * The next digit to spawn
+     */
+    private int next = 0;
+
+    /**
+     * Creates the panel and the image.
+     */
+    @Setup
+    public void setUp() {
+        panel = new DrawPanel();
+        panel.setActiveRendering(false);
+        panel.setSize(500, 500);
+        panel.setDrawing(true);
+        image = new BufferedImage(500, 500, BufferedImage.TYPE_INT_RGB);
+        g2D = image.createGraphics();
+    }
+
+    /**
+     * Stops the panel.
+     */
+    @TearDown
+    public void tearDown() {
+        g2D.dispose();
+        panel.setDrawing(false);
+    }
+
+    /**
+     * Tops the particles back up and paints one frame
+     *
+     * @return the image
+     */
+    @Benchmark
+    public BufferedImage paint() {
+        for (int i = panel.getParticleCount(); i < particles; i++) {
+            panel.digitPressed((char) ('0' + next), System.nanoTime());
+            next = (next + 1) % 10;
+        }
+        panel.clearPresses();
+        panel.paint(g2D);
+        return image;
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks generating a digit file of pi, and the square root of 10005
+ * it needs, which is the size of two products of the digits. Pass
+ * -p digits=10000000 for the size of the largest files, which takes
+ * minutes per run.
+ *
+ * @author Jed Wang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class PiGeneratorBenchmark {
+
+    /**
+     * The number of digits to generate
+     */
+    @Param({"100000", "1000000"})
+    public int digits;
+
+    /**
+     * 10005 * 10^(2 * digits), the number generate() takes the root of
+     */
+    private BigInteger radicand;
+
+    /**
+     * The file the digits are written to
+     */
+    private File out;
+
+    /**
+     * Builds the radicand and picks the output file.
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BigInteger one = BigInteger.TEN.pow(digits);
+        radicand = BigInteger.valueOf(10005).multiply(one).multiply(one);
+        out = File.createTempFile("pi-bench", ".txt");
+    }
+
+    /**
+     * Deletes the output file
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        out.delete();
+    }
+
+    /**
+     * Takes the square root generate() needs
+     *
+     * @return the root
+     */
+    @Benchmark
+    public BigInteger sqrt() {
+        return PiGenerator.sqrt(radicand);
+    }
+
+    /**
+     * Generates the whole digit file, without checkpoints
+     *
+     * @return the length of the file
+     * @throws IOException the standard IOException reasons
+     */
+    @Benchmark
+    public long generate() throws IOException {
+        new PiGenerator(digits, null).generate(out, (phase, done) -> {
+        });
+        return out.length();
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.leftisttachyon;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the per-digit compare loop of Main.startGame(): judging a
+ * batch of key presses against the digit source.
+ *
+ * @author Jed Wang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VerifyBenchmark {
+
+    /**
+     * Where in the digit source the recitation starts
+     */
+    @Param({"0", "9000000"})
+    public long offset;
+
+    /**
+     * The digits
+     */
+    private DigitSource pi;
+
+    /**
+     * A correct recitation of 4096 digits, as key codes
+     */
+    private int[] keys;
+
+    /**
+     * Reads the digits and builds the recitation.
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Setup
+    public void setUp() throws IOException {
+        pi = BenchmarkFiles.digitSource(10_000_000);
+        keys = new int[4096];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = pi.charAt(offset + i);
+        }
+    }
+
+    /**
+     * Judges every key press the same way startGame() does
+     *
+     * @return the number of correct digits
+     */
+    @Benchmark
+    public long judgeBatch() {
+        long cnt = offset;
+        for (int i = 0; i < keys.length && cnt < pi.length(); i++) {
+            char nextDigit = pi.charAt(cnt);
+            int next = keys[i];
+            if (next == KeyEvent.VK_ESCAPE || next == KeyEvent.VK_PAUSE) {
+                break;
+            } else if (next != nextDigit) {
+                break;
+            } else {
+                ++cnt;
+            }
+        }
+        return cnt - offset;
+    }
+}
@@ -0,0 +1,326 @@
+package com.github.leftisttachyon;
+
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * The hexadecimal digits of pi, computed on demand with the
+ * Bailey-Borwein-Plouffe formula
+ * <pre>
+ * pi = sum over k of 16^-k (4/(8k+1) - 2/(8k+4) - 1/(8k+5) - 1/(8k+6))
+ * </pre>
+ * which gives the hex digits after any position without the ones before
+ * it. Each evaluation sums the formula in 64-bit fixed point, with every
+ * term exact to the last bit, so sums split across threads add up to the
+ * same bits in any order. The error of the sum is bounded, and only the
+ * digits that the bound cannot change are kept, usually seven or more.
+ * <p>
+ * Position 0 is the 3 before the point and position p is the p-th hex
+ * digit after it, like the decimal digit files. Nothing is cached here; put
+ * the source behind a BlockCache with small blocks.
+ *
+ * @author Jed Wang
+ */
+public final class BbpDigitSource implements DigitSource {
+
+    /**
+     * The number of digits. Every modulus 8k + 6 for k below this fits in
+     * 31 bits, which keeps every product of the modular arithmetic inside of
+     * a long.
+     */
+    public static final long LENGTH = 250_000_000L;
+
+    /**
+     * The number of digits a BlockCache should cache at a time: one or two
+     * evaluations, which run side by side
+     */
+    public static final int BLOCK_SIZE = 8;
+
+    /**
+     * Evaluations before this position are summed on one thread
+     */
+    private static final long PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * The number of terms of the tail, past k = n, that are not 0 in 64-bit
+     * fixed point
+     */
+    private static final int TAIL_TERMS = 16;
+
+    @Override
+    public long length() {
+        return LENGTH;
+    }
+
+    @Override
+    public int radix() {
+        return 16;
+    }
+
+    @Override
+    public int digitAt(long index) {
+        if (index < 0 || index >= LENGTH) {
+            throw new IndexOutOfBoundsException("index " + index
+                    + " out of [0, " + LENGTH + ")");
+        }
+        return index == 0 ? 3 : (int) (fraction(index - 1) >>> 60);
+    }
+
+    /**
+     * Computes a range of digits. The evaluations that the range needs are
+     * spread across the common fork-join pool, and so are the sums of each
+     * evaluation far enough into pi.
+     *
+     * @param start the zero-based position of the first digit
+     * @param length the number of digits to copy
+     * @return the values (0-15) of the digits in the given range
+     */
+    @Override
+    public byte[] copyRange(long start, int length) {
+        checkRange(start, length);
+        byte[] out = new byte[length];
+        boolean[] known = new boolean[length];
+        if (start == 0 && length > 0) {
+            out[0] = 3;
+            known[0] = true;
+        }
+        int from = start == 0 ? 1 : 0;
+
+        // plan for the fewest digits the last evaluation can promise
+        int stride = digitsKept(start + length);
+        int evaluations = (length - from + stride - 1) / stride;
+        IntStream.range(0, evaluations).parallel().forEach(i
+                -> fill(start, out, known, from + i * stride, stride));
+
+        // the rare evaluations that kept too few digits are redone where the
+        // first missing digit is
+        for (int i = 0; i < length; i++) {
+            if (!known[i]) {
+                fill(start, out, known, i, length - i);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Evaluates the digits at a place in a range and keeps the ones that
+     * are certain, always at least the first
+     *
+     * @param start the position of the range
+     * @param out the digits of the range
+     * @param known which digits of the range are filled in
+     * @param offset where in the range to evaluate
+     * @param max the most digits to keep
+     */
+    private static void fill(long start, byte[] out, boolean[] known,
+            int offset, int max) {
+        long n = start + offset - 1;
+        long x = fraction(n);
+        int certain = Math.max(1, certainDigits(x, error(n)));
+        for (int i = 0; i < certain && i < max && offset + i < out.length;
+                i++) {
+            out[offset + i] = (byte) (x >>> (60 - 4 * i) & 0xF);
+            known[offset + i] = true;
+        }
+    }
+
+    /**
+     * Returns the number of digits an evaluation at a position can be
+     * expected to keep
+     *
+     * @param position the position of the first digit
+     * @return the number of digits to plan for
+     */
+    private static int digitsKept(long position) {
+        int bits = 64 - Long.numberOfLeadingZeros(error(position));
+        return Math.max(1, Math.min(15, (60 - bits) / 4));
+    }
+
+    /**
+     * Returns the most that an evaluation can be off by: every one of the
+     * n + 1 + TAIL_TERMS terms of each sum is rounded down by less than one
+     * unit, and the sums are weighted 4, 2, 1 and 1
+     *
+     * @param n the position of the evaluation
+     * @return the bound, in units of 2^-64
+     */
+    private static long error(long n) {
+        return 4 * (n + 1 + TAIL_TERMS);
+    }
+
+    /**
+     * Counts how many of the leading digits of an evaluation the error
+     * cannot change
+     *
+     * @param x the evaluation
+     * @param error the most it can be off by
+     * @return the number of certain digits
+     */
+    private static int certainDigits(long x, long error) {
+        for (int digits = 15; digits > 0; digits--) {
+            long mask = -1L >>> 4 * digits;
+            long low = x & mask;
+            if (Long.compareUnsigned(low, error) >= 0
+                    && Long.compareUnsigned(low, mask - error) <= 0) {
+                return digits;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Evaluates the fractional part of 16^n pi in 64-bit fixed point; its
+     * top four bits are hex digit n + 1 after the point
+     *
+     * @param n how many hex digits to skip
+     * @return the fractional part, times 2^64
+     */
+    static long fraction(long n) {
+        long sum;
+        if (n < PARALLEL_THRESHOLD) {
+            sum = 0;
+            for (long k = 0; k <= n; k++) {
+                sum += term(n, k);
+            }
+        } else {
+            sum = LongStream.rangeClosed(0, n).parallel()
+                    .map(k -> term(n, k)).sum();
+        }
+
+        for (int d = 1; d < TAIL_TERMS; d++) {
+            long k = n + d, unit = 1L << 64 - 4 * d;
+            sum += 4 * (unit / (8 * k + 1)) - 2 * (unit / (8 * k + 4))
+                    - unit / (8 * k + 5) - unit / (8 * k + 6);
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the k-th term of the head of the formula, for k up to n, as
+     * 4 {16^(n-k) / (8k+1)} - 2 {16^(n-k) / (8k+4)} - {16^(n-k) / (8k+5)}
+     * - {16^(n-k) / (8k+6)}, where {} is the fractional part.
+     * <p>
+     * The even denominators lose their factors of 2 to the powers, leaving
+     * the odd moduli 8k+1, 2k+1, 8k+5 and 4k+3 and the powers 2^(4(n-k)),
+     * 2^(4(n-k)-2), 2^(4(n-k)) and 2^(4(n-k)-1). All four are 2^(4(n-k-1))
+     * shifted left by a few bits, so they are raised side by side, in
+     * Montgomery form, with nothing in the loop that divides or branches.
+     *
+     * @param n how many hex digits to skip
+     * @param k the number of the term
+     * @return the term, times 2^64
+     */
+    private static long term(long n, long k) {
+        if (k == n) {
+            long m = 8 * k + 1;
+            return 4 * divide(1 % m, m, 1.0 / m)
+                    - 2 * divide(1, m + 3, 1.0 / (m + 3))
+                    - divide(1, m + 4, 1.0 / (m + 4))
+                    - divide(1, m + 5, 1.0 / (m + 5));
+        }
+        long m1 = 8 * k + 1, m4 = 2 * k + 1, m5 = 8 * k + 5, m6 = 4 * k + 3;
+        double i1 = 1.0 / m1, i4 = 1.0 / m4, i5 = 1.0 / m5, i6 = 1.0 / m6;
+        long n1 = negativeInverse(m1), n4 = negativeInverse(m4);
+        long n5 = negativeInverse(m5), n6 = negativeInverse(m6);
+
+        // start from the leading bits of the exponent, which fit in a
+        // shift, then square, and double where it has a 1, through the rest
+        long e = 4 * (n - k - 1);
+        int bit = Math.max(0, 59 - Long.numberOfLeadingZeros(e));
+        long first = 1L << (e >>> bit);
+        long r1 = reduce(reduce(first, m1, i1) << 32, m1, i1);
+        long r4 = reduce(reduce(first, m4, i4) << 32, m4, i4);
+        long r5 = reduce(reduce(first, m5, i5) << 32, m5, i5);
+        long r6 = reduce(reduce(first, m6, i6) << 32, m6, i6);
+        while (--bit >= 0) {
+            int b = (int) (e >>> bit) & 1;
+            r1 = montgomery(r1 * r1 << b, m1, n1);
+            r4 = montgomery(r4 * r4 << b, m4, n4);
+            r5 = montgomery(r5 * r5 << b, m5, n5);
+            r6 = montgomery(r6 * r6 << b, m6, n6);
+        }
+        r1 = reduce(montgomery(r1, m1, n1) << 4, m1, i1);
+        r4 = reduce(montgomery(r4, m4, n4) << 2, m4, i4);
+        r5 = reduce(montgomery(r5, m5, n5) << 4, m5, i5);
+        r6 = reduce(montgomery(r6, m6, n6) << 3, m6, i6);
+        return 4 * divide(r1, m1, i1) - 2 * divide(r4, m4, i4)
+                - divide(r5, m5, i5) - divide(r6, m6, i6);
+    }
+
+    /**
+     * Returns -1 / m modulo 2^32, by Newton's method: m is its own inverse
+     * to 3 bits, and every step doubles the bits
+     *
+     * @param m an odd modulus
+     * @return -1 / m mod 2^32
+     */
+    private static long negativeInverse(long m) {
+        long x = m;
+        x *= 2 - m * x;
+        x *= 2 - m * x;
+        x *= 2 - m * x;
+        x *= 2 - m * x;
+        return -x & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Divides by 2^32 modulo an odd number, Montgomery's way: adds the
+     * multiple of m that clears the low 32 bits and shifts them out
+     *
+     * @param t the number, less than 2^32 times m
+     * @param m the odd modulus, less than 2^31
+     * @param negativeInverse -1 / m mod 2^32
+     * @return t / 2^32 mod m
+     */
+    private static long montgomery(long t, long m, long negativeInverse) {
+        long q = t * negativeInverse & 0xFFFFFFFFL;
+        long r = (t + q * m) >>> 32;
+        return r - (m & (m - 1 - r) >> 63);
+    }
+
+    /**
+     * Reduces a number modulo another without a division: the quotient is
+     * estimated in floating point, which is off by at most one, and the
+     * remainder is fixed up without branches
+     *
+     * @param x the number, less than 2^63 and less than 2^50 times m
+     * @param m the modulus, less than 2^31
+     * @param inverse 1.0 / m
+     * @return x mod m
+     */
+    private static long reduce(long x, long m, double inverse) {
+        long r = x - (long) (x * inverse) * m;
+        r += m & r >> 63;
+        return r - (m & (m - 1 - r) >> 63);
+    }
+
+    /**
+     * Divides in 64-bit fixed point, rounding down, 32 bits at a time
+     *
+     * @param r the numerator, less than m
+     * @param m the denominator, less than 2^31
+     * @param inverse 1.0 / m
+     * @return r / m, times 2^64
+     */
+    private static long divide(long r, long m, double inverse) {
+        long high = quotient(r << 32, m, inverse);
+        long low = quotient((r << 32) - high * m << 32, m, inverse);
+        return high << 32 | low;
+    }
+
+    /**
+     * Divides without a division, like reduce()
+     *
+     * @param x the dividend, less than 2^32 times m
+     * @param m the divisor, less than 2^31
+     * @param inverse 1.0 / m
+     * @return x / m, rounded down
+     */
+    private static long quotient(long x, long m, double inverse) {
+        long q = (long) (x * inverse);
+        long r = x - q * m;
+        q += r >> 63;
+        r += m & r >> 63;
+        return q + ((m - 1 - r) >>> 63);
+    }
+}
@@ -0,0 +1,333 @@
+package com.github.leftisttachyon;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process-wide cache of decoded blocks of digits, shared by every digit
+ * source put behind it and capped at a number of bytes. When the cap is
+ * reached, the blocks used longest ago are dropped first, whichever source
+ * they came from. Sources read through the cache one block at a time, so
+ * switching between constants or jumping far into one only decodes the
+ * blocks that are actually read.
+ *
+ * @author Jed Wang
+ */
+public final class BlockCache {
+
+    /**
+     * The system property that sets the cap of the shared cache, in bytes
+     */
+    public static final String CAPACITY_PROPERTY = "pimemorization.cacheBytes";
+
+    /**
+     * The cap of the shared cache if the CAPACITY_PROPERTY is not set
+     */
+    public static final long DEFAULT_CAPACITY = 64L << 20;
+
+    /**
+     * log2 of the number of digits in a block
+     */
+    private static final int BLOCK_SHIFT = 16;
+
+    /**
+     * The number of digits in a block
+     */
+    public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    /**
+     * The bits of a key that hold the block number; the rest hold the id of
+     * the source
+     */
+    private static final int KEY_SHIFT = 40;
+
+    /**
+     * The cache that every constant shares
+     */
+    private static final BlockCache SHARED = new BlockCache(
+            Long.getLong(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+
+    /**
+     * The most bytes of blocks to keep
+     */
+    private final long capacity;
+
+    /**
+     * The blocks, from the one used longest ago to the one used last
+     */
+    private final LinkedHashMap<Long, Block> blocks
+            = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * The bytes of blocks kept
+     */
+    private long used = 0;
+
+    /**
+     * The id to give the next source
+     */
+    private int nextId = 0;
+
+    /**
+     * The number of block reads that were in the cache
+     */
+    private long hits = 0;
+
+    /**
+     * The number of block reads that had to be decoded
+     */
+    private long misses = 0;
+
+    /**
+     * Creates a new BlockCache.
+     *
+     * @param capacity the most bytes of blocks to keep
+     */
+    public BlockCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cache that every constant shares
+     *
+     * @return the shared cache
+     */
+    public static BlockCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Puts a digit source behind this cache, in blocks of BLOCK_SIZE digits
+     *
+     * @param source the source to read blocks from
+     * @return a source that reads through this cache
+     */
+    public DigitSource cache(DigitSource source) {
+        return cache(source, BLOCK_SIZE);
+    }
+
+    /**
+     * Puts a digit source behind this cache, in blocks of another size.
+     * Sources that are slow to read, like ones that compute their digits,
+     * want small blocks.
+     *
+     * @param source the source to read blocks from
+     * @param blockSize the number of digits in a block, a power of 2
+     * @return a source that reads through this cache
+     * @throws IllegalArgumentException if the block size is not a power of 2
+     */
+    public synchronized DigitSource cache(DigitSource source, int blockSize) {
+        if (blockSize <= 0 || Integer.bitCount(blockSize) != 1) {
+            throw new IllegalArgumentException("block size " + blockSize
+                    + " is not a power of 2");
+        }
+        if (nextId == 1 << (63 - KEY_SHIFT)) {
+            throw new IllegalStateException("too many sources");
+        }
+        return new CachedSource(source, nextId++,
+                Integer.numberOfTrailingZeros(blockSize));
+    }
+
+    /**
+     * Returns a block, decoding it if it is not in the cache
+     *
+     * @param source the source the block is from
+     * @param number the number of the block
+     * @return the block
+     */
+    private Block block(CachedSource source, long number) {
+        Long key = (long) source.id << KEY_SHIFT | number;
+        synchronized (this) {
+            Block block = blocks.get(key);
+            if (block != null) {
+                hits++;
+                return block;
+            }
+            misses++;
+        }
+
+        // decode outside of the lock; two threads may decode the same block
+        long start = number << source.shift;
+        Block block = new Block(number, source.source.copyRange(start,
+                (int) Math.min(1 << source.shift, source.length - start)));
+        synchronized (this) {
+            Block old = blocks.put(key, block);
+            used += block.digits.length
+                    - (old == null ? 0 : old.digits.length);
+            Iterator<Block> eldest = blocks.values().iterator();
+            while (used > capacity && eldest.hasNext()) {
+                Block b = eldest.next();
+                if (b != block) {
+                    used -= b.digits.length;
+                    eldest.remove();
+                }
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Returns the bytes of blocks kept
+     *
+     * @return the bytes of blocks kept
+     */
+    public synchronized long getUsedBytes() {
+        return used;
+    }
+
+    /**
+     * Returns the number of block reads that were in the cache
+     *
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of block reads that had to be decoded
+     *
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Drops every block
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        used = 0;
+    }
+
+    /**
+     * A decoded block of digits
+     */
+    private static final class Block {
+
+        /**
+         * The number of the block
+         */
+        final long number;
+
+        /**
+         * The digit values of the block
+         */
+        final byte[] digits;
+
+        /**
+         * Creates a new Block.
+         *
+         * @param number the number of the block
+         * @param digits the digit values of the block
+         */
+        Block(long number, byte[] digits) {
+            this.number = number;
+            this.digits = digits;
+        }
+    }
+
+    /**
+     * A digit source that reads through the cache
+     */
+    private final class CachedSource implements DigitSource {
+
+        /**
+         * The source blocks are decoded from
+         */
+        private final DigitSource source;
+
+        /**
+         * The id of this source in the keys of the cache
+         */
+        private final int id;
+
+        /**
+         * log2 of the number of digits in a block of this source
+         */
+        private final int shift;
+
+        /**
+         * Masks a position into a position inside of its block
+         */
+        private final long mask;
+
+        /**
+         * The number of digits in the source
+         */
+        private final long length;
+
+        /**
+         * The last block read, so that reading along a block does not touch
+         * the cache at all
+         */
+        private volatile Block last = null;
+
+        /**
+         * Creates a new CachedSource.
+         *
+         * @param source the source blocks are decoded from
+         * @param id the id of this source
+         * @param shift log2 of the number of digits in a block
+         */
+        CachedSource(DigitSource source, int id, int shift) {
+            this.source = source;
+            this.id = id;
+            this.shift = shift;
+            mask = (1L << shift) - 1;
+            length = source.length();
+        }
+
+        /**
+         * Returns the block a position is in
+         *
+         * @param index the position
+         * @return the block
+         */
+        private Block blockOf(long index) {
+            long number = index >>> shift;
+            Block b = last;
+            if (b == null || b.number != number) {
+                b = block(this, number);
+                last = b;
+            }
+            return b;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public int radix() {
+            return source.radix();
+        }
+
+        @Override
+        public int digitAt(long index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index
+                        + " out of [0, " + length + ")");
+            }
+            return blockOf(index).digits[(int) (index & mask)];
+        }
+
+        @Override
+        public byte[] copyRange(long start, int length) {
+            checkRange(start, length);
+            byte[] out = new byte[length];
+            int done = 0;
+            while (done < length) {
+                long p = start + done;
+                int offset = (int) (p & mask);
+                int n = Math.min(length - done, (1 << shift) - offset);
+                System.arraycopy(blockOf(p).digits, offset, out, done, n);
+                done += n;
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads standard input in bulk through a channel instead of line by line.
+ * When standard input is a terminal that supports it, the terminal is put
+ * into non-canonical mode, so that keys arrive as they are typed instead of
+ * after Enter; it is put back when this is closed or the JVM exits. Piped or
+ * pasted input arrives in blocks of up to 64 KiB.
+ *
+ * @author Jed Wang
+ */
+public final class ConsoleInput implements AutoCloseable {
+
+    /**
+     * The channel of standard input
+     */
+    private final FileChannel channel
+            = new FileInputStream(FileDescriptor.in).getChannel();
+
+    /**
+     * The bytes that have been read but not consumed
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * Whether standard input is an interactive terminal
+     */
+    private final boolean interactive;
+
+    /**
+     * The hook that restores the terminal, or null if it was not changed
+     */
+    private Thread restoreHook = null;
+
+    /**
+     * The time of the last read, from System.nanoTime()
+     */
+    private long readTime = 0;
+
+    /**
+     * Creates a new ConsoleInput, switching the terminal to non-canonical
+     * mode if possible.
+     */
+    public ConsoleInput() {
+        buffer.flip();
+        interactive = System.console() != null;
+        if (interactive && new File("/dev/tty").exists()
+                && stty("-icanon min 1")) {
+            restoreHook = new Thread(() -> stty("icanon"),
+                    "Terminal restore");
+            Runtime.getRuntime().addShutdownHook(restoreHook);
+        }
+    }
+
+    /**
+     * Returns whether standard input is an interactive terminal
+     *
+     * @return whether standard input is an interactive terminal
+     */
+    public boolean isInteractive() {
+        return interactive;
+    }
+
+    /**
+     * Makes sure that there are unconsumed bytes in the buffer, blocking
+     * for more input if needed
+     *
+     * @return false if standard input has ended
+     * @throws IOException the standard IOException reasons
+     */
+    public boolean fill() throws IOException {
+        if (buffer.hasRemaining()) {
+            return true;
+        }
+        buffer.clear();
+        int n;
+        do {
+            n = channel.read(buffer);
+        } while (n == 0);
+        buffer.flip();
+        readTime = System.nanoTime();
+        return n > 0;
+    }
+
+    /**
+     * Returns the buffer of unconsumed bytes. Bytes consumed from it with
+     * get() are not returned again.
+     *
+     * @return the buffer of unconsumed bytes
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns when the bytes in the buffer were read
+     *
+     * @return the time of the last read, from System.nanoTime()
+     */
+    public long getReadTime() {
+        return readTime;
+    }
+
+    /**
+     * Drops every byte that has been read but not consumed
+     */
+    public void discard() {
+        buffer.position(buffer.limit());
+    }
+
+    /**
+     * Returns the next byte that is not whitespace
+     *
+     * @return the next byte that is not whitespace, or -1 if standard input
+     * has ended
+     * @throws IOException the standard IOException reasons
+     */
+    public int nextChar() throws IOException {
+        while (fill()) {
+            byte b = buffer.get();
+            if (!Character.isWhitespace(b)) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Restores the terminal if it was changed
+     */
+    @Override
+    public void close() {
+        if (restoreHook != null) {
+            Runtime.getRuntime().removeShutdownHook(restoreHook);
+            restoreHook = null;
+            stty("icanon");
+        }
+    }
+
+    /**
+     * Runs stty on the controlling terminal
+     *
+     * @param settings the settings to pass to stty
+     * @return whether stty succeeded
+     */
+    private static boolean stty(String settings) {
+        try {
+            return new ProcessBuilder("sh", "-c",
+                    "stty " + settings + " < /dev/tty")
+                    .inheritIO().start().waitFor() == 0;
+        } catch (IOException | InterruptedException ex) {
+            return false;
+        }
+    }
+}
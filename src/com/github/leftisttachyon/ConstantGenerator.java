@@ -0,0 +1,198 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Generates the digits of the constants other than pi, in the same format
+ * as pi.dat: ASCII digits, starting with the integer part, without a
+ * decimal point. The series are summed in fixed point with a few guard
+ * digits and then truncated, and the square roots are exact.
+ *
+ * @author Jed Wang
+ */
+public final class ConstantGenerator {
+
+    /**
+     * The number of extra digits computed to absorb rounding errors
+     */
+    private static final int GUARD_DIGITS = 16;
+
+    /**
+     * Reports nothing
+     */
+    private static final PiGenerator.ProgressListener QUIET = (phase, f) -> {
+    };
+
+    /**
+     * No instances
+     */
+    private ConstantGenerator() {
+    }
+
+    /**
+     * Generates the digits of e = the sum of 1 / k!, summed by binary
+     * splitting so that the work is a few large multiplications instead of
+     * one long division per term
+     *
+     * @param digits the number of digits, including the leading 2
+     * @param out the file to write the digits to
+     * @throws IOException the standard IOException reasons
+     */
+    public static void e(int digits, File out) throws IOException {
+        int precision = digits - 1 + GUARD_DIGITS;
+        int terms = 1;
+        for (double log = 0; log < precision + 1; terms++) {
+            log += Math.log10(terms + 1);
+        }
+        // sum of 1/k! for k = 1..terms is p / q
+        BigInteger[] pq = factorialSplit(0, terms);
+        BigInteger one = BigInteger.TEN.pow(precision);
+        BigInteger e = one.add(PiGenerator.multiply(one, pq[0]).divide(pq[1]));
+        PiGenerator.write(e.divide(BigInteger.TEN.pow(GUARD_DIGITS)), digits,
+                out, QUIET);
+    }
+
+    /**
+     * Generates the digits of the square root of a whole number
+     *
+     * @param n the number to take the square root of, from 1 to 99
+     * @param digits the number of digits, including the integer part
+     * @param out the file to write the digits to
+     * @throws IOException the standard IOException reasons
+     */
+    public static void sqrt(int n, int digits, File out) throws IOException {
+        if (n < 1 || n > 99) {
+            throw new IllegalArgumentException("n must be from 1 to 99");
+        }
+        BigInteger one = BigInteger.TEN.pow(digits - 1);
+        PiGenerator.write(PiGenerator.sqrt(BigInteger.valueOf(n).multiply(one)
+                .multiply(one)), digits, out, QUIET);
+    }
+
+    /**
+     * Generates the digits of the golden ratio, (1 + sqrt(5)) / 2
+     *
+     * @param digits the number of digits, including the leading 1
+     * @param out the file to write the digits to
+     * @throws IOException the standard IOException reasons
+     */
+    public static void phi(int digits, File out) throws IOException {
+        BigInteger one = BigInteger.TEN.pow(digits - 1);
+        BigInteger root5 = PiGenerator.sqrt(BigInteger.valueOf(5)
+                .multiply(one).multiply(one));
+        PiGenerator.write(one.add(root5).shiftRight(1), digits, out, QUIET);
+    }
+
+    /**
+     * Generates the digits of ln 2 = 18 atanh(1/26) - 2 atanh(1/4801)
+     * + 8 atanh(1/8749)
+     *
+     * @param digits the number of digits, including the leading 0
+     * @param out the file to write the digits to
+     * @throws IOException the standard IOException reasons
+     */
+    public static void ln2(int digits, File out) throws IOException {
+        BigInteger one = BigInteger.TEN.pow(digits - 1 + GUARD_DIGITS);
+        BigInteger ln2 = atanh(one, 26).multiply(BigInteger.valueOf(18))
+                .subtract(atanh(one, 4801).shiftLeft(1))
+                .add(atanh(one, 8749).shiftLeft(3));
+        PiGenerator.write(ln2.divide(BigInteger.TEN.pow(GUARD_DIGITS)), digits,
+                out, QUIET);
+    }
+
+    /**
+     * Generates the digits of twice another constant, like tau from pi. The
+     * carry into each digit is decided by the digit after it, so one more
+     * digit of the source than is written is enough.
+     *
+     * @param source the digits of the constant to double
+     * @param digits the number of digits to write; the source needs at
+     * least one more
+     * @param out the file to write the digits to
+     * @throws IOException the standard IOException reasons
+     */
+    public static void doubled(DigitSource source, int digits, File out)
+            throws IOException {
+        byte[] d = source.copyRange(0, digits + 1);
+        int carry = d[digits] >= 5 ? 1 : 0;
+        for (int i = digits - 1; i >= 0; i--) {
+            int v = 2 * d[i] + carry;
+            d[i] = (byte) (v % 10);
+            carry = v / 10;
+        }
+        byte[] ascii = new byte[carry + digits];
+        ascii[0] = '1';
+        for (int i = 0; i < digits; i++) {
+            ascii[carry + i] = (byte) ('0' + d[i]);
+        }
+        File temp = new File(out.getPath() + ".tmp");
+        Files.write(temp.toPath(), ascii);
+        Files.move(temp.toPath(), out.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Sums 1 / ((a + 1)(a + 2)...(k)) for k from a + 1 to b as a fraction
+     *
+     * @param a where the range starts
+     * @param b where the range ends
+     * @return the numerator and the denominator
+     */
+    private static BigInteger[] factorialSplit(int a, int b) {
+        if (b - a == 1) {
+            return new BigInteger[]{BigInteger.ONE, BigInteger.valueOf(b)};
+        }
+        int m = (a + b) >>> 1;
+        BigInteger[] left = factorialSplit(a, m), right = factorialSplit(m, b);
+        return new BigInteger[]{
+            PiGenerator.multiply(left[0], right[1]).add(right[0]),
+            PiGenerator.multiply(left[1], right[1])};
+    }
+
+    /**
+     * Sums atanh(1 / x) = the sum of 1 / ((2k + 1) x^(2k + 1)) in fixed
+     * point, by binary splitting
+     *
+     * @param one the fixed point value of 1
+     * @param x the reciprocal of the argument
+     * @return atanh(1 / x) * one
+     */
+    private static BigInteger atanh(BigInteger one, int x) {
+        int terms = (int) (one.bitLength() * Math.log10(2)
+                / (2 * Math.log10(x))) + 2;
+        BigInteger square = BigInteger.valueOf((long) x * x);
+        BigInteger[] tdq = atanhSplit(0, terms, square);
+        // the sum is square * t / (d * q), and atanh(1/x) is that over x
+        return PiGenerator.multiply(one, PiGenerator.multiply(tdq[0], square))
+                .divide(PiGenerator.multiply(PiGenerator.multiply(tdq[1],
+                        tdq[2]), BigInteger.valueOf(x)));
+    }
+
+    /**
+     * Sums 1 / ((2k + 1) X^(k - a)) for k from a to b - 1 as the fraction
+     * X t / (d q), where d is the product of the 2k + 1 and q = X^(b - a)
+     *
+     * @param a where the range starts
+     * @param b where the range ends
+     * @param square X, the square of the reciprocal of the argument
+     * @return t, d and q
+     */
+    private static BigInteger[] atanhSplit(int a, int b, BigInteger square) {
+        if (b - a == 1) {
+            return new BigInteger[]{BigInteger.ONE,
+                BigInteger.valueOf(2L * a + 1), square};
+        }
+        int m = (a + b) >>> 1;
+        BigInteger[] left = atanhSplit(a, m, square);
+        BigInteger[] right = atanhSplit(m, b, square);
+        return new BigInteger[]{
+            PiGenerator.multiply(PiGenerator.multiply(left[0], right[1]),
+                    right[2]).add(PiGenerator.multiply(left[1], right[0])),
+            PiGenerator.multiply(left[1], right[1]),
+            PiGenerator.multiply(left[2], right[2])};
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Finds the files the game reads and writes. Run from the project folder,
+ * they stay in the source resources folder as they always have; run from a
+ * JAR anywhere else, they go in ~/.pimemorization, and the data that ships
+ * inside the JAR (the digits of pi and the starting PB) is read from the
+ * classpath.
+ *
+ * @author Jed Wang
+ */
+public final class DataFiles {
+
+    /**
+     * The system property that names the folder to keep data in, overriding
+     * the defaults
+     */
+    public static final String DATA_DIR_PROPERTY = "pimemorization.data";
+
+    /**
+     * The resources folder when running from the project folder
+     */
+    private static final File SOURCE_DIR
+            = new File("src/com/github/leftisttachyon/resources");
+
+    /**
+     * Where the shipped data is on the classpath, relative to this class
+     */
+    private static final String RESOURCE_DIR = "resources/";
+
+    /**
+     * No instances
+     */
+    private DataFiles() {
+    }
+
+    /**
+     * Returns the folder that data is kept in, creating it if needed
+     *
+     * @return the folder that data is kept in
+     */
+    public static File getDataDir() {
+        String property = System.getProperty(DATA_DIR_PROPERTY);
+        File dir;
+        if (property != null && !property.isEmpty()) {
+            dir = new File(property);
+        } else if (SOURCE_DIR.isDirectory()) {
+            dir = SOURCE_DIR;
+        } else {
+            dir = new File(System.getProperty("user.home"), ".pimemorization");
+        }
+        dir.mkdirs();
+        return dir;
+    }
+
+    /**
+     * Returns a file in the data folder
+     *
+     * @param name the name of the file
+     * @return the file, which may not exist
+     */
+    public static File resolve(String name) {
+        return new File(getDataDir(), name);
+    }
+
+    /**
+     * Returns a file in the data folder, copying it out of the classpath
+     * first if it is not there yet
+     *
+     * @param name the name of the file
+     * @return the file
+     * @throws FileNotFoundException if the file is in neither place
+     * @throws IOException the standard IOException reasons
+     */
+    public static File extract(String name) throws IOException {
+        File file = resolve(name);
+        if (file.isFile()) {
+            return file;
+        }
+        try (InputStream in = DataFiles.class.getResourceAsStream(
+                RESOURCE_DIR + name)) {
+            if (in == null) {
+                throw new FileNotFoundException(file
+                        + " does not exist and is not on the classpath");
+            }
+            File temp = new File(file.getPath() + ".tmp");
+            Files.copy(in, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * Opens a file in the data folder, or the copy that ships on the
+     * classpath if it is not there
+     *
+     * @param name the name of the file
+     * @return a stream of the file's contents
+     * @throws FileNotFoundException if the file is in neither place
+     */
+    public static InputStream open(String name) throws FileNotFoundException {
+        File file = resolve(name);
+        if (file.isFile()) {
+            return new FileInputStream(file);
+        }
+        InputStream in = DataFiles.class.getResourceAsStream(RESOURCE_DIR + name);
+        if (in == null) {
+            throw new FileNotFoundException(file
+                    + " does not exist and is not on the classpath");
+        }
+        return in;
+    }
+}
@@ -0,0 +1,448 @@
+package com.github.leftisttachyon;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A DigitSource backed by a memory-mapped file that stores 19 digits in
+ * every 64-bit word, as the unsigned number they spell: 3.37 bits per digit,
+ * against the 3.32 that is the least any encoding can use. Every word holds
+ * the same number of digits, so the words are a fixed-size block index:
+ * digit p is in word p / 19, and reading it takes one load and two
+ * divisions. Whole words decode eight digits at a time, with the digits
+ * split out in parallel inside a long.
+ * <p>
+ * The file starts with a 32-byte big-endian header: magic, version, digit
+ * count, the CRC32 of the words, and the number of digits per word. The
+ * words follow, little-endian, the last one padded with zeros.
+ *
+ * @author Jed Wang
+ */
+public final class DenseDigitSource implements DigitSource {
+
+    /**
+     * The magic number at the start of every dense file ("PI19")
+     */
+    public static final int MAGIC = 0x50493139;
+
+    /**
+     * The version of the dense format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the header, in bytes
+     */
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * The extension of a dense file, in place of the extension of its
+     * digit file: pi.dat becomes pi.d19
+     */
+    public static final String EXTENSION = ".d19";
+
+    /**
+     * The number of digits in each word
+     */
+    public static final int DIGITS_PER_WORD = 19;
+
+    /**
+     * log2 of the number of bytes in each mapped segment
+     */
+    private static final int SEGMENT_SHIFT = 30;
+
+    /**
+     * Masks a byte offset into an offset inside of a segment
+     */
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    /**
+     * log2 of the number of words in each mapped segment
+     */
+    private static final int WORD_SHIFT = SEGMENT_SHIFT - 3;
+
+    /**
+     * Masks a word index into an index inside of a segment
+     */
+    private static final long WORD_MASK = (1L << WORD_SHIFT) - 1;
+
+    /**
+     * The number of words decode() copies off the mapping at a time
+     */
+    private static final int CHUNK = 1024;
+
+    /**
+     * The powers of ten that fit in a long, POW10[i] = 10^i
+     */
+    private static final long[] POW10 = new long[19];
+
+    /**
+     * The three digits of every number from 000 to 999, one per byte with
+     * the first digit in the lowest byte
+     */
+    private static final int[] TRIPLES = new int[1000];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+        for (int i = 0; i < 1000; i++) {
+            TRIPLES[i] = i / 100 | i / 10 % 10 << 8 | i % 10 << 16;
+        }
+    }
+
+    /**
+     * The mapped segments of the words, header excluded
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * The words of each segment
+     */
+    private final LongBuffer[] words;
+
+    /**
+     * The number of digits in this source
+     */
+    private final long length;
+
+    /**
+     * The CRC32 of the words, from the header
+     */
+    private final int checksum;
+
+    /**
+     * Creates a new DenseDigitSource by mapping the given dense file.
+     *
+     * @param dense the dense file to map
+     * @throws IOException if the file cannot be read or is not a dense file
+     */
+    public DenseDigitSource(File dense) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(dense, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE
+                    || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(dense + " is not a dense digit file");
+            }
+            length = header.getLong();
+            checksum = header.getInt();
+            if (header.getInt() != DIGITS_PER_WORD) {
+                throw new IOException(dense + " has an unknown word size");
+            }
+
+            long bytes = 8 * words(length);
+            if (length < 0 || HEADER_SIZE + bytes > channel.size()) {
+                throw new IOException(dense + " is truncated");
+            }
+
+            int count = (int) ((bytes + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            segments = new MappedByteBuffer[count];
+            words = new LongBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long offset = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + offset,
+                        Math.min(bytes - offset, 1L << SEGMENT_SHIFT));
+                words[i] = segments[i].order(ByteOrder.LITTLE_ENDIAN)
+                        .asLongBuffer();
+            }
+        }
+    }
+
+    /**
+     * Returns the dense file of an ASCII digit file, next to it
+     *
+     * @param digits the ASCII digit file
+     * @return the dense file, whose name has EXTENSION in place of the
+     * extension of the digit file
+     */
+    public static File fileFor(File digits) {
+        String name = digits.getName();
+        int dot = name.lastIndexOf('.');
+        return new File(digits.getParentFile(),
+                (dot > 0 ? name.substring(0, dot) : name) + EXTENSION);
+    }
+
+    /**
+     * Opens the given ASCII digit file, converting it first if its dense
+     * file does not exist yet, is older than it, or is damaged: cut short or
+     * with words that do not match the checksum.
+     *
+     * @param digits the ASCII digit file
+     * @return a DenseDigitSource for the given digit file
+     * @throws IOException the standard IOException reasons
+     */
+    public static DenseDigitSource open(File digits) throws IOException {
+        File dense = fileFor(digits);
+        if (dense.isFile() && dense.lastModified() >= digits.lastModified()) {
+            try {
+                DenseDigitSource source = new DenseDigitSource(dense);
+                if (source.verify()) {
+                    return source;
+                }
+            } catch (IOException ex) {
+                // damaged; convert it again
+            }
+        }
+        try (InputStream in = new FileInputStream(digits)) {
+            convert(in, dense);
+        }
+        return new DenseDigitSource(dense);
+    }
+
+    /**
+     * Converts the ASCII digits read from the given stream into a dense
+     * file. Anything that is not a digit (line breaks, a decimal point) is
+     * skipped.
+     *
+     * @param in the stream to read ASCII digits from
+     * @param dense the file to write the dense digits to
+     * @return the number of digits converted
+     * @throws IOException the standard IOException reasons
+     */
+    public static long convert(InputStream in, File dense) throws IOException {
+        File temp = new File(dense.getPath() + ".tmp");
+        long count = 0;
+        CRC32 crc = new CRC32();
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+                FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            channel.position(HEADER_SIZE);
+            ByteBuffer out = ByteBuffer.allocate(1 << 16)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            InputStream bin = new BufferedInputStream(in, 1 << 16);
+            long word = 0;
+            int inWord = 0, c;
+            while ((c = bin.read()) >= 0) {
+                if (c < '0' || c > '9') {
+                    continue;
+                }
+                // 19 digits overflow a signed long; the unsigned value is right
+                word = word * 10 + (c - '0');
+                count++;
+                if (++inWord == DIGITS_PER_WORD) {
+                    out.putLong(word);
+                    word = 0;
+                    inWord = 0;
+                    if (!out.hasRemaining()) {
+                        write(channel, out, crc);
+                    }
+                }
+            }
+            if (inWord > 0) {
+                for (; inWord < DIGITS_PER_WORD; inWord++) {
+                    word *= 10;
+                }
+                out.putLong(word);
+            }
+            write(channel, out, crc);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(count)
+                    .putInt((int) crc.getValue()).putInt(DIGITS_PER_WORD)
+                    .flip();
+            channel.write(header, 0);
+        }
+
+        if (dense.exists() && !dense.delete()) {
+            throw new IOException("Could not replace " + dense);
+        }
+        if (!temp.renameTo(dense)) {
+            throw new IOException("Could not rename " + temp + " to " + dense);
+        }
+        return count;
+    }
+
+    /**
+     * Writes out a full buffer of words, adding them to the checksum
+     *
+     * @param channel the channel to write to
+     * @param out the buffer of words
+     * @param crc the checksum of every word written
+     * @throws IOException the standard IOException reasons
+     */
+    private static void write(FileChannel channel, ByteBuffer out, CRC32 crc)
+            throws IOException {
+        out.flip();
+        crc.update(out.array(), 0, out.limit());
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Returns the number of words needed for a number of digits
+     *
+     * @param digits the number of digits
+     * @return the number of words
+     */
+    private static long words(long digits) {
+        return (digits + DIGITS_PER_WORD - 1) / DIGITS_PER_WORD;
+    }
+
+    /**
+     * Checks the words against the checksum in the header
+     *
+     * @return whether the words are intact
+     */
+    public boolean verify() {
+        CRC32 crc = new CRC32();
+        for (MappedByteBuffer segment : segments) {
+            crc.update(segment.duplicate());
+        }
+        return (int) crc.getValue() == checksum;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int digitAt(long index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index
+                    + " out of [0, " + length + ")");
+        }
+
+        long word = wordAt(index / DIGITS_PER_WORD);
+        int r = (int) (index % DIGITS_PER_WORD);
+        if (r == 0) {
+            return (int) ((word >>> 1) / (POW10[18] >>> 1));
+        }
+        long rest = word - (word >>> 1) / (POW10[18] >>> 1) * POW10[18];
+        return (int) (rest / POW10[DIGITS_PER_WORD - 1 - r] % 10);
+    }
+
+    @Override
+    public byte[] copyRange(long start, int length) {
+        checkRange(start, length);
+        byte[] out = new byte[length];
+        decode(start, out, 0, length);
+        return out;
+    }
+
+    /**
+     * Decodes a range of digit values into an array
+     *
+     * @param start the zero-based position of the first digit
+     * @param out the array to decode into
+     * @param offset where in the array to put the first digit
+     * @param length the number of digits to decode
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public void decode(long start, byte[] out, int offset, int length) {
+        checkRange(start, length);
+        int i = 0;
+        while (i < length && (start + i) % DIGITS_PER_WORD != 0) {
+            out[offset + i] = (byte) digitAt(start + i);
+            i++;
+        }
+        long w = (start + i) / DIGITS_PER_WORD;
+        ByteBuffer buffer = ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN);
+        long[] chunk = new long[Math.min(CHUNK,
+                (length - i) / DIGITS_PER_WORD)];
+        while (length - i >= DIGITS_PER_WORD) {
+            // a bulk get is a plain copy; one get() per word is much slower
+            LongBuffer segment = words[(int) (w >>> WORD_SHIFT)].duplicate();
+            segment.position((int) (w & WORD_MASK));
+            int n = Math.min(Math.min(chunk.length, segment.remaining()),
+                    (length - i) / DIGITS_PER_WORD);
+            segment.get(chunk, 0, n);
+            for (int k = 0; k < n; k++, i += DIGITS_PER_WORD) {
+                decodeWord(chunk[k], buffer, offset + i);
+            }
+            w += n;
+        }
+        if (i < length) {
+            ByteBuffer last = ByteBuffer.allocate(DIGITS_PER_WORD)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            decodeWord(wordAt(w), last, 0);
+            System.arraycopy(last.array(), 0, out, offset + i, length - i);
+        }
+    }
+
+    /**
+     * Returns a word
+     *
+     * @param w the index of the word
+     * @return the word
+     */
+    private long wordAt(long w) {
+        return words[(int) (w >>> WORD_SHIFT)].get((int) (w & WORD_MASK));
+    }
+
+    /**
+     * Writes the 19 digits of a word into an array: the first three from a
+     * table, and the other sixteen as two longs of eight digit bytes each
+     *
+     * @param word the word, an unsigned number below 10^19
+     * @param out the array to write to, wrapped little-endian
+     * @param at where in the array to write the first digit
+     */
+    private static void decodeWord(long word, ByteBuffer out, int at) {
+        // halving both sides keeps the unsigned division exact
+        long top = (word >>> 1) / (POW10[16] >>> 1);
+        long rest = word - top * POW10[16];
+        // the fourth byte written here is overwritten right after
+        out.putInt(at, TRIPLES[(int) top]);
+        long high = rest / POW10[8];
+        out.putLong(at + 3, eight((int) high));
+        out.putLong(at + 11, eight((int) (rest - high * POW10[8])));
+    }
+
+    /**
+     * Splits a number below 10^8 into its eight digits, one per byte with
+     * the first digit in the lowest byte. Each step divides every lane of
+     * the long at once by multiplying and shifting.
+     *
+     * @param n the number
+     * @return the digits
+     */
+    private static long eight(int n) {
+        long x = n / 10_000 | (long) (n % 10_000) << 32;
+        long hundreds = (x * 10_486 >>> 20) & 0x0000007F0000007FL;
+        x = (x - hundreds * 100) << 16 | hundreds;
+        long tens = (x * 103 >>> 10) & 0x000F000F000F000FL;
+        return (x - tens * 10) << 8 | tens;
+    }
+
+    /**
+     * Converts an ASCII digit file into a dense file
+     *
+     * @param args the digit file (pi.dat by default), and the dense file
+     * (the digit file with EXTENSION in place of its own by default)
+     * @throws IOException the standard IOException reasons
+     */
+    public static void main(String[] args) throws IOException {
+        File in = args.length > 0 ? new File(args[0]) : Main.PI_FILE;
+        File out = args.length > 1 ? new File(args[1])
+                : fileFor(in);
+        long count;
+        try (InputStream stream = new FileInputStream(in)) {
+            count = convert(stream, out);
+        }
+        System.out.println(count + " digits, " + in.length() + " -> "
+                + out.length() + " bytes ("
+                + String.format("%.3f", 8.0 * (out.length() - HEADER_SIZE)
+                        / Math.max(1, count)) + " bits per digit), checksum "
+                + (new DenseDigitSource(out).verify() ? "ok" : "BAD"));
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.leftisttachyon;
+
+/**
+ * A random-access source of digits, decimal unless radix() says otherwise
+ *
+ * @author Jed Wang
+ */
+public interface DigitSource {
+
+    /**
+     * Returns the number of digits in this source
+     *
+     * @return the number of digits in this source
+     */
+    long length();
+
+    /**
+     * Returns the base of the digits of this source
+     *
+     * @return 10, or 16 for hexadecimal digits
+     */
+    default int radix() {
+        return 10;
+    }
+
+    /**
+     * Returns the value (0-9, or 0-15 in hex) of the digit at the given
+     * position
+     *
+     * @param index the zero-based position of the digit
+     * @return the value of the digit at the given position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    int digitAt(long index);
+
+    /**
+     * Copies a range of digit values (0-9, or 0-15 in hex) into a new array
+     *
+     * @param start the zero-based position of the first digit
+     * @param length the number of digits to copy
+     * @return the values of the digits in the given range
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default byte[] copyRange(long start, int length) {
+        checkRange(start, length);
+        byte[] out = new byte[length];
+        for (int i = 0; i < length; i++) {
+            out[i] = (byte) digitAt(start + i);
+        }
+        return out;
+    }
+
+    /**
+     * Returns the digit at the given position as a character ('0'-'9', and
+     * 'A'-'F' in hex)
+     *
+     * @param index the zero-based position of the digit
+     * @return the digit at the given position, as a character
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    default char charAt(long index) {
+        int digit = digitAt(index);
+        return (char) (digit < 10 ? '0' + digit : 'A' - 10 + digit);
+    }
+
+    /**
+     * Makes sure that the given range is inside of this source
+     *
+     * @param start the zero-based position of the first digit
+     * @param length the number of digits in the range
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    default void checkRange(long start, int length) {
+        if (start < 0 || length < 0 || start + length > length()) {
+            throw new IndexOutOfBoundsException("range [" + start + ", "
+                    + (start + length) + ") out of [0, " + length() + ")");
+        }
+    }
+}
@@ -0,0 +1,570 @@
+package com.github.leftisttachyon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes statistics of the digits of a constant: how often each digit
+ * appears, overall and in each block, the longest run of one digit, and the
+ * runs and repeated patterns around a position, like the six 9s of the
+ * Feynman point.
+ * <p>
+ * The digits are summarized one block at a time, and the summaries of
+ * neighboring ranges merge into the summary of both, so a scan is a
+ * fork/join reduction over the blocks. Block summaries are cached, so
+ * scanning again only reads the blocks that are new or that have grown
+ * since, like the last block of a digit file that was made longer.
+ *
+ * @author Jed Wang
+ */
+public final class DigitStatistics {
+
+    /**
+     * The number of digits in a block
+     */
+    public static final int BLOCK_SIZE = BlockCache.BLOCK_SIZE;
+
+    /**
+     * The summaries of the blocks scanned so far, by block number
+     */
+    private final ConcurrentHashMap<Long, Summary> blocks
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The pool scans run in
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new DigitStatistics that scans in the common pool.
+     */
+    public DigitStatistics() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a new DigitStatistics.
+     *
+     * @param pool the pool to scan in
+     */
+    public DigitStatistics(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Summarizes every digit of a source
+     *
+     * @param source the digits; every source scanned by this object must
+     * have the same digits where they overlap
+     * @return the summary of all of the digits
+     */
+    public Summary scan(DigitSource source) {
+        long count = (source.length() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (count == 0) {
+            return new Summary(source.radix());
+        }
+        return pool.invoke(new ScanTask(source, 0, count));
+    }
+
+    /**
+     * Summarizes a block, from the cache if it is there at the same length
+     *
+     * @param source the digits
+     * @param number the number of the block
+     * @return the summary of the block
+     */
+    public Summary block(DigitSource source, long number) {
+        long start = number * BLOCK_SIZE;
+        int length = (int) Math.min(BLOCK_SIZE, source.length() - start);
+        Summary s = blocks.get(number);
+        if (s == null || s.length != length) {
+            s = Summary.of(source.copyRange(start, length), start,
+                    source.radix());
+            blocks.put(number, s);
+        }
+        return s;
+    }
+
+    /**
+     * Returns the number of block summaries cached
+     *
+     * @return the number of blocks cached
+     */
+    public int getCachedBlocks() {
+        return blocks.size();
+    }
+
+    /**
+     * Finds the runs of one digit that overlap the digits around a
+     * position
+     *
+     * @param source the digits
+     * @param position the zero-based position
+     * @param radius how many digits on either side of the position to look
+     * at
+     * @param minLength the shortest run to report
+     * @return the runs, in order; the first and last may reach outside of
+     * the radius
+     */
+    public static List<Run> runsAround(DigitSource source, long position,
+            int radius, int minLength) {
+        long from = Math.max(0, position - radius);
+        long to = Math.min(source.length(), position + radius + 1);
+        // widen by a run's worth so that runs over the edges are whole
+        long lo = Math.max(0, from - BLOCK_SIZE);
+        long hi = Math.min(source.length(), to + BLOCK_SIZE);
+        byte[] d = source.copyRange(lo, (int) (hi - lo));
+
+        List<Run> runs = new ArrayList<>();
+        int i = (int) (from - lo);
+        while (i > 0 && d[i - 1] == d[i]) {
+            i--;
+        }
+        while (i < to - lo) {
+            int j = i + 1;
+            while (j < d.length && d[j] == d[i]) {
+                j++;
+            }
+            if (j - i >= minLength) {
+                runs.add(new Run(d[i], lo + i, j - i));
+            }
+            i = j;
+        }
+        return runs;
+    }
+
+    /**
+     * Finds the pattern of some length that repeats most often in the
+     * digits around a position
+     *
+     * @param source the digits
+     * @param position the zero-based position
+     * @param radius how many digits on either side of the position to look
+     * at
+     * @param length the length of the patterns, from 1 to 8
+     * @return the most repeated pattern and how often it appears, the
+     * earliest first if they tie, or null if there are no digits to look at
+     */
+    public static Pattern mostRepeatedAround(DigitSource source,
+            long position, int radius, int length) {
+        if (length < 1 || length > 8) {
+            throw new IllegalArgumentException("length " + length);
+        }
+        long from = Math.max(0, position - radius);
+        long to = Math.min(source.length(), position + radius + 1);
+        if (to - from < length) {
+            return null;
+        }
+        byte[] d = source.copyRange(from, (int) (to - from));
+        int patterns = d.length - length + 1;
+        long[] keys = new long[patterns];
+        for (int i = 0; i < patterns; i++) {
+            long key = 0;
+            for (int k = 0; k < length; k++) {
+                key = key << 4 | d[i + k];
+            }
+            keys[i] = key;
+        }
+
+        int best = 0, bestCount = 0;
+        for (int i = 0; i < patterns; i++) {
+            int count = 0;
+            for (int j = i; j < patterns; j++) {
+                if (keys[j] == keys[i]) {
+                    count++;
+                }
+            }
+            if (count > bestCount) {
+                best = i;
+                bestCount = count;
+            }
+        }
+        StringBuilder digits = new StringBuilder(length);
+        for (int k = 0; k < length; k++) {
+            digits.append(Character.toUpperCase(Character.forDigit(
+                    d[best + k], 16)));
+        }
+        return new Pattern(digits.toString(), from + best, bestCount);
+    }
+
+    /**
+     * Summarizes a range of blocks by splitting it in half until it is one
+     * block
+     */
+    private final class ScanTask extends RecursiveTask<Summary> {
+
+        /**
+         * The digits
+         */
+        private final DigitSource source;
+
+        /**
+         * The number of the first block of the range
+         */
+        private final long from;
+
+        /**
+         * The number of the block after the range
+         */
+        private final long to;
+
+        /**
+         * Creates a new ScanTask.
+         *
+         * @param source the digits
+         * @param from the number of the first block of the range
+         * @param to the number of the block after the range
+         */
+        ScanTask(DigitSource source, long from, long to) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to - from == 1) {
+                return block(source, from);
+            }
+            long middle = (from + to) >>> 1;
+            ScanTask right = new ScanTask(source, middle, to);
+            right.fork();
+            Summary left = new ScanTask(source, from, middle).compute();
+            return Summary.merge(left, right.join());
+        }
+    }
+
+    /**
+     * The statistics of a range of digits. Summaries are immutable.
+     */
+    public static final class Summary {
+
+        /**
+         * The number of times each digit appears
+         */
+        private final long[] counts;
+
+        /**
+         * The position of the first digit of the range
+         */
+        private final long start;
+
+        /**
+         * The number of digits in the range
+         */
+        private final long length;
+
+        /**
+         * The length of the run that the range starts with
+         */
+        private final long prefix;
+
+        /**
+         * The length of the run that the range ends with
+         */
+        private final long suffix;
+
+        /**
+         * The longest run in the range, the first one if they tie
+         */
+        private final Run longest;
+
+        /**
+         * The first and last digits of the range
+         */
+        private final int first, last;
+
+        /**
+         * Creates the Summary of no digits.
+         *
+         * @param radix the base of the digits
+         */
+        Summary(int radix) {
+            this(new long[radix], 0, 0, 0, 0, null, -1, -1);
+        }
+
+        /**
+         * Creates a new Summary.
+         *
+         * @param counts the number of times each digit appears
+         * @param start the position of the first digit
+         * @param length the number of digits
+         * @param prefix the length of the run the range starts with
+         * @param suffix the length of the run the range ends with
+         * @param longest the longest run
+         * @param first the first digit
+         * @param last the last digit
+         */
+        private Summary(long[] counts, long start, long length, long prefix,
+                long suffix, Run longest, int first, int last) {
+            this.counts = counts;
+            this.start = start;
+            this.length = length;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.longest = longest;
+            this.first = first;
+            this.last = last;
+        }
+
+        /**
+         * Summarizes some digits
+         *
+         * @param d the digit values
+         * @param start the position of the first one
+         * @param radix the base of the digits
+         * @return the summary
+         */
+        static Summary of(byte[] d, long start, int radix) {
+            if (d.length == 0) {
+                return new Summary(radix);
+            }
+            int[] counts = new int[16];
+            int runStart = 0, bestStart = 0, bestLength = 0;
+            for (int i = 0; i < d.length; i++) {
+                counts[d[i]]++;
+                if (d[i] != d[runStart]) {
+                    if (i - runStart > bestLength) {
+                        bestStart = runStart;
+                        bestLength = i - runStart;
+                    }
+                    runStart = i;
+                }
+            }
+            if (d.length - runStart > bestLength) {
+                bestStart = runStart;
+                bestLength = d.length - runStart;
+            }
+            int prefix = 1;
+            while (prefix < d.length && d[prefix] == d[0]) {
+                prefix++;
+            }
+
+            long[] total = new long[radix];
+            for (int i = 0; i < radix; i++) {
+                total[i] = counts[i];
+            }
+            return new Summary(total, start, d.length, prefix,
+                    d.length - runStart, new Run(d[bestStart],
+                            start + bestStart, bestLength),
+                    d[0], d[d.length - 1]);
+        }
+
+        /**
+         * Summarizes two neighboring ranges together
+         *
+         * @param a the summary of the first range
+         * @param b the summary of the range right after it
+         * @return the summary of both
+         */
+        static Summary merge(Summary a, Summary b) {
+            if (a.length == 0) {
+                return b;
+            } else if (b.length == 0) {
+                return a;
+            }
+            long[] counts = a.counts.clone();
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += b.counts[i];
+            }
+
+            boolean joined = a.last == b.first;
+            // in order of where they start, so the first of a tie wins
+            Run longest = a.longest;
+            if (joined && a.suffix + b.prefix > longest.length) {
+                longest = new Run(a.last, a.start + a.length - a.suffix,
+                        a.suffix + b.prefix);
+            }
+            if (b.longest.length > longest.length) {
+                longest = b.longest;
+            }
+            long prefix = joined && a.prefix == a.length
+                    ? a.length + b.prefix : a.prefix;
+            long suffix = joined && b.suffix == b.length
+                    ? b.length + a.suffix : b.suffix;
+            return new Summary(counts, a.start, a.length + b.length, prefix,
+                    suffix, longest, a.first, b.last);
+        }
+
+        /**
+         * Returns the number of digits summarized
+         *
+         * @return the number of digits
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the position of the first digit summarized
+         *
+         * @return the zero-based position
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the base of the digits
+         *
+         * @return the base
+         */
+        public int getRadix() {
+            return counts.length;
+        }
+
+        /**
+         * Returns how many times a digit appears
+         *
+         * @param digit the digit
+         * @return the number of times it appears
+         */
+        public long getCount(int digit) {
+            return counts[digit];
+        }
+
+        /**
+         * Returns the share of the digits that are a digit
+         *
+         * @param digit the digit
+         * @return the share, from 0 to 1
+         */
+        public double getFrequency(int digit) {
+            return length == 0 ? 0 : counts[digit] / (double) length;
+        }
+
+        /**
+         * Returns the longest run of one digit, the first one if they tie
+         *
+         * @return the longest run, or null if there are no digits
+         */
+        public Run getLongestRun() {
+            return longest;
+        }
+    }
+
+    /**
+     * A run of one digit
+     */
+    public static final class Run {
+
+        /**
+         * The digit
+         */
+        private final int digit;
+
+        /**
+         * The position of the first digit of the run
+         */
+        private final long start;
+
+        /**
+         * The number of digits in the run
+         */
+        private final long length;
+
+        /**
+         * Creates a new Run.
+         *
+         * @param digit the digit
+         * @param start the position of the first digit of the run
+         * @param length the number of digits in the run
+         */
+        Run(int digit, long start, long length) {
+            this.digit = digit;
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Returns the digit
+         *
+         * @return the digit
+         */
+        public int getDigit() {
+            return digit;
+        }
+
+        /**
+         * Returns the position of the first digit of the run
+         *
+         * @return the zero-based position
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the number of digits in the run
+         *
+         * @return the length
+         */
+        public long getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * A pattern of digits and how often it repeats
+     */
+    public static final class Pattern {
+
+        /**
+         * The digits of the pattern
+         */
+        private final String digits;
+
+        /**
+         * The position it first appears at
+         */
+        private final long start;
+
+        /**
+         * The number of times it appears
+         */
+        private final int count;
+
+        /**
+         * Creates a new Pattern.
+         *
+         * @param digits the digits of the pattern
+         * @param start the position it first appears at
+         * @param count the number of times it appears
+         */
+        Pattern(String digits, long start, int count) {
+            this.digits = digits;
+            this.start = start;
+            this.count = count;
+        }
+
+        /**
+         * Returns the digits of the pattern
+         *
+         * @return the digits
+         */
+        public String getDigits() {
+            return digits;
+        }
+
+        /**
+         * Returns the position it first appears at
+         *
+         * @return the zero-based position
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the number of times it appears
+         *
+         * @return the count
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+}
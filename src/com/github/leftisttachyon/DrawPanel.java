@@ -1,18 +1,23 @@
 package com.github.leftisttachyon;
 
+import java.awt.BorderLayout;
+import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.DisplayMode;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
+import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
+import java.awt.image.BufferStrategy;
+import java.util.Arrays;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import javax.swing.AbstractAction;
 import javax.swing.ActionMap;
 import javax.swing.InputMap;
@@ -27,20 +32,194 @@ import javax.swing.KeyStroke;
  */
 public final class DrawPanel extends JPanel {
 
+    /**
+     * The font to use for drawing characters
+     */
+    private static final Font CHAR_FONT = new Font("Segoe UI", Font.PLAIN, 60);
+
+    /**
+     * The system property that selects passive rendering ("passive") over
+     * active rendering ("active", the default)
+     */
+    public static final String RENDERING_PROPERTY = "pimemorization.rendering";
+
+    /**
+     * The refresh rate to pace frames to if the display does not report one
+     */
+    private static final int DEFAULT_REFRESH_RATE = 60;
+
+    /**
+     * The keys that control a replay while one is playing
+     */
+    private static final KeyStroke[] REPLAY_STROKES = {
+        KeyStroke.getKeyStroke(KeyEvent.VK_LEFT, 0),
+        KeyStroke.getKeyStroke(KeyEvent.VK_RIGHT, 0),
+        KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, 0),
+        KeyStroke.getKeyStroke('+'), KeyStroke.getKeyStroke('='),
+        KeyStroke.getKeyStroke(KeyEvent.VK_ADD, 0),
+        KeyStroke.getKeyStroke('-'),
+        KeyStroke.getKeyStroke(KeyEvent.VK_SUBTRACT, 0)};
+
+    /**
+     * The key code each of the REPLAY_STROKES is handed on as
+     */
+    private static final int[] REPLAY_KEYS = {KeyEvent.VK_LEFT,
+        KeyEvent.VK_RIGHT, KeyEvent.VK_SPACE, KeyEvent.VK_ADD,
+        KeyEvent.VK_ADD, KeyEvent.VK_ADD, KeyEvent.VK_SUBTRACT,
+        KeyEvent.VK_SUBTRACT};
+
     /**
      * A service
      */
     private ScheduledExecutorService service = null;
 
     /**
-     * A list of characters
+     * The falling digits, or null if this panel is not drawing; guarded by
+     * frameLock
+     */
+    private ParticleSystem particles = null;
+
+    /**
+     * Guards the particles, which are spawned on the EDT but may be painted
+     * by the render loop; the render loop waits on it while idle
+     */
+    private final Object frameLock = new Object();
+
+    /**
+     * Whether the next call to setDrawing(true) renders actively
+     */
+    private boolean activeRendering = !"passive".equalsIgnoreCase(
+            System.getProperty(RENDERING_PROPERTY));
+
+    /**
+     * The canvas that is rendered to actively, or null when rendering
+     * passively
+     */
+    private Canvas canvas = null;
+
+    /**
+     * The thread running the active render loop
+     */
+    private Thread renderThread = null;
+
+    /**
+     * Whether the active render loop should keep running
+     */
+    private volatile boolean rendering = false;
+
+    /**
+     * Whether a frame has been requested since the render loop went idle
+     */
+    private boolean frameRequested = false;
+
+    /**
+     * The key presses that the game has not read yet
+     */
+    private final KeyPressQueue presses = new KeyPressQueue(1024);
+
+    /**
+     * The color behind the text of the HUD
+     */
+    private static final Color HUD_BACKGROUND = new Color(0, 0, 0, 160);
+
+    /**
+     * The system property that shows the HUD from the start
+     */
+    public static final String HUD_PROPERTY = "pimemorization.hud";
+
+    /**
+     * The font the HUD is drawn in
+     */
+    private static final Font HUD_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+
+    /**
+     * How often the text of the HUD is refreshed, in nanoseconds
+     */
+    private static final long HUD_REFRESH = 250_000_000L;
+
+    /**
+     * Where timings are recorded, or null to not record them
+     */
+    private volatile Instrumentation stats = null;
+
+    /**
+     * Whether the HUD is drawn over the particles
+     */
+    private volatile boolean hudVisible = Boolean.getBoolean(HUD_PROPERTY);
+
+    /**
+     * The text of the HUD
+     */
+    private String[] hudLines = new String[0];
+
+    /**
+     * When the text of the HUD was last refreshed
+     */
+    private long hudUpdated = 0;
+
+    /**
+     * The colors of the time against the record: ahead, then behind
+     */
+    private static final Color[] DELTA_COLORS = {new Color(60, 220, 60),
+        new Color(255, 90, 90)};
+
+    /**
+     * The font the times of a speed run are drawn in
+     */
+    private static final Font SPEED_RUN_FONT
+            = new Font(Font.MONOSPACED, Font.BOLD, 13);
+
+    /**
+     * The speed run whose times are drawn, or null to not draw any
+     */
+    private volatile SpeedRun speedRun = null;
+
+    /**
+     * The text of the times of the speed run, its first line colored by
+     * speedRunColor
+     */
+    private String[] speedRunLines = new String[0];
+
+    /**
+     * The color of the first line of the times of the speed run
+     */
+    private Color speedRunColor = Color.WHITE;
+
+    /**
+     * The version of the speed run that its text was worked out for
      */
-    private ArrayList<DrawableCharacter> characters = null;
+    private long speedRunVersion = -1;
 
     /**
-     * Stores the last key pressed.
+     * The press times of digits spawned since the last frame; guarded by
+     * frameLock
      */
-    private int lastKeyPressed = -1;
+    private long[] unshown = new long[64];
+
+    /**
+     * The number of digits spawned since the last frame
+     */
+    private int unshownCount = 0;
+
+    /**
+     * The press times of digits drawn for the first time in this frame
+     */
+    private long[] drawn = new long[64];
+
+    /**
+     * The number of digits drawn for the first time in this frame
+     */
+    private int drawnCount = 0;
+
+    /**
+     * When the last frame was shown, or 0 if the frame before it was idle
+     */
+    private long lastFrame = 0;
+
+    /**
+     * Whether a frame has been shown yet
+     */
+    private boolean firstFrameShown = false;
 
     /**
      * Creates a new DrawPanel.
@@ -48,6 +227,7 @@ public final class DrawPanel extends JPanel {
     public DrawPanel() {
         super();
 
+        setLayout(new BorderLayout());
         setPreferredSize(new Dimension(500, 500));
 
         int condition = JComponent.WHEN_IN_FOCUSED_WINDOW;
@@ -58,10 +238,7 @@ public final class DrawPanel extends JPanel {
         actMap.put("Escape", new AbstractAction() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                lastKeyPressed = KeyEvent.VK_ESCAPE;
-                synchronized (DrawPanel.this) {
-                    DrawPanel.this.notifyAll();
-                }
+                keyPressed(KeyEvent.VK_ESCAPE, System.nanoTime());
             }
         });
         
@@ -69,10 +246,17 @@ public final class DrawPanel extends JPanel {
         actMap.put("Pause", new AbstractAction() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                lastKeyPressed = KeyEvent.VK_PAUSE;
-                synchronized (DrawPanel.this) {
-                    DrawPanel.this.notifyAll();
-                }
+                keyPressed(KeyEvent.VK_PAUSE, System.nanoTime());
+            }
+        });
+
+        inMap.put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), "HUD");
+        actMap.put("HUD", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                hudVisible = !hudVisible;
+                requestFrame();
+                repaint();
             }
         });
 
@@ -84,16 +268,124 @@ public final class DrawPanel extends JPanel {
             actMap.put(s, new AbstractAction() {
                 @Override
                 public void actionPerformed(ActionEvent e) {
-                    characters.add(new DrawableCharacter(cc));
-                    lastKeyPressed = cc;
-                    synchronized (DrawPanel.this) {
-                        DrawPanel.this.notifyAll();
-                    }
+                    digitPressed(cc, System.nanoTime());
+                }
+            });
+        }
+        for (char c = 'A'; c <= 'F'; c++) {
+            final char cc = c;
+            actMap.put(String.valueOf(c), new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    digitPressed(cc, System.nanoTime());
+                }
+            });
+        }
+        for (int key : REPLAY_KEYS) {
+            actMap.put("Replay " + key, new AbstractAction() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    keyPressed(key, System.nanoTime());
                 }
             });
         }
     }
 
+    /**
+     * Turns the keys that control a replay on or off: Left and Right, Space,
+     * + and -. They are handed on like Escape and Pause, as VK_LEFT,
+     * VK_RIGHT, VK_SPACE, VK_ADD and VK_SUBTRACT. Must be called on the EDT.
+     *
+     * @param on whether a replay is playing
+     */
+    public void setReplayControls(boolean on) {
+        InputMap inMap = getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        for (int i = 0; i < REPLAY_STROKES.length; i++) {
+            if (on) {
+                inMap.put(REPLAY_STROKES[i], "Replay " + REPLAY_KEYS[i]);
+            } else {
+                inMap.remove(REPLAY_STROKES[i]);
+            }
+        }
+    }
+
+    /**
+     * Sets the base of the digits this panel takes. In hex, the keys A-F
+     * are digits too, typed in either case.
+     *
+     * @param radix 10, or 16 for hex
+     * @throws IllegalArgumentException if the radix is not 10 or 16
+     */
+    public void setRadix(int radix) {
+        if (radix != 10 && radix != 16) {
+            throw new IllegalArgumentException("radix " + radix);
+        }
+        InputMap inMap = getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW);
+        for (char c = 'A'; c <= 'F'; c++) {
+            for (char typed : new char[]{c, Character.toLowerCase(c)}) {
+                if (radix == 16) {
+                    inMap.put(KeyStroke.getKeyStroke(typed), String.valueOf(c));
+                } else {
+                    inMap.remove(KeyStroke.getKeyStroke(typed));
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a digit key press: spawns its particle and hands it to the
+     * game
+     *
+     * @param c the digit that was pressed, '0'-'9', or 'A'-'F' in hex
+     * @param time when it was pressed, from System.nanoTime()
+     */
+    void digitPressed(char c, long time) {
+        synchronized (frameLock) {
+            if (particles != null) {
+                particles.spawn(Character.digit(c, 16), getWidth() / 2,
+                        getHeight() / 2);
+                if (unshownCount == unshown.length) {
+                    unshown = Arrays.copyOf(unshown, unshownCount * 2);
+                }
+                unshown[unshownCount++] = time;
+                frameLock.notifyAll();
+            }
+        }
+        received(c, presses.offer(c, time));
+    }
+
+    /**
+     * Hands a key press that is not a digit, like Escape or Pause, to the
+     * game. Must be called on the EDT, like digitPressed().
+     *
+     * @param key the key code that was pressed
+     * @param time when it was pressed, from System.nanoTime()
+     */
+    void keyPressed(int key, long time) {
+        received(key, presses.offer(key, time));
+    }
+
+    /**
+     * Records a key press for the flight recorder
+     *
+     * @param key the key that was pressed
+     * @param queued whether it fit in the queue
+     */
+    private static void received(int key, boolean queued) {
+        FlightEvents.keyReceived(key, queued);
+    }
+
+    /**
+     * Returns the number of live particles
+     *
+     * @return the number of live particles
+     */
+    int getParticleCount() {
+        synchronized (frameLock) {
+            return particles == null ? 0 : particles.size();
+        }
+    }
+
     /**
      * Sets whether this panel is drawing or not
      *
@@ -101,155 +393,460 @@ public final class DrawPanel extends JPanel {
      */
     public void setDrawing(boolean isDrawing) {
         if (isDrawing) {
-            service = Executors.newSingleThreadScheduledExecutor();
-            service.scheduleAtFixedRate(this::repaint,
-                    0, 15, TimeUnit.MILLISECONDS);
+            synchronized (frameLock) {
+                particles = new ParticleSystem(CHAR_FONT, 256);
+            }
 
-            characters = new ArrayList<>();
+            if (activeRendering) {
+                if (canvas == null) {
+                    canvas = new RenderCanvas();
+                    add(canvas, BorderLayout.CENTER);
+                    revalidate();
+                }
+                rendering = true;
+                renderThread = new Thread(this::renderLoop,
+                        "DrawPanel render loop");
+                renderThread.setDaemon(true);
+                renderThread.start();
+            } else {
+                service = Executors.newSingleThreadScheduledExecutor();
+                service.scheduleAtFixedRate(this::repaint,
+                        0, 15, TimeUnit.MILLISECONDS);
+            }
         } else {
-            service.shutdown();
-            service = null;
+            if (service != null) {
+                service.shutdown();
+                service = null;
+            }
+            if (renderThread != null) {
+                rendering = false;
+                renderThread.interrupt();
+                renderThread = null;
+            }
 
-            characters = null;
+            synchronized (frameLock) {
+                particles = null;
+            }
         }
     }
 
+    /**
+     * Sets whether this panel renders actively, on its own render loop, or
+     * passively, through repaint(). Takes effect on the next call to
+     * setDrawing(true).
+     *
+     * @param active whether to render actively
+     */
+    public void setActiveRendering(boolean active) {
+        if (!active && canvas != null) {
+            remove(canvas);
+            canvas = null;
+            revalidate();
+        }
+        activeRendering = active;
+    }
+
     @Override
     public void paint(Graphics g) {
-        try {
-            if (characters != null) {
-                g.setColor(Color.WHITE);
-                g.fillRect(0, 0, getWidth(), getHeight());
-
-                Graphics2D g2D = (Graphics2D) g;
-
-                for (int i = characters.size() - 1; i >= 0; i--) {
-                    DrawableCharacter dChar = characters.get(i);
-                    dChar.paint(g2D);
+        if (canvas != null) {
+            super.paint(g);
+            return;
+        }
 
-                    if (!dChar.isDrawn()) {
-                        characters.remove(i);
-                    }
-                }
+        try {
+            if (particles != null) {
+                long start = System.nanoTime();
+                boolean idle = drawFrame((Graphics2D) g, getWidth(), getHeight());
+                frameShown(start, System.nanoTime(), idle);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            paintFailed(e);
         }
     }
 
     /**
-     * Gets the next key press that is listened to
+     * Reports a frame that could not be painted
+     *
+     * @param e what was thrown
+     */
+    private static void paintFailed(Exception e) {
+        FlightEvents.paintFailed(e);
+        e.printStackTrace();
+    }
+
+    /**
+     * Draws one frame: the background, the particles and the HUD. The
+     * particles move by one step.
      *
-     * @return the next key press that is listened to
-     * @throws InterruptedException if the wait() method is interrupted
+     * @param g2D the Graphics2D object to use
+     * @param width the width of the area to draw in
+     * @param height the height of the area to draw in
+     * @return whether no particles are left alive after this frame
      */
-    public int getNextPress() throws InterruptedException {
-        synchronized (this) {
-            this.wait();
+    private boolean drawFrame(Graphics2D g2D, int width, int height) {
+        Object span = FlightEvents.beginFrame();
+        g2D.setColor(Color.WHITE);
+        g2D.fillRect(0, 0, width, height);
+
+        boolean idle;
+        synchronized (frameLock) {
+            if (particles != null) {
+                particles.paint(g2D);
+            }
+            idle = particles == null || particles.size() == 0;
+
+            if (drawnCount + unshownCount > drawn.length) {
+                drawn = Arrays.copyOf(drawn, 2 * (drawnCount + unshownCount));
+            }
+            System.arraycopy(unshown, 0, drawn, drawnCount, unshownCount);
+            drawnCount += unshownCount;
+            unshownCount = 0;
         }
 
-        return lastKeyPressed;
+        if (hudVisible) {
+            drawHud(g2D);
+        }
+        drawSpeedRun(g2D, width);
+        if (span != null) {
+            FlightEvents.endFrame(span, getParticleCount(), canvas != null);
+        }
+        return idle;
     }
 
     /**
-     * The font to use for drawing characters
+     * Records the timings of a frame once it is on screen
+     *
+     * @param start when drawing the frame started
+     * @param end when drawing the frame ended
+     * @param idle whether no particles are left alive after this frame
      */
-    private static final Font CHAR_FONT = new Font("Segoe UI", Font.PLAIN, 60);
+    private void frameShown(long start, long end, boolean idle) {
+        long now = System.nanoTime();
+        if (!firstFrameShown) {
+            firstFrameShown = true;
+            StartupLog.mark("first frame");
+        }
+        Instrumentation s = stats;
+        if (s != null) {
+            s.paintTime.record(end - start);
+            if (lastFrame != 0) {
+                s.frameTime.record(now - lastFrame);
+            }
+            for (int i = 0; i < drawnCount; i++) {
+                s.keyToPhoton.record(now - drawn[i]);
+            }
+        }
+        drawnCount = 0;
+        lastFrame = idle ? 0 : now;
+    }
 
     /**
-     * A character that I can draw
+     * Draws the timing histograms in the top-left corner
+     *
+     * @param g2D the Graphics2D object to use
      */
-    private class DrawableCharacter {
-
-        /**
-         * The character to draw
-         */
-        private final String character;
-
-        /**
-         * The coordinates of the character
-         */
-        private float x, y;
+    private void drawHud(Graphics2D g2D) {
+        Instrumentation s = stats;
+        if (s == null) {
+            return;
+        }
 
-        /**
-         * x and y velocities
-         */
-        private final float dx, dy;
+        long now = System.nanoTime();
+        if (now - hudUpdated > HUD_REFRESH) {
+            LatencyHistogram[] histograms = s.getHistograms();
+            String[] lines = new String[histograms.length + 1];
+            synchronized (frameLock) {
+                lines[0] = "particles: "
+                        + (particles == null ? 0 : particles.size())
+                        + "   dropped keys: " + presses.getDropped();
+            }
+            ReadAheadSource readAhead = s.getReadAhead();
+            if (readAhead != null) {
+                lines[0] += "   read-ahead hits/misses: "
+                        + readAhead.getHits() + "/" + readAhead.getMisses();
+            }
+            for (int i = 0; i < histograms.length; i++) {
+                LatencyHistogram h = histograms[i];
+                lines[i + 1] = String.format("%-6s p50 %7.2f  p99 %7.2f  "
+                        + "max %7.2f ms", h.getName(),
+                        h.getPercentile(0.5) / 1e6,
+                        h.getPercentile(0.99) / 1e6, h.getMax() / 1e6);
+            }
+            hudLines = lines;
+            hudUpdated = now;
+        }
 
-        /**
-         * The amount of opacity
-         */
-        private float opacity;
+        g2D.setFont(HUD_FONT);
+        FontMetrics metrics = g2D.getFontMetrics();
+        int lineHeight = metrics.getHeight(), width = 0;
+        for (String line : hudLines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        g2D.setColor(HUD_BACKGROUND);
+        g2D.fillRect(0, 0, width + 10, lineHeight * hudLines.length + 10);
+        g2D.setColor(Color.WHITE);
+        for (int i = 0; i < hudLines.length; i++) {
+            g2D.drawString(hudLines[i], 5, 5 + metrics.getAscent()
+                    + i * lineHeight);
+        }
+    }
 
-        /**
-         * Creates a new DrawableCharacter given the parameters.
-         *
-         * @param c the character to draw
-         * @param x the x-coordinate to start at
-         * @param y the y-coordinate to start at
-         */
-        public DrawableCharacter(char c, int x, int y) {
-            character = String.valueOf(c);
-            this.x = x;
-            this.y = y;
+    /**
+     * Draws the times of the speed run in the top-right corner, until the
+     * next session starts. Only the text is worked out again, and only when the
+     * run has changed; the times in it are all from when keys were typed.
+     *
+     * @param g2D the Graphics2D object to use
+     * @param width the width of the area to draw in
+     */
+    private void drawSpeedRun(Graphics2D g2D, int width) {
+        SpeedRun run = speedRun;
+        if (run == null) {
+            return;
+        }
 
-            dx = (float) (Math.random() * 4 - 2);
-            dy = (float) (Math.random() * 4 - 2);
+        synchronized (run) {
+            if (run.getVersion() != speedRunVersion) {
+                speedRunVersion = run.getVersion();
+                speedRunLines = speedRunText(run);
+            }
+        }
+        if (speedRunLines.length == 0) {
+            return;
+        }
 
-            opacity = 1.0f;
+        g2D.setFont(SPEED_RUN_FONT);
+        FontMetrics metrics = g2D.getFontMetrics();
+        int lineHeight = metrics.getHeight(), textWidth = 0;
+        for (String line : speedRunLines) {
+            textWidth = Math.max(textWidth, metrics.stringWidth(line));
         }
+        int x = width - textWidth - 10;
+        g2D.setColor(HUD_BACKGROUND);
+        g2D.fillRect(x - 5, 0, textWidth + 10,
+                lineHeight * speedRunLines.length + 10);
+        for (int i = 0; i < speedRunLines.length; i++) {
+            g2D.setColor(i == 0 ? speedRunColor : Color.WHITE);
+            g2D.drawString(speedRunLines[i], x, 5 + metrics.getAscent()
+                    + i * lineHeight);
+        }
+    }
 
-        /**
-         * Creates a new DrawableCharacter at the center of the screen.
-         *
-         * @param c the character to draw
-         */
-        public DrawableCharacter(char c) {
-            this(c, getWidth() / 2, getHeight() / 2);
+    /**
+     * Writes up the times of a speed run: how far ahead of or behind the
+     * record it is, how fast it is going, and its last stretch of every
+     * length against the same stretch of the record. Sets the color of the
+     * first line.
+     *
+     * @param run the run, locked by the caller
+     * @return the lines to draw, or none if the run has no digits yet
+     */
+    private String[] speedRunText(SpeedRun run) {
+        long digits = run.getDigits();
+        if (digits == 0) {
+            return new String[0];
         }
 
-        /**
-         * Paints this object
-         *
-         * @param g2D the Graphics2D object to use
-         */
-        public void paint(Graphics2D g2D) {
-            if (opacity <= 0) {
-                return;
+        String[] lines = new String[5];
+        int n = 0;
+        long delta = run.getDelta();
+        if (delta == Long.MIN_VALUE) {
+            speedRunColor = Color.WHITE;
+            lines[n++] = run.isNewRecord() ? "new record!"
+                    : "record: " + run.getRecordDigits() + " digits";
+        } else {
+            speedRunColor = DELTA_COLORS[delta <= 0 ? 0 : 1];
+            lines[n++] = String.format("%+.3f s%s", delta / 1e9,
+                    run.isNewRecord() ? "  new record!" : "");
+        }
+        lines[n++] = String.format("%d digits  %.3f s  %.2f digits/s",
+                digits, run.getElapsed() / 1e9, run.getRate());
+        for (int length = SpeedRun.SPLIT; length <= SpeedRun.LONGEST_SPLIT
+                && length <= digits; length *= 10) {
+            long end = digits / SpeedRun.SPLIT * SpeedRun.SPLIT;
+            long segment = run.getSegment(end, length);
+            if (segment < 0) {
+                break;
             }
+            long record = run.getRecordSegment(end, length);
+            lines[n++] = String.format("%4d to %-6d %8.3f s%s",
+                    end - length + 1, end, segment / 1e9, record < 0 ? ""
+                            : String.format(" %+.3f", (segment - record) / 1e9));
+        }
+        return Arrays.copyOf(lines, n);
+    }
 
-            g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                    RenderingHints.VALUE_ANTIALIAS_ON);
-            g2D.setFont(CHAR_FONT);
+    /**
+     * Sets the speed run whose times are drawn
+     *
+     * @param speedRun the speed run, or null to not draw any
+     */
+    public void setSpeedRun(SpeedRun speedRun) {
+        this.speedRun = speedRun;
+        requestFrame();
+        repaint();
+    }
 
-            Color color = new Color(0, 0, 0, opacity);
-            g2D.setColor(color);
+    /**
+     * Sets where timings are recorded
+     *
+     * @param stats where to record timings, or null to not record them
+     */
+    public void setInstrumentation(Instrumentation stats) {
+        this.stats = stats;
+    }
 
-            FontMetrics metrics = g2D.getFontMetrics();
-            int height = metrics.getHeight(),
-                    width = metrics.stringWidth(character);
+    /**
+     * Renders frames to the canvas through a BufferStrategy, paced to the
+     * refresh rate of the display. When no particles are alive, the loop
+     * draws one last frame and then sleeps until a particle is spawned or a
+     * frame is requested. A frame that throws is reported like one that
+     * paint() could not draw, and the loop goes on to the next one.
+     */
+    private void renderLoop() {
+        BufferStrategy strategy = null;
+        long period = 0, next = System.nanoTime();
+        boolean idle = false;
+
+        while (rendering) {
+            synchronized (frameLock) {
+                while (rendering && idle && !frameRequested
+                        && (particles == null || particles.size() == 0)) {
+                    try {
+                        frameLock.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    next = System.nanoTime();
+                }
+                frameRequested = false;
+            }
+            if (!rendering) {
+                return;
+            }
 
-            g2D.drawString(character, x - width / 2, y + height / 4);
+            Canvas c = canvas;
+            if (c == null || !c.isDisplayable()
+                    || c.getWidth() <= 0 || c.getHeight() <= 0) {
+                // not on screen yet; its first paint() will request a frame
+                idle = true;
+                LockSupport.parkNanos(10_000_000L);
+                continue;
+            }
+            if (strategy == null) {
+                c.createBufferStrategy(2);
+                strategy = c.getBufferStrategy();
+
+                int rate = c.getGraphicsConfiguration().getDevice()
+                        .getDisplayMode().getRefreshRate();
+                if (rate == DisplayMode.REFRESH_RATE_UNKNOWN) {
+                    rate = DEFAULT_REFRESH_RATE;
+                }
+                period = 1_000_000_000L / rate;
+            }
 
-            // update
-            x += dx;
-            y += dy;
+            long start = System.nanoTime(), end;
+            try {
+                do {
+                    do {
+                        Graphics2D g2D = (Graphics2D) strategy.getDrawGraphics();
+                        try {
+                            idle = drawFrame(g2D, c.getWidth(), c.getHeight());
+                        } finally {
+                            g2D.dispose();
+                        }
+                    } while (strategy.contentsRestored());
+                    end = System.nanoTime();
+                    strategy.show();
+                } while (strategy.contentsLost());
+                Toolkit.getDefaultToolkit().sync();
+                frameShown(start, end, idle);
+            } catch (IllegalStateException ex) {
+                // the canvas lost its peer; recreate the strategy next frame
+                strategy = null;
+                idle = true;
+                continue;
+            } catch (RuntimeException ex) {
+                // a frame that fails must not stop the loop, or the window
+                // freezes while the game still takes keys
+                paintFailed(ex);
+            }
 
-            opacity -= 0.008f;
+            next += period;
+            long delay = next - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            } else {
+                next = System.nanoTime();
+            }
         }
+    }
+
+    /**
+     * Asks the render loop to draw a frame even if nothing is animating
+     */
+    private void requestFrame() {
+        synchronized (frameLock) {
+            frameRequested = true;
+            frameLock.notifyAll();
+        }
+    }
+
+    /**
+     * The heavyweight canvas that the render loop draws to. System paint
+     * requests (exposure, resizing) are forwarded to the render loop.
+     */
+    private final class RenderCanvas extends Canvas {
 
         /**
-         * Determines whether the character is still being drawn
-         *
-         * @return whether the character is still being drawn
+         * Creates a new RenderCanvas.
          */
-        public boolean isDrawn() {
-            return opacity > 0;
+        RenderCanvas() {
+            setFocusable(false);
+            setBackground(Color.WHITE);
         }
 
         @Override
-        public String toString() {
-            return "Drawable " + character + " x=" + x + " y=" + y;
+        public void update(Graphics g) {
+            requestFrame();
         }
+
+        @Override
+        public void paint(Graphics g) {
+            requestFrame();
+        }
+    }
+
+    /**
+     * Waits for the next key presses that are listened to, and moves all of
+     * the presses that have arrived into the given arrays
+     *
+     * @param keys the array to write the key codes to
+     * @param times the array to write the System.nanoTime() of each press to
+     * @return the number of presses moved, which is at least one
+     * @throws InterruptedException if the wait is interrupted
+     */
+    public int takePresses(int[] keys, long[] times)
+            throws InterruptedException {
+        return presses.take(keys, times);
+    }
+
+    /**
+     * Moves the key presses that have arrived into the given arrays without
+     * waiting
+     *
+     * @param keys the array to write the key codes to
+     * @param times the array to write the System.nanoTime() of each press to
+     * @return the number of presses moved
+     */
+    public int pollPresses(int[] keys, long[] times) {
+        return presses.poll(keys, times);
+    }
+
+    /**
+     * Discards the key presses that have not been read yet
+     */
+    public void clearPresses() {
+        presses.clear();
     }
 }
@@ -0,0 +1,418 @@
+package com.github.leftisttachyon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules drills of fixed-size chunks of digits with the SM-2 spaced
+ * repetition algorithm. Chunks that have been drilled sit in an indexed
+ * min-heap keyed by when they are next due, with the weaker chunk first on
+ * ties, so picking the next drill and rescheduling one are both O(log n).
+ * New chunks are introduced in order, and only up to the PB, once nothing is
+ * due, and no more than a few of them in each session, like the new cards a
+ * day of SM-2 flash cards. The state of each chunk is 16 bytes, both in
+ * memory and on disk.
+ *
+ * @author Jed Wang
+ */
+public final class DrillScheduler {
+
+    /**
+     * The magic number at the start of every drill file ("PID1")
+     */
+    public static final int MAGIC = 0x50494431;
+
+    /**
+     * The default number of digits in each chunk
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 10;
+
+    /**
+     * The default number of new chunks introduced in one session
+     */
+    public static final int DEFAULT_NEW_CHUNKS = 5;
+
+    /**
+     * The easiness factor of a new chunk, in hundredths
+     */
+    private static final int INITIAL_EASE = 250;
+
+    /**
+     * The smallest easiness factor, in hundredths
+     */
+    private static final int MIN_EASE = 130;
+
+    /**
+     * The interval before a missed chunk is drilled again, in minutes
+     */
+    private static final int RELEARN_MINUTES = 10;
+
+    /**
+     * The number of minutes in a day
+     */
+    private static final int DAY_MINUTES = 24 * 60;
+
+    /**
+     * The number of digits in each chunk
+     */
+    private final int chunkSize;
+
+    /**
+     * The number of chunks that have been introduced; chunks 0 to
+     * introduced - 1 are all in the heap
+     */
+    private int introduced = 0;
+
+    /**
+     * The easiness factor of each chunk, in hundredths
+     */
+    private short[] ease = new short[0];
+
+    /**
+     * The number of times in a row each chunk was recalled
+     */
+    private short[] repetitions = new short[0];
+
+    /**
+     * The current interval of each chunk, in minutes
+     */
+    private int[] interval = new int[0];
+
+    /**
+     * When each chunk is next due, from System.currentTimeMillis()
+     */
+    private long[] due = new long[0];
+
+    /**
+     * The heap of chunks
+     */
+    private int[] heap = new int[0];
+
+    /**
+     * Where each chunk is in the heap
+     */
+    private int[] slot = new int[0];
+
+    /**
+     * Creates a new, empty DrillScheduler.
+     *
+     * @param chunkSize the number of digits in each chunk
+     */
+    public DrillScheduler(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunk size " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the number of digits in each chunk
+     *
+     * @return the number of digits in each chunk
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Returns the number of chunks that have been introduced
+     *
+     * @return the number of chunks that have been introduced
+     */
+    public synchronized int size() {
+        return introduced;
+    }
+
+    /**
+     * Returns whether a chunk that has been drilled before is due
+     *
+     * @param now the current time, from System.currentTimeMillis()
+     * @return whether a chunk is due
+     */
+    public synchronized boolean isDue(long now) {
+        return introduced > 0 && due[heap[0]] <= now;
+    }
+
+    /**
+     * Returns the chunk that should be drilled next: the most overdue chunk
+     * if any is due, otherwise the next new chunk that lies within the
+     * given number of known digits, if more new chunks may be introduced.
+     * The chunk is not rescheduled until it is graded.
+     *
+     * @param now the current time, from System.currentTimeMillis()
+     * @param known the number of digits the user knows, usually the PB
+     * @param newChunks the number of new chunks that may still be
+     * introduced in this session
+     * @return the chunk to drill, or -1 if nothing needs drilling
+     */
+    public synchronized int next(long now, long known, int newChunks) {
+        if (isDue(now)) {
+            return heap[0];
+        }
+        if (newChunks > 0 && (long) (introduced + 1) * chunkSize <= known
+                && introduced < Integer.MAX_VALUE) {
+            return introduced;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns when a chunk is next due
+     *
+     * @param chunk the chunk
+     * @return when it is next due, from System.currentTimeMillis(), or 0 if
+     * it was never drilled
+     */
+    public synchronized long getDue(int chunk) {
+        return chunk < introduced ? due[chunk] : 0;
+    }
+
+    /**
+     * Returns the easiness factor of a chunk
+     *
+     * @param chunk the chunk
+     * @return the easiness factor, where 1.3 is the hardest
+     */
+    public synchronized double getEase(int chunk) {
+        return (chunk < introduced ? ease[chunk] : INITIAL_EASE) / 100.0;
+    }
+
+    /**
+     * Turns the result of a drill into an SM-2 quality from 0 to 5
+     *
+     * @param errors the number of wrong keys
+     * @param millisPerDigit the mean time taken per digit
+     * @return the quality of the recall
+     */
+    public static int quality(int errors, double millisPerDigit) {
+        if (errors == 0) {
+            return millisPerDigit <= 800 ? 5 : millisPerDigit <= 2000 ? 4 : 3;
+        }
+        return errors == 1 ? 2 : errors <= 3 ? 1 : 0;
+    }
+
+    /**
+     * Grades a drill of a chunk and reschedules it
+     *
+     * @param chunk the chunk, as returned by next()
+     * @param quality the quality of the recall, from 0 (blackout) to 5
+     * (perfect)
+     * @param now the current time, from System.currentTimeMillis()
+     */
+    public synchronized void grade(int chunk, int quality, long now) {
+        if (quality < 0 || quality > 5) {
+            throw new IllegalArgumentException("quality " + quality);
+        }
+        if (chunk == introduced) {
+            introduce();
+        } else if (chunk < 0 || chunk > introduced) {
+            throw new IllegalArgumentException("chunk " + chunk
+                    + " has not been served");
+        }
+
+        int q = 5 - quality;
+        ease[chunk] = (short) Math.max(MIN_EASE,
+                ease[chunk] + 10 - q * (8 + q * 2));
+        if (quality < 3) {
+            repetitions[chunk] = 0;
+            interval[chunk] = RELEARN_MINUTES;
+        } else {
+            int reps = ++repetitions[chunk];
+            if (reps == 1) {
+                interval[chunk] = DAY_MINUTES;
+            } else if (reps == 2) {
+                interval[chunk] = 6 * DAY_MINUTES;
+            } else {
+                interval[chunk] = (int) Math.min(Integer.MAX_VALUE,
+                        Math.max(interval[chunk], DAY_MINUTES)
+                        * (long) ease[chunk] / 100);
+            }
+        }
+        due[chunk] = now + TimeUnit.MINUTES.toMillis(interval[chunk]);
+
+        int i = slot[chunk];
+        siftDown(siftUp(i));
+    }
+
+    /**
+     * Loads the scheduler saved in a file. A missing or damaged file, or one
+     * saved with a different chunk size, starts over.
+     *
+     * @param file the drill file
+     * @param chunkSize the number of digits in each chunk
+     * @return the loaded scheduler
+     */
+    public static DrillScheduler load(File file, int chunkSize) {
+        DrillScheduler scheduler = new DrillScheduler(chunkSize);
+        if (!file.isFile()) {
+            return scheduler;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != chunkSize) {
+                return scheduler;
+            }
+            int n = in.readInt();
+            if (n < 0) {
+                return scheduler;
+            }
+            scheduler.ensureCapacity(n);
+            for (int c = 0; c < n; c++) {
+                scheduler.ease[c] = in.readShort();
+                scheduler.repetitions[c] = in.readShort();
+                scheduler.interval[c] = in.readInt();
+                scheduler.due[c] = in.readLong();
+                scheduler.heap[c] = c;
+                scheduler.slot[c] = c;
+            }
+            scheduler.introduced = n;
+            for (int i = n / 2 - 1; i >= 0; i--) {
+                scheduler.siftDown(i);
+            }
+            return scheduler;
+        } catch (IOException ex) {
+            return new DrillScheduler(chunkSize);
+        }
+    }
+
+    /**
+     * Saves the scheduler to a file
+     *
+     * @param file the drill file
+     * @throws IOException the standard IOException reasons
+     */
+    public synchronized void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(chunkSize);
+            out.writeInt(introduced);
+            for (int c = 0; c < introduced; c++) {
+                out.writeShort(ease[c]);
+                out.writeShort(repetitions[c]);
+                out.writeInt(interval[c]);
+                out.writeLong(due[c]);
+            }
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Adds the next new chunk to the heap
+     */
+    private void introduce() {
+        int c = introduced;
+        ensureCapacity(c + 1);
+        ease[c] = INITIAL_EASE;
+        repetitions[c] = 0;
+        interval[c] = 0;
+        due[c] = 0;
+        heap[c] = c;
+        slot[c] = c;
+        introduced++;
+        siftUp(c);
+    }
+
+    /**
+     * Makes room for the given number of chunks
+     *
+     * @param needed the number of chunks to make room for
+     */
+    private void ensureCapacity(int needed) {
+        if (needed <= heap.length) {
+            return;
+        }
+        int c = Math.max(needed, Math.max(256, heap.length * 2));
+        ease = Arrays.copyOf(ease, c);
+        repetitions = Arrays.copyOf(repetitions, c);
+        interval = Arrays.copyOf(interval, c);
+        due = Arrays.copyOf(due, c);
+        heap = Arrays.copyOf(heap, c);
+        slot = Arrays.copyOf(slot, c);
+    }
+
+    /**
+     * Returns whether one chunk should be drilled before another
+     *
+     * @param a a chunk
+     * @param b another chunk
+     * @return whether a comes first
+     */
+    private boolean before(int a, int b) {
+        if (due[a] != due[b]) {
+            return due[a] < due[b];
+        }
+        return ease[a] < ease[b];
+    }
+
+    /**
+     * Moves the chunk at a heap index up until its parent comes before it
+     *
+     * @param i the heap index
+     * @return the new heap index of the chunk
+     */
+    private int siftUp(int i) {
+        int c = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(c, heap[parent])) {
+                break;
+            }
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(c, i);
+        return i;
+    }
+
+    /**
+     * Moves the chunk at a heap index down until it comes before its
+     * children
+     *
+     * @param i the heap index
+     */
+    private void siftDown(int i) {
+        int c = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= introduced) {
+                break;
+            }
+            if (child + 1 < introduced && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], c)) {
+                break;
+            }
+            place(heap[child], i);
+            i = child;
+        }
+        place(c, i);
+    }
+
+    /**
+     * Puts a chunk at a heap index
+     *
+     * @param chunk the chunk
+     * @param i the heap index
+     */
+    private void place(int chunk, int i) {
+        heap[i] = chunk;
+        slot[chunk] = i;
+    }
+}
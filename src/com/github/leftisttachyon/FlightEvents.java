@@ -0,0 +1,182 @@
+package com.github.leftisttachyon;
+
+/**
+ * The Java Flight Recorder events of the game: keys coming in, digits being
+ * judged, frames being painted, dialogs staying up and the digits loading.
+ * They are all off by default, even in the recordings the JDK ships
+ * settings for, so that they cost next to nothing, and the events of every
+ * key and every frame are only created when they are being recorded. The
+ * pimemorization.jfc next to the digit files turns them on:
+ * <pre>
+ * java -XX:StartFlightRecording:settings=pimemorization.jfc,filename=pi.jfr -jar PiMemorization.jar
+ * </pre>
+ * Not every JVM the game runs on has a flight recorder, so nothing here
+ * touches jdk.jfr: the events themselves are in FlightRecorderEvents, which
+ * is only used once it is known to load. Without it, every method here does
+ * nothing. A span is begun by one method and handed to the matching end
+ * method; it is null whenever nothing is being recorded.
+ *
+ * @author Jed Wang
+ */
+public final class FlightEvents {
+
+    /**
+     * The category every event is in
+     */
+    public static final String CATEGORY = "Pi Memorization";
+
+    /**
+     * Whether the flight recorder can be loaded
+     */
+    private static final boolean AVAILABLE = probe();
+
+    /**
+     * No FlightEvents.
+     */
+    private FlightEvents() {
+    }
+
+    /**
+     * Finds out whether the flight recorder can be loaded
+     *
+     * @return whether jdk.jfr is there
+     */
+    private static boolean probe() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            Class.forName("jdk.jfr.FlightRecorder");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether the flight recorder can be loaded
+     *
+     * @return whether events can be recorded at all
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Records a key the window got, before the game reads it
+     *
+     * @param key the digit that was typed, or the key code of any other key
+     * @param queued whether the key fit in the queue the game reads from
+     */
+    public static void keyReceived(int key, boolean queued) {
+        if (AVAILABLE) {
+            FlightRecorderEvents.keyReceived(key, queued);
+        }
+    }
+
+    /**
+     * Begins the game judging a key
+     *
+     * @return the span, or null if it is not being recorded
+     */
+    public static Object beginJudging() {
+        return AVAILABLE ? FlightRecorderEvents.beginJudging() : null;
+    }
+
+    /**
+     * Ends the game judging a key, once every listener is done with it
+     *
+     * @param span what beginJudging() returned
+     * @param position the zero-based position of the digit that was asked
+     * for
+     * @param key the key that was typed
+     * @param correct whether the key was right
+     * @param queueDelay how long the key waited between being typed and
+     * being judged, in nanoseconds
+     */
+    public static void endJudging(Object span, long position, int key,
+            boolean correct, long queueDelay) {
+        if (span != null) {
+            FlightRecorderEvents.endJudging(span, position, key, correct,
+                    queueDelay);
+        }
+    }
+
+    /**
+     * Begins painting a frame of the particles
+     *
+     * @return the span, or null if it is not being recorded
+     */
+    public static Object beginFrame() {
+        return AVAILABLE ? FlightRecorderEvents.beginFrame() : null;
+    }
+
+    /**
+     * Ends painting a frame of the particles
+     *
+     * @param span what beginFrame() returned
+     * @param particles the number of particles alive after the frame
+     * @param active whether the frame was drawn by the render loop instead
+     * of by paint()
+     */
+    public static void endFrame(Object span, int particles, boolean active) {
+        if (span != null) {
+            FlightRecorderEvents.endFrame(span, particles, active);
+        }
+    }
+
+    /**
+     * Records a frame that could not be painted
+     *
+     * @param thrown what was thrown
+     */
+    public static void paintFailed(Throwable thrown) {
+        if (AVAILABLE) {
+            FlightRecorderEvents.paintFailed(thrown);
+        }
+    }
+
+    /**
+     * Begins showing a modal dialog
+     *
+     * @return the span, or null if nothing can be recorded
+     */
+    public static Object beginDialog() {
+        return AVAILABLE ? FlightRecorderEvents.beginDialog() : null;
+    }
+
+    /**
+     * Ends showing a modal dialog, once it is dismissed
+     *
+     * @param span what beginDialog() returned
+     * @param title the title of the dialog
+     */
+    public static void endDialog(Object span, String title) {
+        if (span != null) {
+            FlightRecorderEvents.endDialog(span, title);
+        }
+    }
+
+    /**
+     * Begins a phase of loading the digits of a constant
+     *
+     * @return the span, or null if nothing can be recorded
+     */
+    public static Object beginLoad() {
+        return AVAILABLE ? FlightRecorderEvents.beginLoad() : null;
+    }
+
+    /**
+     * Ends a phase of loading the digits of a constant
+     *
+     * @param span what beginLoad() returned
+     * @param constant the name of the constant
+     * @param phase what was being done
+     * @param digits the number of digits at the end of the phase, or -1 if
+     * unknown
+     */
+    public static void endLoad(Object span, String constant, String phase,
+            long digits) {
+        if (span != null) {
+            FlightRecorderEvents.endLoad(span, constant, phase, digits);
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package com.github.leftisttachyon;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Java Flight Recorder events behind FlightEvents. This is the only
+ * class that uses jdk.jfr, and FlightEvents only calls it once it knows the
+ * flight recorder can be loaded, so the game still runs on JVMs without it.
+ * The events of every key and every frame are only created when their Gate
+ * says they are being recorded, so painting stays free of allocations.
+ *
+ * @author Jed Wang
+ */
+final class FlightRecorderEvents {
+
+    /**
+     * Whether KeyReceived events are being recorded
+     */
+    private static final Gate KEYS = new Gate(KeyReceived.class);
+
+    /**
+     * Whether DigitJudged events are being recorded
+     */
+    private static final Gate JUDGEMENTS = new Gate(DigitJudged.class);
+
+    /**
+     * Whether FramePainted events are being recorded
+     */
+    private static final Gate FRAMES = new Gate(FramePainted.class);
+
+    /**
+     * No FlightRecorderEvents.
+     */
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Records a key the window got
+     *
+     * @param key the key code
+     * @param queued whether the key fit in the queue
+     */
+    static void keyReceived(int key, boolean queued) {
+        if (KEYS.isEnabled()) {
+            KeyReceived event = new KeyReceived();
+            event.key = (char) key;
+            event.queued = queued;
+            event.commit();
+        }
+    }
+
+    /**
+     * Begins judging a key
+     *
+     * @return the event, or null if it is not being recorded
+     */
+    static Object beginJudging() {
+        if (!JUDGEMENTS.isEnabled()) {
+            return null;
+        }
+        DigitJudged event = new DigitJudged();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends judging a key
+     *
+     * @param span what beginJudging() returned
+     * @param position the position of the digit that was asked for
+     * @param key the key that was typed
+     * @param correct whether the key was right
+     * @param queueDelay how long the key waited to be judged, in
+     * nanoseconds
+     */
+    static void endJudging(Object span, long position, int key,
+            boolean correct, long queueDelay) {
+        DigitJudged event = (DigitJudged) span;
+        if (event.shouldCommit()) {
+            event.position = position;
+            event.key = (char) key;
+            event.correct = correct;
+            event.queueDelay = queueDelay;
+            event.commit();
+        }
+    }
+
+    /**
+     * Begins painting a frame
+     *
+     * @return the event, or null if it is not being recorded
+     */
+    static Object beginFrame() {
+        if (!FRAMES.isEnabled()) {
+            return null;
+        }
+        FramePainted event = new FramePainted();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends painting a frame
+     *
+     * @param span what beginFrame() returned
+     * @param particles the number of particles alive after the frame
+     * @param active whether the render loop drew the frame
+     */
+    static void endFrame(Object span, int particles, boolean active) {
+        FramePainted event = (FramePainted) span;
+        if (event.shouldCommit()) {
+            event.particles = particles;
+            event.active = active;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a frame that could not be painted
+     *
+     * @param thrown what was thrown
+     */
+    static void paintFailed(Throwable thrown) {
+        PaintFailed event = new PaintFailed();
+        if (event.isEnabled()) {
+            event.exceptionClass = thrown.getClass();
+            event.message = thrown.getMessage();
+            event.commit();
+        }
+    }
+
+    /**
+     * Begins showing a dialog
+     *
+     * @return the event
+     */
+    static Object beginDialog() {
+        Dialog event = new Dialog();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends showing a dialog
+     *
+     * @param span what beginDialog() returned
+     * @param title the title of the dialog
+     */
+    static void endDialog(Object span, String title) {
+        Dialog event = (Dialog) span;
+        if (event.shouldCommit()) {
+            event.title = title;
+            event.commit();
+        }
+    }
+
+    /**
+     * Begins a phase of loading digits
+     *
+     * @return the event
+     */
+    static Object beginLoad() {
+        DigitLoad event = new DigitLoad();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends a phase of loading digits
+     *
+     * @param span what beginLoad() returned
+     * @param constant the name of the constant
+     * @param phase what was done
+     * @param digits the number of digits at the end of the phase, or -1
+     */
+    static void endLoad(Object span, String constant, String phase,
+            long digits) {
+        DigitLoad event = (DigitLoad) span;
+        if (event.shouldCommit()) {
+            event.constant = constant;
+            event.phase = phase;
+            event.digits = digits;
+            event.commit();
+        }
+    }
+
+    /**
+     * Tells whether the events of one type are being recorded. It never
+     * starts the flight recorder up itself, which takes a few hundred
+     * milliseconds: until something else has, nothing can be recorded.
+     */
+    private static final class Gate {
+
+        /**
+         * The class of the events
+         */
+        private final Class<? extends Event> type;
+
+        /**
+         * The type of the events, once the flight recorder is up
+         */
+        private volatile EventType eventType = null;
+
+        /**
+         * Creates a new Gate.
+         *
+         * @param type the class of the events
+         */
+        Gate(Class<? extends Event> type) {
+            this.type = type;
+        }
+
+        /**
+         * Returns whether the events are being recorded
+         *
+         * @return whether the events are enabled in a running recording
+         */
+        boolean isEnabled() {
+            EventType t = eventType;
+            if (t == null) {
+                if (!FlightRecorder.isInitialized()) {
+                    return false;
+                }
+                eventType = t = EventType.getEventType(type);
+            }
+            return t.isEnabled();
+        }
+    }
+
+    /**
+     * A key the window got, before the game reads it
+     */
+    @Name("com.github.leftisttachyon.KeyReceived")
+    @Label("Key Received")
+    @Category({FlightEvents.CATEGORY, "Input"})
+    @Description("A key the window got, before the game reads it")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class KeyReceived extends Event {
+
+        /**
+         * The digit that was typed, or the key code of any other key
+         */
+        @Label("Key")
+        public char key;
+
+        /**
+         * Whether the key fit in the queue the game reads from
+         */
+        @Label("Queued")
+        public boolean queued;
+    }
+
+    /**
+     * The game judging a key, from when it starts until every listener is
+     * done with it
+     */
+    @Name("com.github.leftisttachyon.DigitJudged")
+    @Label("Digit Judged")
+    @Category({FlightEvents.CATEGORY, "Game"})
+    @Description("The game judging a key, listeners and all")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class DigitJudged extends Event {
+
+        /**
+         * The zero-based position of the digit that was asked for
+         */
+        @Label("Position")
+        public long position;
+
+        /**
+         * The key that was typed
+         */
+        @Label("Key")
+        public char key;
+
+        /**
+         * Whether the key was right
+         */
+        @Label("Correct")
+        public boolean correct;
+
+        /**
+         * How long the key waited between being typed and being judged
+         */
+        @Label("Queue Delay")
+        @Timespan(Timespan.NANOSECONDS)
+        public long queueDelay;
+    }
+
+    /**
+     * One frame of the particles being drawn
+     */
+    @Name("com.github.leftisttachyon.FramePainted")
+    @Label("Frame Painted")
+    @Category({FlightEvents.CATEGORY, "Rendering"})
+    @Description("One frame of the particles being drawn")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class FramePainted extends Event {
+
+        /**
+         * The number of particles alive after the frame
+         */
+        @Label("Particles")
+        public int particles;
+
+        /**
+         * Whether the frame was drawn by the render loop instead of by
+         * paint()
+         */
+        @Label("Active Rendering")
+        public boolean active;
+    }
+
+    /**
+     * A frame that could not be painted
+     */
+    @Name("com.github.leftisttachyon.PaintFailed")
+    @Label("Paint Failed")
+    @Category({FlightEvents.CATEGORY, "Rendering"})
+    @Description("A frame that could not be painted")
+    @Enabled(false)
+    public static final class PaintFailed extends Event {
+
+        /**
+         * The class of what was thrown
+         */
+        @Label("Exception Class")
+        public Class<?> exceptionClass;
+
+        /**
+         * The message of what was thrown
+         */
+        @Label("Message")
+        public String message;
+    }
+
+    /**
+     * A modal dialog, from when it is shown until it is dismissed
+     */
+    @Name("com.github.leftisttachyon.Dialog")
+    @Label("Dialog")
+    @Category({FlightEvents.CATEGORY, "Game"})
+    @Description("A modal dialog, from shown to dismissed")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Dialog extends Event {
+
+        /**
+         * The title of the dialog
+         */
+        @Label("Title")
+        public String title;
+    }
+
+    /**
+     * One phase of loading the digits of a constant
+     */
+    @Name("com.github.leftisttachyon.DigitLoad")
+    @Label("Digit Load")
+    @Category({FlightEvents.CATEGORY, "Digits"})
+    @Description("One phase of loading the digits of a constant")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class DigitLoad extends Event {
+
+        /**
+         * The name of the constant
+         */
+        @Label("Constant")
+        public String constant;
+
+        /**
+         * What was being done
+         */
+        @Label("Phase")
+        public String phase;
+
+        /**
+         * The number of digits at the end of the phase, or -1 if unknown
+         */
+        @Label("Digits")
+        public long digits = -1;
+    }
+}
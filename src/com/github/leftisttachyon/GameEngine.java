@@ -0,0 +1,458 @@
+package com.github.leftisttachyon;
+
+import java.awt.event.KeyEvent;
+import java.util.Arrays;
+
+/**
+ * The rules of the game, as a state machine with no Swing or I/O in it.
+ * Front ends feed it answers, starting positions and key presses, and it
+ * moves between states and tells its listeners what happened: which keys
+ * were right, when sessions start and end, and when the PB is beaten. The
+ * window and the command line are both front ends; so is anything that
+ * wants to push simulated keys through the real rules.
+ * <p>
+ * A GameEngine is not thread-safe. It is meant to be driven by one thread,
+ * and its listeners are called on that thread.
+ *
+ * @author Jed Wang
+ */
+public final class GameEngine {
+
+    /**
+     * The states of the game
+     */
+    public enum State {
+        /**
+         * Asking whether to explore; answer(true) explores and
+         * answer(false) memorizes from the start
+         */
+        PROMPT,
+        /**
+         * Waiting for explore() to say where to start exploring
+         */
+        EXPLORE_SETUP,
+        /**
+         * Judging key presses
+         */
+        RECITING,
+        /**
+         * A session has ended; answer(true) goes back to the PROMPT and
+         * answer(false) exits
+         */
+        RESULT,
+        /**
+         * The game is over; nothing else is accepted
+         */
+        EXITED
+    }
+
+    /**
+     * Listens to what happens in a game. Every method does nothing by
+     * default.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the game moves to another state
+         *
+         * @param engine the game
+         * @param from the state it was in
+         * @param to the state it is in now
+         */
+        default void stateChanged(GameEngine engine, State from, State to) {
+        }
+
+        /**
+         * Called when a session starts
+         *
+         * @param engine the game
+         * @param exploring whether the session explores
+         * @param start the position the session starts at
+         */
+        default void sessionStarted(GameEngine engine, boolean exploring,
+                long start) {
+        }
+
+        /**
+         * Called for every key judged, right or wrong
+         *
+         * @param engine the game
+         * @param position the position of the digit that was asked for
+         * @param key the key that was typed
+         * @param correct whether the key was right
+         * @param time when the key was typed, from System.nanoTime()
+         * @param delta the nanoseconds since the previous key of the
+         * session, or 0 for its first key
+         */
+        default void keyJudged(GameEngine engine, long position, int key,
+                boolean correct, long time, long delta) {
+        }
+
+        /**
+         * Called after a wrong key is judged
+         *
+         * @param engine the game
+         * @param position the position of the digit that was asked for
+         * @param expected the digit that was asked for
+         */
+        default void mistake(GameEngine engine, long position, char expected) {
+        }
+
+        /**
+         * Called when a session ends
+         *
+         * @param engine the game
+         * @param exploring whether the session explored
+         * @param start the position the session started at
+         * @param end the position the session reached
+         */
+        default void sessionEnded(GameEngine engine, boolean exploring,
+                long start, long end) {
+        }
+
+        /**
+         * Called when a session beats the PB
+         *
+         * @param engine the game
+         * @param previous the PB before the session
+         * @param pb the new PB
+         */
+        default void personalBest(GameEngine engine, int previous, int pb) {
+        }
+    }
+
+    /**
+     * The digits of pi
+     */
+    private final DigitSource pi;
+
+    /**
+     * The listeners, in the order they were added
+     */
+    private Listener[] listeners = new Listener[0];
+
+    /**
+     * The state of the game
+     */
+    private State state = State.PROMPT;
+
+    /**
+     * The PB
+     */
+    private int pb;
+
+    /**
+     * The PB before the last session
+     */
+    private int previousPB;
+
+    /**
+     * Whether the current or last session explores
+     */
+    private boolean exploring = false;
+
+    /**
+     * The position the current or last session started at
+     */
+    private long start = 0;
+
+    /**
+     * The position of the next digit to type
+     */
+    private long position = 0;
+
+    /**
+     * When the last key of the session was typed, or when the clock was
+     * restarted after it, or 0 before its first key
+     */
+    private long lastTime = 0;
+
+    /**
+     * Creates a new GameEngine, which starts at the PROMPT.
+     *
+     * @param pi the digits of pi
+     * @param pb the PB to start with
+     */
+    public GameEngine(DigitSource pi, int pb) {
+        this.pi = pi;
+        this.pb = pb;
+        previousPB = pb;
+    }
+
+    /**
+     * Adds a listener
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    /**
+     * Removes a listener
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(Listener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                Listener[] fewer = new Listener[listeners.length - 1];
+                System.arraycopy(listeners, 0, fewer, 0, i);
+                System.arraycopy(listeners, i + 1, fewer, i,
+                        fewer.length - i);
+                listeners = fewer;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers the question of the PROMPT or RESULT state
+     *
+     * @param yes the answer
+     * @return the state after the answer
+     * @throws IllegalStateException if there is no question to answer
+     */
+    public State answer(boolean yes) {
+        switch (state) {
+            case PROMPT:
+                if (yes) {
+                    setState(State.EXPLORE_SETUP);
+                } else {
+                    startSession(false, 0);
+                }
+                break;
+            case RESULT:
+                setState(yes ? State.PROMPT : State.EXITED);
+                break;
+            default:
+                throw new IllegalStateException("nothing to answer in "
+                        + state);
+        }
+        return state;
+    }
+
+    /**
+     * Starts exploring from a position, if it is one of the digits
+     *
+     * @param from the zero-based position to explore from
+     * @return RECITING, or EXPLORE_SETUP if the position is out of range
+     * @throws IllegalStateException if not in the EXPLORE_SETUP state
+     */
+    public State explore(long from) {
+        if (state != State.EXPLORE_SETUP) {
+            throw new IllegalStateException("not setting up in " + state);
+        }
+        if (from >= 0 && from < pi.length()) {
+            startSession(true, from);
+        }
+        return state;
+    }
+
+    /**
+     * Judges a key press. Digits are checked against the digits of pi;
+     * Pause ends the session and Escape ends the game. Any other key is a
+     * wrong digit.
+     *
+     * @param key the key that was typed: '0'-'9', 'A'-'F' for hex digits,
+     * KeyEvent.VK_PAUSE or KeyEvent.VK_ESCAPE
+     * @param time when the key was typed, from System.nanoTime()
+     * @return the state after the key
+     * @throws IllegalStateException if not in the RECITING state
+     */
+    public State key(int key, long time) {
+        if (state != State.RECITING) {
+            throw new IllegalStateException("not reciting in " + state);
+        }
+        if (key == KeyEvent.VK_ESCAPE) {
+            endSession(State.EXITED);
+            return state;
+        } else if (key == KeyEvent.VK_PAUSE) {
+            endSession(State.RESULT);
+            return state;
+        }
+
+        char expected = pi.charAt(position);
+        boolean correct = key == expected;
+        // a key typed before the clock was restarted has no known delta
+        long delta = lastTime == 0 || time <= lastTime ? 0 : time - lastTime;
+        lastTime = Math.max(lastTime, time);
+        for (Listener l : listeners) {
+            l.keyJudged(this, position, key, correct, time, delta);
+        }
+
+        if (correct) {
+            if (++position >= pi.length()) {
+                endSession(State.RESULT);
+            }
+        } else {
+            for (Listener l : listeners) {
+                l.mistake(this, position, expected);
+            }
+            if (!exploring) {
+                endSession(State.RESULT);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Times the next key from some moment instead of from the previous key,
+     * so that a delay that was not the user's, like a dialog that was up,
+     * is not counted in it. Keys typed before that moment have no delta.
+     *
+     * @param time the moment, from System.nanoTime()
+     */
+    public void restartClock(long time) {
+        if (lastTime != 0) {
+            lastTime = Math.max(lastTime, time);
+        }
+    }
+
+    /**
+     * Judges a batch of key presses, stopping early if one of them leaves
+     * the RECITING state
+     *
+     * @param keys the keys that were typed
+     * @param times when each key was typed
+     * @param count the number of keys
+     * @return the number of keys judged
+     */
+    public int keys(int[] keys, long[] times, int count) {
+        for (int i = 0; i < count; i++) {
+            if (key(keys[i], times[i]) != State.RECITING) {
+                return i + 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Ends the game from any state, ending the session first if one is
+     * going
+     *
+     * @return EXITED
+     */
+    public State exit() {
+        if (state == State.RECITING) {
+            endSession(State.EXITED);
+        } else if (state != State.EXITED) {
+            setState(State.EXITED);
+        }
+        return state;
+    }
+
+    /**
+     * Starts a session
+     *
+     * @param exploring whether the session explores
+     * @param from the position to start at
+     */
+    private void startSession(boolean exploring, long from) {
+        this.exploring = exploring;
+        start = from;
+        position = from;
+        lastTime = 0;
+        previousPB = pb;
+        for (Listener l : listeners) {
+            l.sessionStarted(this, exploring, from);
+        }
+        setState(State.RECITING);
+    }
+
+    /**
+     * Ends the session, updating the PB if it was beaten
+     *
+     * @param next the state to move to
+     */
+    private void endSession(State next) {
+        for (Listener l : listeners) {
+            l.sessionEnded(this, exploring, start, position);
+        }
+        if (!exploring && position > pb) {
+            pb = (int) Math.min(Integer.MAX_VALUE, position);
+            for (Listener l : listeners) {
+                l.personalBest(this, previousPB, pb);
+            }
+        }
+        setState(next);
+    }
+
+    /**
+     * Moves to a state and tells the listeners
+     *
+     * @param next the state to move to
+     */
+    private void setState(State next) {
+        State from = state;
+        state = next;
+        for (Listener l : listeners) {
+            l.stateChanged(this, from, next);
+        }
+    }
+
+    /**
+     * Returns the state of the game
+     *
+     * @return the state of the game
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Returns the digits of pi the game is played on
+     *
+     * @return the digits of pi
+     */
+    public DigitSource getDigits() {
+        return pi;
+    }
+
+    /**
+     * Returns the PB
+     *
+     * @return the PB
+     */
+    public int getPB() {
+        return pb;
+    }
+
+    /**
+     * Returns the PB before the current or last session
+     *
+     * @return the PB before the session
+     */
+    public int getPreviousPB() {
+        return previousPB;
+    }
+
+    /**
+     * Returns whether the current or last session explores
+     *
+     * @return whether the session explores
+     */
+    public boolean isExploring() {
+        return exploring;
+    }
+
+    /**
+     * Returns the position the current or last session started at
+     *
+     * @return the position the session started at
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the position of the next digit to type, which after a session
+     * is how far it got
+     *
+     * @return the position of the next digit
+     */
+    public long getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.leftisttachyon;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.MouseEvent;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ToolTipManager;
+
+/**
+ * A JPanel that shows the practice history of every digit position as a
+ * heatmap, either by how often it was missed or by how long it took.
+ *
+ * @author Jed Wang
+ */
+public final class HeatmapPanel extends JPanel {
+
+    /**
+     * The number of positions in each row of the heatmap
+     */
+    private static final int COLUMNS = 50;
+
+    /**
+     * The size of each cell, in pixels
+     */
+    private static final int CELL = 6;
+
+    /**
+     * The minimum number of positions shown
+     */
+    private static final int MIN_POSITIONS = 1000;
+
+    /**
+     * The response time shown in full red, in milliseconds
+     */
+    private static final float SLOW_MILLIS = 2000;
+
+    /**
+     * The color of positions that were never attempted
+     */
+    private static final Color UNTRIED = new Color(230, 230, 230);
+
+    /**
+     * The shades that cells are drawn with, from green to red
+     */
+    private static final Color[] SHADES = new Color[64];
+
+    static {
+        for (int i = 0; i < SHADES.length; i++) {
+            float t = i / (float) (SHADES.length - 1);
+            SHADES[i] = new Color(t, 0.75f * (1 - t), 0.1f);
+        }
+    }
+
+    /**
+     * The aggregates being shown
+     */
+    private final PracticeAnalytics analytics;
+
+    /**
+     * Chooses between showing error rates and response times
+     */
+    private final JComboBox<String> mode;
+
+    /**
+     * The grid of cells
+     */
+    private final Grid grid;
+
+    /**
+     * Creates a new HeatmapPanel.
+     *
+     * @param analytics the aggregates to show
+     */
+    public HeatmapPanel(PracticeAnalytics analytics) {
+        super(new BorderLayout());
+        this.analytics = analytics;
+
+        grid = new Grid();
+        mode = new JComboBox<>(new String[]{"Errors", "Response time"});
+        mode.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        mode.setFocusable(false);
+        mode.addActionListener(e -> grid.repaint());
+        add(mode, BorderLayout.NORTH);
+
+        JScrollPane scroll = new JScrollPane(grid,
+                JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
+                JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        scroll.getVerticalScrollBar().setUnitIncrement(CELL * 4);
+        add(scroll, BorderLayout.CENTER);
+
+        setPreferredSize(new Dimension(COLUMNS * CELL + 30, 500));
+    }
+
+    /**
+     * Updates the heatmap after the aggregates changed. May be called from
+     * any thread.
+     */
+    public void refresh() {
+        grid.revalidate();
+        grid.repaint();
+    }
+
+    /**
+     * The component that draws the cells. Only the rows inside the clip are
+     * drawn, so the cost of a repaint does not grow with the history.
+     */
+    private final class Grid extends JComponent {
+
+        /**
+         * Creates a new Grid.
+         */
+        Grid() {
+            ToolTipManager.sharedInstance().registerComponent(this);
+        }
+
+        /**
+         * Returns the number of positions shown
+         *
+         * @return the number of positions shown
+         */
+        private int positions() {
+            return Math.max(MIN_POSITIONS, analytics.size());
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            int rows = (positions() + COLUMNS - 1) / COLUMNS;
+            return new Dimension(COLUMNS * CELL, rows * CELL);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            g.setColor(Color.WHITE);
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            boolean errors = mode.getSelectedIndex() == 0;
+            int total = positions();
+            int firstRow = clip.y / CELL;
+            int lastRow = (clip.y + clip.height - 1) / CELL;
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = 0; col < COLUMNS; col++) {
+                    int p = row * COLUMNS + col;
+                    if (p >= total) {
+                        return;
+                    }
+
+                    Color color;
+                    if (analytics.getAttempts(p) == 0) {
+                        color = UNTRIED;
+                    } else {
+                        float t = errors ? analytics.getErrorRate(p)
+                                : Math.min(1, analytics.getMeanMillis(p)
+                                        / SLOW_MILLIS);
+                        color = SHADES[Math.round(t * (SHADES.length - 1))];
+                    }
+                    g.setColor(color);
+                    g.fillRect(col * CELL, row * CELL, CELL - 1, CELL - 1);
+                }
+            }
+        }
+
+        @Override
+        public String getToolTipText(MouseEvent e) {
+            int p = (e.getY() / CELL) * COLUMNS + e.getX() / CELL;
+            if (e.getX() >= COLUMNS * CELL || p >= positions()) {
+                return null;
+            }
+            int attempts = analytics.getAttempts(p);
+            if (attempts == 0) {
+                return "Digit " + (p + 1) + ": never attempted";
+            }
+            return String.format("<html>Digit %d<br>%d attempts, %d errors"
+                    + "<br>mean %.0f ms, p50 %.0f ms, p90 %.0f ms</html>",
+                    p + 1, attempts, analytics.getErrors(p),
+                    analytics.getMeanMillis(p),
+                    analytics.getPercentileMillis(p, 0.5),
+                    analytics.getPercentileMillis(p, 0.9));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Date;
+
+/**
+ * Collects timing histograms for a session: how long frames take, how long
+ * painting takes, how long a key takes to reach the game thread and the
+ * screen, how long the game sits in modal dialogs, and how long reading
+ * digits ahead takes. The histograms can be shown in DrawPanel's HUD and
+ * can be written to a file when the JVM exits.
+ *
+ * @author Jed Wang
+ */
+public final class Instrumentation {
+
+    /**
+     * The system property that names the file the histograms are dumped to
+     * at exit; without it, or with an empty value, they are not dumped
+     */
+    public static final String STATS_FILE_PROPERTY = "pimemorization.stats";
+
+    /**
+     * The time between consecutive frames while animating
+     */
+    public final LatencyHistogram frameTime = new LatencyHistogram("frame");
+
+    /**
+     * The time spent drawing a frame
+     */
+    public final LatencyHistogram paintTime = new LatencyHistogram("paint");
+
+    /**
+     * The time from a key press to the first frame showing its digit
+     */
+    public final LatencyHistogram keyToPhoton = new LatencyHistogram("photon");
+
+    /**
+     * The time from a key press to the game thread judging it
+     */
+    public final LatencyHistogram keyToJudge = new LatencyHistogram("judge");
+
+    /**
+     * The time spent in modal dialogs shown by the game
+     */
+    public final LatencyHistogram dialogTime = new LatencyHistogram("dialog");
+
+    /**
+     * The time the read-ahead takes to fill a page of digits
+     */
+    public final LatencyHistogram prefetchTime = new LatencyHistogram("prefetch");
+
+    /**
+     * The read-ahead whose counters are reported, or null if there is none
+     */
+    private volatile ReadAheadSource readAhead = null;
+
+    /**
+     * When this session started, from System.currentTimeMillis()
+     */
+    private final long startMillis = System.currentTimeMillis();
+
+    /**
+     * Returns every histogram
+     *
+     * @return every histogram
+     */
+    public LatencyHistogram[] getHistograms() {
+        return new LatencyHistogram[]{frameTime, paintTime, keyToPhoton,
+            keyToJudge, dialogTime, prefetchTime};
+    }
+
+    /**
+     * Sets the read-ahead whose hits and misses are reported with the
+     * histograms
+     *
+     * @param readAhead the read-ahead, or null for none
+     */
+    public void setReadAhead(ReadAheadSource readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Returns the read-ahead whose hits and misses are reported
+     *
+     * @return the read-ahead, or null if there is none
+     */
+    public ReadAheadSource getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Writes a report of every histogram to a file, appending to it so that
+     * runs of different builds and machines can be compared side by side
+     *
+     * @param file the file to write to
+     * @throws IOException the standard IOException reasons
+     */
+    public void dump(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileOutputStream(file,
+                true))) {
+            Runtime rt = Runtime.getRuntime();
+            out.println("# session " + new Date(startMillis) + " to "
+                    + new Date());
+            out.println("# java " + System.getProperty("java.version") + " "
+                    + System.getProperty("java.vm.name") + ", "
+                    + System.getProperty("os.name") + " "
+                    + System.getProperty("os.arch") + ", "
+                    + rt.availableProcessors() + " cpus, rendering "
+                    + System.getProperty(DrawPanel.RENDERING_PROPERTY, "active"));
+            for (LatencyHistogram h : getHistograms()) {
+                out.println(h);
+            }
+            ReadAheadSource r = readAhead;
+            if (r != null) {
+                out.println(r);
+            }
+            out.println();
+        }
+    }
+
+    /**
+     * Dumps the histograms when the JVM exits, to the file named by the
+     * STATS_FILE_PROPERTY, if it is set
+     */
+    public void dumpOnExit() {
+        String name = System.getProperty(STATS_FILE_PROPERTY, "");
+        if (name.isEmpty()) {
+            return;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                dump(new File(name));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }, "Instrumentation dump"));
+    }
+}
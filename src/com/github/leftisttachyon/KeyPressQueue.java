@@ -0,0 +1,168 @@
+package com.github.leftisttachyon;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free single-producer/single-consumer ring buffer of key
+ * presses. Each press keeps the System.nanoTime() at which it arrived. The
+ * producer (the EDT) never blocks; the consumer (the game thread) can poll or
+ * park until presses arrive.
+ *
+ * @author Jed Wang
+ */
+public final class KeyPressQueue {
+
+    /**
+     * The key codes of the presses
+     */
+    private final int[] keys;
+
+    /**
+     * The arrival times of the presses, from System.nanoTime()
+     */
+    private final long[] times;
+
+    /**
+     * Masks a sequence number into an index of the ring
+     */
+    private final int mask;
+
+    /**
+     * The sequence number of the next press to write; only the producer
+     * writes this
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The sequence number of the next press to read; only the consumer
+     * writes this
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The consumer thread, if it is parked waiting for presses
+     */
+    private volatile Thread waiter = null;
+
+    /**
+     * The number of presses that did not fit in the ring
+     */
+    private volatile long dropped = 0;
+
+    /**
+     * Creates a new KeyPressQueue.
+     *
+     * @param capacity the minimum number of presses the queue can hold; it
+     * is rounded up to a power of two
+     */
+    public KeyPressQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity out of range: "
+                    + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        size = Math.max(1, size);
+        keys = new int[size];
+        times = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds a press to the queue. Only one thread may call this.
+     *
+     * @param key the key code of the press
+     * @param time the arrival time of the press, from System.nanoTime()
+     * @return whether the press fit in the queue
+     */
+    public boolean offer(int key, long time) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped++;
+            return false;
+        }
+
+        int i = (int) t & mask;
+        keys[i] = key;
+        times[i] = time;
+        tail.set(t + 1);
+
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+        return true;
+    }
+
+    /**
+     * Moves as many presses as are available, up to the size of the arrays,
+     * into the given arrays without waiting. Only one thread may call this.
+     *
+     * @param keyOut the array to write the key codes to
+     * @param timeOut the array to write the arrival times to
+     * @return the number of presses moved
+     */
+    public int poll(int[] keyOut, long[] timeOut) {
+        long h = head.get();
+        int n = (int) Math.min(tail.get() - h,
+                Math.min(keyOut.length, timeOut.length));
+        for (int j = 0; j < n; j++) {
+            int i = (int) (h + j) & mask;
+            keyOut[j] = keys[i];
+            timeOut[j] = times[i];
+        }
+        head.set(h + n);
+        return n;
+    }
+
+    /**
+     * Waits until at least one press is available, then moves as many
+     * presses as are available into the given arrays. Only one thread may
+     * call this.
+     *
+     * @param keyOut the array to write the key codes to
+     * @param timeOut the array to write the arrival times to
+     * @return the number of presses moved, which is at least one
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public int take(int[] keyOut, long[] timeOut) throws InterruptedException {
+        long h = head.get();
+        while (tail.get() == h) {
+            waiter = Thread.currentThread();
+            if (tail.get() == h) {
+                LockSupport.park(this);
+            }
+            waiter = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return poll(keyOut, timeOut);
+    }
+
+    /**
+     * Discards every press in the queue. Only the consumer may call this.
+     */
+    public void clear() {
+        head.set(tail.get());
+    }
+
+    /**
+     * Returns the number of presses waiting in the queue
+     *
+     * @return the number of presses waiting in the queue
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Returns the number of presses that were dropped because the queue was
+     * full
+     *
+     * @return the number of presses that were dropped
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,187 @@
+package com.github.leftisttachyon;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of durations in nanoseconds. Buckets are
+ * log-linear: 32 buckets per power of two, so any recorded value is off by
+ * at most about 3%. Recording is a couple of shifts and an array increment.
+ * Only one thread should record into a histogram; other threads may read it
+ * at any time and see slightly stale counts.
+ *
+ * @author Jed Wang
+ */
+public final class LatencyHistogram {
+
+    /**
+     * log2 of the number of buckets per power of two
+     */
+    private static final int SUB_BITS = 5;
+
+    /**
+     * The number of buckets per power of two
+     */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * The number of buckets, enough for any non-negative long
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    /**
+     * The name of this histogram
+     */
+    private final String name;
+
+    /**
+     * The count of each bucket
+     */
+    private final long[] counts = new long[BUCKETS];
+
+    /**
+     * The number of recorded values
+     */
+    private long count = 0;
+
+    /**
+     * The sum of the recorded values
+     */
+    private long sum = 0;
+
+    /**
+     * The largest recorded value
+     */
+    private long max = 0;
+
+    /**
+     * Creates a new LatencyHistogram.
+     *
+     * @param name the name of this histogram
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a duration
+     *
+     * @param nanos the duration, in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts[bucketOf(v)]++;
+        count++;
+        sum += v;
+        if (v > max) {
+            max = v;
+        }
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded
+     * values fall
+     *
+     * @param fraction the fraction, from 0 to 1 (0.99 for the 99th percentile)
+     * @return the percentile, in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getPercentile(double fraction) {
+        long total = count;
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(max, highestOf(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the name of this histogram
+     *
+     * @return the name of this histogram
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of recorded values
+     *
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of the recorded values
+     *
+     * @return the mean, in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the largest recorded value
+     *
+     * @return the largest recorded value, in nanoseconds
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Forgets every recorded value
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    /**
+     * Returns the bucket that a value falls into
+     *
+     * @param v the value
+     * @return the index of the bucket
+     */
+    private static int bucketOf(long v) {
+        if (v < 2 * SUB_COUNT) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((v >>> shift) & (SUB_COUNT - 1));
+    }
+
+    /**
+     * Returns the largest value that falls into a bucket
+     *
+     * @param bucket the index of the bucket
+     * @return the largest value in the bucket
+     */
+    private static long highestOf(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long low = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+        return low + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-8s n=%-8d mean=%8.3f p50=%8.3f p90=%8.3f "
+                + "p99=%8.3f p99.9=%8.3f max=%8.3f ms", name, count,
+                getMean() / 1e6, getPercentile(0.5) / 1e6,
+                getPercentile(0.9) / 1e6, getPercentile(0.99) / 1e6,
+                getPercentile(0.999) / 1e6, max / 1e6);
+    }
+}
@@ -2,23 +2,38 @@ package com.github.leftisttachyon;
 
 import java.awt.Container;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Font;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.util.InputMismatchException;
-import java.util.Scanner;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /**
  * The main class for this application
@@ -28,41 +43,163 @@ import javax.swing.JOptionPane;
 public final class Main extends JFrame {
 
     /**
-     * The file where the digits of PI are stored
+     * The constant being memorized, pi unless the
+     * MathConstant.CONSTANT_PROPERTY names another
      */
-    public static final File PI_FILE
-            = new File("src/com/github/leftisttachyon/resources/pi.dat");
+    public static final MathConstant CONSTANT = MathConstant.current();
 
     /**
-     * The file where my PB is stored
+     * The file where the digits of PI are stored; a copy ships on the
+     * classpath
      */
-    public static final File PB_FILE
-            = new File("src/com/github/leftisttachyon/resources/pb.dat");
+    public static final File PI_FILE = MathConstant.PI.getFile();
+
+    /**
+     * The file where the digits of PI are stored densely; when it is there
+     * and not older than the PI file, it is read instead
+     */
+    public static final File DENSE_PI_FILE = DenseDigitSource.fileFor(PI_FILE);
+
+    /**
+     * The file where my PB is stored; the PB to start with ships on the
+     * classpath
+     */
+    public static final File PB_FILE = CONSTANT.getDataFile("pb.dat");
+
+    /**
+     * The file where every session and keystroke is journaled
+     */
+    public static final File JOURNAL_FILE = CONSTANT.getDataFile("sessions.journal");
+
+    /**
+     * The file where the per-position practice aggregates are saved
+     */
+    public static final File ANALYTICS_FILE = CONSTANT.getDataFile("analytics.dat");
+
+    /**
+     * The file where the drill schedule is saved
+     */
+    public static final File DRILL_FILE = CONSTANT.getDataFile("drills.dat");
+
+    /**
+     * The folder where the recordings of sessions are saved
+     */
+    public static final File RECORDINGS_DIR = CONSTANT.getDataFile("recordings");
+
+    /**
+     * The file where the splits of the record speed run are saved
+     */
+    public static final File SPLITS_FILE = CONSTANT.getDataFile("splits.dat");
+
+    /**
+     * The most digits in a page of the read-ahead
+     */
+    private static final int READ_AHEAD_PAGE = 4096;
+
+    /**
+     * The number of pages the game reads ahead of where it is
+     */
+    private static final int READ_AHEAD_PAGES = 16;
+
+    /**
+     * How far Left and Right move a replay, in milliseconds of the recording
+     */
+    private static final long REPLAY_SEEK_MILLIS = 10_000;
+
+    /**
+     * How often the bottom label shows where a replay is, in milliseconds
+     */
+    private static final int REPLAY_STATUS_MILLIS = 250;
+
+    /**
+     * What the bottom label says while the digits load
+     */
+    private static final String LOADING_TEXT = "Loading the digits of "
+            + CONSTANT + "...";
 
     /**
      * The internal PromptPanel
      */
     private final PromptPanel promptPanel;
 
+    /**
+     * The statistics of the digits, next to the PromptPanel
+     */
+    private final StatisticsPanel statisticsPanel;
+
     /**
      * The internal DrawPanel
      */
     private final DrawPanel drawPanel;
     
+    /**
+     * The heatmap of the practice history
+     */
+    private final HeatmapPanel heatmapPanel;
+
+    /**
+     * The tape of every key typed in the current attempt
+     */
+    private final TapePanel tapePanel;
+
     /**
      * The label at the bottom of this window
      */
     private final JLabel bottomLabel;
 
     /**
-     * The digits of pi
+     * The digits of the constant, loaded in the background
+     */
+    private final CompletableFuture<DigitSource> digitsFuture;
+
+    /**
+     * The index of where sequences appear in the constant, built in the
+     * background once the digits are loaded
      */
-    private final String PI;
+    private final CompletableFuture<PositionIndex> indexFuture;
 
     /**
-     * The user's PB
+     * The user's PB; the journal writer reads it if the journal fails
      */
-    private int pb = getPB();
+    private volatile int pb = getPB();
+
+    /**
+     * The timings of this session
+     */
+    private final Instrumentation stats = new Instrumentation();
+
+    /**
+     * The journal of sessions, or null if it could not be opened
+     */
+    private final SessionJournal journal;
+
+    /**
+     * The per-position aggregates of every session
+     */
+    private final PracticeAnalytics analytics;
+
+    /**
+     * The schedule of chunks to drill
+     */
+    private final DrillScheduler drills
+            = DrillScheduler.load(DRILL_FILE, DrillScheduler.DEFAULT_CHUNK_SIZE);
+
+    /**
+     * The number of new chunks that may still be drilled in this session
+     */
+    private int newChunks = DrillScheduler.DEFAULT_NEW_CHUNKS;
+
+    /**
+     * Whether drilling new chunks has been offered in this session
+     */
+    private boolean newChunksOffered = false;
+
+    /**
+     * The timing of memorizing sessions, or null unless the
+     * SpeedRun.SPEED_RUN_PROPERTY turns it on
+     */
+    private final SpeedRun speedRun = Boolean.getBoolean(
+            SpeedRun.SPEED_RUN_PROPERTY) ? SpeedRun.load(SPLITS_FILE) : null;
 
     /**
      * Creates a new Main window.
@@ -70,14 +207,68 @@ public final class Main extends JFrame {
     public Main() {
         super("Pi Memorization!");
 
-        String tempPi = null;
+        ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "Digit loader");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        digitsFuture = CompletableFuture.supplyAsync(() -> {
+            try {
+                DigitSource pi = getDigits();
+                StartupLog.mark("digits loaded");
+                return pi;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, loader);
+        indexFuture = digitsFuture.thenApplyAsync(pi -> {
+            if (CONSTANT.getFile() == null) {
+                // computed digits have no file to index
+                return null;
+            }
+            Object span = FlightEvents.beginLoad();
+            try {
+                PositionIndex index = PositionIndex.open(CONSTANT.getFile(),
+                        pi);
+                StartupLog.mark("index built");
+                FlightEvents.endLoad(span, CONSTANT.getName(), "index",
+                        pi.length());
+                return index;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, loader);
+        loader.shutdown();
+
+        SessionJournal tempJournal = null;
         try {
-            tempPi = getPi();
+            tempJournal = new SessionJournal(JOURNAL_FILE, this::journalFailed);
+            pb = Math.max(pb, tempJournal.getRecoveredPB());
         } catch (IOException ex) {
             ex.printStackTrace();
         } finally {
-            PI = tempPi;
+            journal = tempJournal;
+        }
+
+        analytics = PracticeAnalytics.load(ANALYTICS_FILE, JOURNAL_FILE);
+        if (journal != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                journal.close();
+                try {
+                    analytics.save(ANALYTICS_FILE, journal.getCommittedOffset());
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+            }, "Analytics save"));
         }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                drills.save(DRILL_FILE);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }, "Drill save"));
 
         Container contentPane = getContentPane();
         contentPane.setLayout(new BoxLayout(contentPane, BoxLayout.Y_AXIS));
@@ -85,13 +276,40 @@ public final class Main extends JFrame {
         contentPane.add(Box.createRigidArea(new Dimension(0, 5)));
 
         promptPanel = new PromptPanel("Sans");
-        contentPane.add(promptPanel);
+        statisticsPanel = new StatisticsPanel();
+        if (CONSTANT.getFile() == null) {
+            // scanning computed digits would mean computing all of them
+            statisticsPanel.showMessage("No statistics for " + CONSTANT);
+        } else {
+            digitsFuture.thenAccept(pi -> statisticsPanel.show(pi, 0));
+        }
+
+        Box topBox = Box.createHorizontalBox();
+        topBox.add(promptPanel);
+        topBox.add(Box.createRigidArea(new Dimension(10, 0)));
+        topBox.add(statisticsPanel);
+        contentPane.add(topBox);
 
         contentPane.add(Box.createRigidArea(new Dimension(0, 10)));
 
         drawPanel = new DrawPanel();
+        drawPanel.setRadix(CONSTANT.getRadix());
+        drawPanel.setInstrumentation(stats);
+        drawPanel.setSpeedRun(speedRun);
         drawPanel.setDrawing(true);
-        contentPane.add(drawPanel);
+
+        heatmapPanel = new HeatmapPanel(analytics);
+
+        Box centerBox = Box.createHorizontalBox();
+        centerBox.add(drawPanel);
+        centerBox.add(Box.createRigidArea(new Dimension(10, 0)));
+        centerBox.add(heatmapPanel);
+        contentPane.add(centerBox);
+
+        contentPane.add(Box.createRigidArea(new Dimension(0, 10)));
+
+        tapePanel = new TapePanel();
+        contentPane.add(tapePanel);
         
         contentPane.add(Box.createRigidArea(new Dimension(0, 10)));
         
@@ -116,6 +334,9 @@ public final class Main extends JFrame {
 
         setResizable(true);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+
+        stats.dumpOnExit();
+        StartupLog.dumpOnExit();
     }
 
     /**
@@ -127,232 +348,968 @@ public final class Main extends JFrame {
      */
     public static void main(String[] args) throws IOException,
             InterruptedException {
+        StartupLog.mark("main");
+        if (args.length > 0 && "--generate".equals(args[0])) {
+            PiGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && "--dense".equals(args[0])) {
+            String[] files = {PI_FILE.getPath(), DENSE_PI_FILE.getPath()};
+            System.arraycopy(args, 1, files, 0, Math.min(args.length - 1, 2));
+            DenseDigitSource.main(files);
+            return;
+        }
+        if (args.length > 0 && "--race".equals(args[0])) {
+            System.setProperty("java.awt.headless", "true");
+            RaceServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && "--race-load".equals(args[0])) {
+            System.setProperty("java.awt.headless", "true");
+            RaceLoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 1 && "--verify".equals(args[0])) {
+            String recited = new String(Files.readAllBytes(
+                    new File(args[1]).toPath()), StandardCharsets.ISO_8859_1);
+            RecitationVerifier.Result result = verifyRecitation(recited,
+                    args.length > 2 ? Long.parseLong(args[2]) - 1 : 0);
+            for (RecitationVerifier.Mistake m : result.getMistakes()) {
+                System.out.println(m);
+            }
+            System.out.println(result);
+            return;
+        }
+        if (args.length > 0 && "--cli".equals(args[0])) {
+            System.setProperty("java.awt.headless", "true");
+            long start = -1;
+            if (args.length > 2 && "--explore".equals(args[1])) {
+                start = Long.parseLong(args[2]) - 1;
+            }
+            DigitSource pi = getDigits();
+            if (start >= pi.length() || (start < 0 && args.length > 2)) {
+                System.err.println("Please enter a digit from 1 to "
+                        + pi.length());
+                return;
+            }
+            piMemorizationClassic(pi, getPB(), start);
+            return;
+        }
+
         Main main = new Main();
+        StartupLog.mark("window built");
         main.setVisible(true);
+        StartupLog.mark("window shown");
+        if (Boolean.getBoolean(StartupLog.EXIT_PROPERTY)) {
+            StartupLog.await("first frame", "digits loaded");
+            System.exit(0);
+        }
+        if (args.length > 1 && "--replay".equals(args[0])) {
+            main.replay(new File(args[1]),
+                    args.length > 2 ? Double.parseDouble(args[2]) : 1,
+                    args.length > 3 ? (long) (Double.parseDouble(args[3]) * 1000)
+                    : 0);
+        }
 
         main.startGame();
-
-        /*String pi = getPi();
-
-        int pb = getPB();
-
-        piMemorizationClassic(pi, pb);*/
     }
 
     /**
-     * The old, command line way of memorizing Pi. It's just not very good or
-     * pleasing to look at.
+     * The headless, command line way of memorizing Pi. Digits are read from
+     * standard input in bulk and checked as they arrive, without waiting for
+     * Enter, so a whole pasted or piped recitation is verified in one pass.
+     * Typing EXIT saves and quits and STOP ends the recitation; in hex, where
+     * E is a digit, QUIT saves and quits instead. Sessions go
+     * into the same journal and PB file as the GUI, and are judged by the
+     * same GameEngine.
      *
      * @param pi the digits of pi, without the decimal point
      * @param pb your pb
+     * @param start the digit to explore from, or -1 to memorize from the
+     * start
      * @throws IOException the standard IOException reasons
      */
-    private static void piMemorizationClassic(String pi, int pb)
-            throws IOException {
-        Scanner input = new Scanner(System.in);
+    private static void piMemorizationClassic(DigitSource pi, int pb,
+            long start) throws IOException {
+        SessionJournal journal = null;
+        try {
+            journal = new SessionJournal(JOURNAL_FILE,
+                    ex -> System.err.println(journalFailure(ex)));
+            pb = Math.max(pb, journal.getRecoveredPB());
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
 
-        while (true) {
-            Boolean exploring = null;
-            int cnt = 0;
-
-            System.out.println("Do you want to explore the digits of pi? (Y/N)");
-            while (exploring == null) {
-                switch (input.nextLine()) {
-                    case "Y":
-                    case "y":
-                        exploring = true;
-                        while (true) {
-                            System.out.println("From which digit of pi do you want to start exploring?");
-                            try {
-                                cnt = input.nextInt();
-                                break;
-                            } catch (InputMismatchException ime) {
-                                System.err.println("Please enter a valid number");
+        GameEngine engine = new GameEngine(pi, pb);
+        engine.addListener(new ConsoleFrontEnd(journal));
+        boolean exploring = start >= 0;
+        boolean hex = pi.radix() == 16;
+        try (ConsoleInput input = new ConsoleInput()) {
+            while (true) {
+                if (engine.answer(exploring) == GameEngine.State.EXPLORE_SETUP) {
+                    engine.explore(start);
+                }
+
+                boolean ended = false;
+                StringBuilder word = new StringBuilder();
+                while (engine.getState() == GameEngine.State.RECITING) {
+                    if (!input.fill()) {
+                        ended = true;
+                        engine.key(KeyEvent.VK_PAUSE, System.nanoTime());
+                        break;
+                    }
+                    ByteBuffer in = input.buffer();
+                    long time = input.getReadTime();
+
+                    while (in.hasRemaining()
+                            && engine.getState() == GameEngine.State.RECITING) {
+                        byte next = in.get();
+                        if (hex && next >= 'a' && next <= 'f') {
+                            next -= 'a' - 'A';
+                        }
+                        if (next >= '0' && next <= '9'
+                                || hex && next >= 'A' && next <= 'F') {
+                            word.setLength(0);
+                            if (engine.key(next, time)
+                                    != GameEngine.State.RECITING) {
+                                input.discard();
                             }
+                        } else if (Character.isLetter(next)) {
+                            word.append((char) next);
+                            if ((hex ? "QUIT" : "EXIT").equalsIgnoreCase(
+                                    word.toString())) {
+                                engine.key(KeyEvent.VK_ESCAPE, time);
+                            } else if ("STOP".equalsIgnoreCase(word.toString())) {
+                                System.out.println("\nStopping...");
+                                input.discard();
+                                engine.key(KeyEvent.VK_PAUSE, time);
+                            }
+                        } else {
+                            word.setLength(0);
                         }
-                        input.nextLine();
-                        break;
-                    case "N":
-                    case "n":
-                        exploring = false;
-                        break;
-                    default:
-                        System.err.println("Please enter a valid value.");
-                        break;
+                    }
                 }
-            }
 
-            System.out.println("Start listing the digits of pi!");
+                if (engine.getState() == GameEngine.State.EXITED) {
+                    System.out.println("\nYOUR PB IS: " + engine.getPB()
+                            + " digits");
+                    exit(engine.getPB());
+                }
+                if (!exploring) {
+                    System.out.println("YOUR PB IS: " + engine.getPB()
+                            + " digits");
+                }
+                if (ended || !input.isInteractive()) {
+                    exit(engine.getPB());
+                }
 
-            for (; cnt < pi.length();) {
-                char nextDigit = pi.charAt(cnt);
-                String nextInput = input.nextLine();
-                if ("EXIT".equalsIgnoreCase(nextInput)) {
-                    if (cnt > pb) {
-                        System.out.println("Congrats! You beat your previous PB of "
-                                + pb + " digits!");
-                        pb = cnt;
-                    }
-                    System.out.println("YOUR PB IS: " + pb + " digits");
-                    exit(pb);
-                } else if ("STOP".equalsIgnoreCase(nextInput)) {
-                    System.out.println("Stopping...");
-                    break;
-                } else if (nextInput.length() != 1
-                        || nextInput.charAt(0) != nextDigit) {
-                    System.out.println("Oops, digit " + (cnt + 1)
-                            + " of pi is supposed to be " + nextDigit);
-                    // System.out.println("You typed " + nextInput);
-                    if (!exploring) {
-                        break;
+                System.out.println("Do you want to try again? (Y/N)");
+                boolean decision = false;
+                while (!decision) {
+                    switch (input.nextChar()) {
+                        case 'Y':
+                        case 'y':
+                            System.out.println();
+                            engine.answer(true);
+                            decision = true;
+                            break;
+                        case 'N':
+                        case 'n':
+                        case -1:
+                            System.out.println();
+                            exit(engine.getPB());
+                            break;
+                        default:
+                            System.err.println("\nPlease enter a valid value.");
+                            break;
                     }
-                } else {
-                    ++cnt;
                 }
             }
+        }
+    }
 
-            if (exploring) {
-                System.out.println("\nCongrats! You explored the first " + cnt
-                        + " digits of pi!");
-            } else {
-                System.out.println("\nCongrats! You memorized the first " + cnt
-                        + " digits of pi!");
-                if (cnt > pb) {
-                    System.out.println("Congrats! You beat your previous PB of "
-                            + pb + " digits!");
-                    pb = cnt;
-                }
+    /**
+     * Prints what happens in a command line game and journals it
+     */
+    private static final class ConsoleFrontEnd implements GameEngine.Listener {
 
-                System.out.println("YOUR PB IS: " + pb + " digits");
+        /**
+         * The journal of sessions, or null if it could not be opened
+         */
+        private final SessionJournal journal;
+
+        /**
+         * Creates a new ConsoleFrontEnd.
+         *
+         * @param journal the journal of sessions, or null to not journal
+         */
+        ConsoleFrontEnd(SessionJournal journal) {
+            this.journal = journal;
+        }
+
+        @Override
+        public void sessionStarted(GameEngine engine, boolean exploring,
+                long start) {
+            System.out.println(exploring
+                    ? "Start listing the digits of " + CONSTANT
+                    + " from digit "
+                    + (start + 1) + "!" : "Start listing the digits of "
+                    + CONSTANT + "!");
+            if (journal != null) {
+                journal.sessionStarted(exploring, start);
             }
+        }
 
-            System.out.println("Do you want to try again? (Y/N)");
-            boolean decision = false;
-            while (!decision) {
-                switch (input.nextLine()) {
-                    case "Y":
-                    case "y":
-                        decision = true;
-                        break;
-                    case "N":
-                    case "n":
-                        exit(pb);
-                        break;
-                    default:
-                        System.err.println("Please enter a valid value.");
-                        break;
-                }
+        @Override
+        public void keyJudged(GameEngine engine, long position, int key,
+                boolean correct, long time, long delta) {
+            if (journal != null) {
+                journal.keystroke(position, key, correct, delta);
+            }
+        }
+
+        @Override
+        public void mistake(GameEngine engine, long position, char expected) {
+            System.out.println("\nOops, digit " + (position + 1)
+                    + " of " + CONSTANT + " is supposed to be " + expected);
+        }
+
+        @Override
+        public void sessionEnded(GameEngine engine, boolean exploring,
+                long start, long end) {
+            if (journal != null) {
+                journal.sessionEnded(end);
+            }
+            if (exploring) {
+                System.out.println("\nCongrats! You explored " + (end - start)
+                        + " digits of " + CONSTANT + ", up to digit " + end + "!");
+            } else {
+                System.out.println("\nCongrats! You memorized the first "
+                        + end + " digits of " + CONSTANT + "!");
             }
         }
+
+        @Override
+        public void personalBest(GameEngine engine, int previous, int pb) {
+            System.out.println("Congrats! You beat your previous PB of "
+                    + previous + " digits!");
+            recordPB(journal, pb);
+        }
     }
 
     /**
-     * Starts the game
+     * Starts the game. This thread waits for clicks and key presses and
+     * feeds them to a GameEngine, which a WindowFrontEnd listens to.
      *
      * @throws InterruptedException the standard reasons
      * @throws IOException the standard IOException reasons
      */
     private void startGame() throws InterruptedException, IOException {
+        int[] keys = new int[64];
+        long[] times = new long[64];
+        GameEngine engine = null;
         while (true) {
-            boolean exploring;
-            int cnt = 0;
-
-            promptPanel.setVisible(true);
-            promptPanel.setQuestion("Do you want to explore the digits of pi?");
-            if (exploring = promptPanel.getNextClick()) {
-                while (true) {
-                    String s = JOptionPane.showInputDialog(this,
-                            "From which digit of pi do you want to start exploring?",
-                            "Explore?",
-                            JOptionPane.PLAIN_MESSAGE);
-                    try {
-                        cnt = Integer.parseInt(s) - 1;
-                        if (cnt < 0 || cnt >= PI.length()) {
-                            JOptionPane.showMessageDialog(this,
-                                    "Please enter a valid number", "Invalid input",
-                                    JOptionPane.ERROR_MESSAGE);
-                        } else {
+            switch (engine == null ? GameEngine.State.PROMPT
+                    : engine.getState()) {
+                case PROMPT:
+                    promptPanel.setVisible(true);
+                    long now = System.currentTimeMillis();
+                    boolean due = drills.isDue(now);
+                    if (due || !newChunksOffered
+                            && drills.next(now, pb, newChunks) >= 0) {
+                        // new digits are only offered once a session
+                        newChunksOffered = true;
+                        promptPanel.setQuestion(due
+                                ? "Some digits are due. Do you want to drill them?"
+                                : "Do you want to drill some new digits?");
+                        if (promptPanel.getNextClick()) {
+                            promptPanel.setVisible(false);
+                            drill(keys, times);
                             break;
                         }
-                    } catch (InputMismatchException | NumberFormatException e) {
-                        JOptionPane.showMessageDialog(this,
-                                "Please enter a valid number", "Invalid input",
-                                JOptionPane.ERROR_MESSAGE);
                     }
-                }
-            }
-            promptPanel.setVisible(false);
-
-            for (; cnt < PI.length();) {
-                char nextDigit = PI.charAt(cnt);
-                int next = drawPanel.getNextPress();
-                if (next == KeyEvent.VK_ESCAPE) {
-                    if (cnt > pb) {
-                        JOptionPane.showMessageDialog(this,
-                                "Congrats! You beat your previous PB of "
-                                + pb + " digits! Your PB is now "
-                                + (pb = cnt) + "digits",
-                                "New PB!", JOptionPane.INFORMATION_MESSAGE);
+                    promptPanel.setQuestion("Do you want to explore the digits of "
+                            + CONSTANT + "?");
+                    boolean explore = promptPanel.getNextClick();
+                    if (engine == null) {
+                        ReadAheadSource ahead = new ReadAheadSource(digits(),
+                                Math.min(READ_AHEAD_PAGE,
+                                        CONSTANT.getBlockSize()),
+                                READ_AHEAD_PAGES, stats.prefetchTime);
+                        stats.setReadAhead(ahead);
+                        engine = new GameEngine(ahead, pb);
+                        engine.addListener(new ReadAheadCursor(ahead));
+                        if (speedRun != null) {
+                            // before the front end, so the run is over
+                            // when the front end hears that it ended
+                            engine.addListener(speedRun);
+                        }
+                        engine.addListener(new WindowFrontEnd());
                     }
-                    exit(pb);
-                } else if (next == KeyEvent.VK_PAUSE) {
+                    engine.answer(explore);
                     break;
-                } else if (next != nextDigit) {
-                    JOptionPane.showMessageDialog(this, "Oops, digit " + (cnt + 1)
-                            + " of pi is supposed to be " + nextDigit,
-                            "Oops!", JOptionPane.WARNING_MESSAGE);
-                    // System.out.println("You typed " + nextInput);
-                    if (!exploring) {
-                        break;
+                case EXPLORE_SETUP:
+                    long start = askExploreStart();
+                    if (start != Long.MIN_VALUE && engine.explore(start)
+                            == GameEngine.State.EXPLORE_SETUP) {
+                        showMessage("Please enter a valid number",
+                                "Invalid input", JOptionPane.ERROR_MESSAGE);
+                    }
+                    break;
+                case RECITING:
+                    int n = drawPanel.takePresses(keys, times);
+                    for (int i = 0; i < n
+                            && engine.getState() == GameEngine.State.RECITING;
+                            i++) {
+                        Object span = keys[i] == KeyEvent.VK_ESCAPE
+                                || keys[i] == KeyEvent.VK_PAUSE ? null
+                                : FlightEvents.beginJudging();
+                        long position = engine.getPosition();
+                        long delay = System.nanoTime() - times[i];
+                        stats.keyToJudge.record(delay);
+                        engine.key(keys[i], times[i]);
+                        FlightEvents.endJudging(span, position, keys[i],
+                                engine.getPosition() > position, delay);
                     }
-                } else {
-                    ++cnt;
+                    break;
+                case RESULT:
+                    promptPanel.setVisible(true);
+                    promptPanel.setQuestion("Do you want to try again?");
+                    engine.answer(promptPanel.getNextClick());
+                    break;
+                default:
+                    exit(pb);
+            }
+        }
+    }
+
+    /**
+     * Moves the cursor of a read-ahead along with a game, so that the
+     * digits the game judges next are read before their keys are typed
+     */
+    private static final class ReadAheadCursor implements GameEngine.Listener {
+
+        /**
+         * The read-ahead the game reads its digits through
+         */
+        private final ReadAheadSource ahead;
+
+        /**
+         * Creates a new ReadAheadCursor.
+         *
+         * @param ahead the read-ahead the game reads its digits through
+         */
+        ReadAheadCursor(ReadAheadSource ahead) {
+            this.ahead = ahead;
+        }
+
+        @Override
+        public void sessionStarted(GameEngine engine, boolean exploring,
+                long start) {
+            ahead.moveTo(start);
+        }
+
+        @Override
+        public void keyJudged(GameEngine engine, long position, int key,
+                boolean correct, long time, long delta) {
+            ahead.moveTo(position + 1);
+        }
+    }
+
+    /**
+     * Asks the user where to start exploring
+     *
+     * @return the zero-based position to start from, which may be out of
+     * range, or Long.MIN_VALUE if the user has already been told what is
+     * wrong
+     * @throws IOException if the position index cannot be built
+     * @throws InterruptedException the standard reasons
+     */
+    private long askExploreStart() throws IOException, InterruptedException {
+        String s = dialog("Explore?", () -> JOptionPane.showInputDialog(this,
+                "From which digit of " + CONSTANT
+                + " do you want to start exploring?\n"
+                + "(Put digits in quotes to start where they appear)",
+                "Explore?",
+                JOptionPane.PLAIN_MESSAGE));
+        try {
+            if (s != null && s.length() > 2 && s.startsWith("\"")
+                    && s.endsWith("\"")) {
+                long found = findSequence(s.substring(1, s.length() - 1));
+                return found < 0 ? Long.MIN_VALUE : found;
+            }
+            return Long.parseLong(s) - 1;
+        } catch (IllegalArgumentException e) {
+            showMessage(
+                    "Please enter a valid number", "Invalid input",
+                    JOptionPane.ERROR_MESSAGE);
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Shows a game in the window: journals and records its sessions, feeds
+     * its keys to the analytics, and tells the user how it went
+     */
+    private final class WindowFrontEnd implements GameEngine.Listener {
+
+        /**
+         * The recording of the current session
+         */
+        private SessionRecording.Recorder recorder = null;
+
+        /**
+         * The file the current session is recorded to
+         */
+        private File recordingFile = null;
+
+        @Override
+        public void sessionStarted(GameEngine engine, boolean exploring,
+                long start) {
+            promptPanel.setVisible(false);
+            drawPanel.clearPresses();
+            tapePanel.start(start);
+            showStatistics(start);
+            if (journal != null) {
+                journal.sessionStarted(exploring, start);
+            }
+            recorder = new SessionRecording.Recorder(exploring, start);
+            recordingFile = new File(RECORDINGS_DIR, new SimpleDateFormat(
+                    "yyyyMMdd-HHmmss").format(new Date())
+                    + SessionRecording.EXTENSION);
+        }
+
+        @Override
+        public void keyJudged(GameEngine engine, long position, int key,
+                boolean correct, long time, long delta) {
+            recordKey(position, key, correct, delta);
+            recorder.record(Character.digit(key, 16), correct, time);
+            tapePanel.append(key, correct, position);
+        }
+
+        @Override
+        public void mistake(GameEngine engine, long position, char expected) {
+            showMessage("Oops, digit " + (position + 1)
+                    + " of " + CONSTANT + " is supposed to be " + expected,
+                    "Oops!", JOptionPane.WARNING_MESSAGE);
+            // the time the dialog was up is not part of the next answer
+            engine.restartClock(System.nanoTime());
+        }
+
+        @Override
+        public void sessionEnded(GameEngine engine, boolean exploring,
+                long start, long end) {
+            if (journal != null) {
+                journal.sessionEnded(end);
+            }
+            saveRecording(recorder, recordingFile);
+            if (speedRun != null && speedRun.isNewRecord()) {
+                try {
+                    speedRun.save(SPLITS_FILE);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
                 }
             }
+            showStatistics(end);
+        }
 
-            if (exploring) {
-                JOptionPane.showMessageDialog(this,
-                        "Congrats! You explored the first " + cnt
-                        + " digits of pi!",
-                        "Congrats!", JOptionPane.INFORMATION_MESSAGE);
-            } else {
-                JOptionPane.showMessageDialog(this,
-                        "Congrats! You memorized the first " + cnt
-                        + " digits of pi!",
+        @Override
+        public void personalBest(GameEngine engine, int previous, int best) {
+            pb = best;
+            recordPB(journal, best);
+        }
+
+        @Override
+        public void stateChanged(GameEngine engine, GameEngine.State from,
+                GameEngine.State to) {
+            boolean beaten = engine.getPB() > engine.getPreviousPB();
+            if (to == GameEngine.State.RESULT) {
+                showMessage("Congrats! You " + (engine.isExploring()
+                        ? "explored" : "memorized") + " the first "
+                        + engine.getPosition() + " digits of " + CONSTANT + "!"
+                        + (speedRun != null && !engine.isExploring()
+                                ? "\nThat is " + speedRun + (speedRun
+                                        .isNewRecord() ? ", a new record!" : "")
+                                : ""),
                         "Congrats!", JOptionPane.INFORMATION_MESSAGE);
-                if (cnt > pb) {
-                    JOptionPane.showMessageDialog(this,
-                            "Wow! You beat your previous PB of "
-                            + pb + " digits! Your new PB is " + (pb = cnt) + " digits",
+                if (beaten) {
+                    showMessage("Wow! You beat your previous PB of "
+                            + engine.getPreviousPB() + " digits! Your new PB is "
+                            + engine.getPB() + " digits",
                             "New PB!", JOptionPane.INFORMATION_MESSAGE);
                 }
+            } else if (to == GameEngine.State.EXITED
+                    && from == GameEngine.State.RECITING && beaten) {
+                showMessage("Congrats! You beat your previous PB of "
+                        + engine.getPreviousPB() + " digits! Your PB is now "
+                        + engine.getPB() + " digits",
+                        "New PB!", JOptionPane.INFORMATION_MESSAGE);
             }
+        }
+    }
+
+    /**
+     * Shows the statistics of the digits around a position, if the digits
+     * have a file to scan
+     *
+     * @param position the zero-based position
+     */
+    private void showStatistics(long position) {
+        if (CONSTANT.getFile() != null) {
+            statisticsPanel.show(digitsFuture.join(), position);
+        }
+    }
+
+    /**
+     * Drills the chunks that the drill schedule serves until none are due,
+     * along with up to the session's share of new chunks, or until the user
+     * pauses
+     *
+     * @param keys the buffer for key presses
+     * @param times the buffer for the times of key presses
+     * @throws InterruptedException the standard reasons
+     * @throws IOException the standard IOException reasons
+     */
+    private void drill(int[] keys, long[] times) throws InterruptedException,
+            IOException {
+        DigitSource pi = digits();
+        int size = drills.getChunkSize();
+        int chunk;
+        try {
+            while ((chunk = drills.next(System.currentTimeMillis(), pb,
+                    newChunks)) >= 0) {
+                long start = (long) chunk * size;
+                long end = Math.min(pi.length(), start + size);
+                if (start >= end) {
+                    return;
+                }
+
+                StringBuilder cue = new StringBuilder();
+                for (long p = Math.max(0, start - 5); p < start; p++) {
+                    cue.append(pi.charAt(p));
+                }
+                setStatus("Drill: digits " + (start + 1) + " to " + end
+                        + (cue.length() == 0 ? ", from the start"
+                        : ", after ..." + cue));
+
+                drawPanel.clearPresses();
+                if (journal != null) {
+                    journal.sessionStarted(true, start);
+                }
+                long cnt = start, lastTime = 0, timedNanos = 0;
+                int errors = 0, timed = 0;
+                boolean stopped = false;
+                drilling:
+                while (cnt < end) {
+                    int n = drawPanel.takePresses(keys, times);
+                    for (int i = 0; i < n && cnt < end; i++) {
+                        char nextDigit = pi.charAt(cnt);
+                        int next = keys[i];
+                        stats.keyToJudge.record(System.nanoTime() - times[i]);
+                        if (next == KeyEvent.VK_ESCAPE) {
+                            if (journal != null) {
+                                journal.sessionEnded(cnt);
+                            }
+                            exit(pb);
+                        } else if (next == KeyEvent.VK_PAUSE) {
+                            stopped = true;
+                            break drilling;
+                        }
 
-            promptPanel.setVisible(true);
-            promptPanel.setQuestion("Do you want to try again?");
-            if (!promptPanel.getNextClick()) {
-                exit(pb);
+                        // keys typed before a dialog was dismissed have no
+                        // known delta
+                        long delta = lastTime == 0 || times[i] <= lastTime
+                                ? 0 : times[i] - lastTime;
+                        recordKey(cnt, next, next == nextDigit, delta);
+                        if (delta > 0) {
+                            timed++;
+                            timedNanos += delta;
+                        }
+                        lastTime = Math.max(lastTime, times[i]);
+                        if (next != nextDigit) {
+                            errors++;
+                            showMessage("Oops, digit " + (cnt + 1)
+                                    + " of " + CONSTANT + " is supposed to be "
+                                    + nextDigit,
+                                    "Oops!", JOptionPane.WARNING_MESSAGE);
+                            lastTime = System.nanoTime();
+                        } else {
+                            ++cnt;
+                        }
+                    }
+                }
+
+                if (journal != null) {
+                    journal.sessionEnded(cnt);
+                }
+                if (stopped) {
+                    return;
+                }
+                double millisPerDigit = timed > 0
+                        ? timedNanos / 1e6 / timed : 0;
+                if (chunk == drills.size()) {
+                    newChunks--;
+                }
+                drills.grade(chunk, DrillScheduler.quality(errors, millisPerDigit),
+                        System.currentTimeMillis());
             }
-            promptPanel.setVisible(false);
+
+            showMessage("Nothing else is due. Come back later!", "Drilled!",
+                    JOptionPane.INFORMATION_MESSAGE);
+        } finally {
+            setStatus("");
+            drills.save(DRILL_FILE);
+        }
+    }
+
+    /**
+     * Saves the recording of a session, if anything was typed in it
+     *
+     * @param recorder the recording
+     * @param file the file to save it to
+     */
+    private static void saveRecording(SessionRecording.Recorder recorder,
+            File file) {
+        if (recorder.size() == 0) {
+            return;
+        }
+        try {
+            recorder.save(file);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Replays a recorded session into the DrawPanel, showing its progress
+     * in the bottom label, until it ends or the user pauses. While it plays,
+     * Left and Right move it back and forth, + and - make it faster and
+     * slower, and Space pauses and resumes it.
+     *
+     * @param file the recording file
+     * @param speed how many times as fast as it was typed to play it
+     * @param fromMillis where to start, in milliseconds since the first key
+     * @throws InterruptedException the standard reasons
+     * @throws IOException the standard IOException reasons
+     */
+    private void replay(File file, double speed, long fromMillis)
+            throws InterruptedException, IOException {
+        SessionRecording recording = SessionRecording.read(file);
+        ReplayEngine engine = new ReplayEngine(recording, drawPanel);
+        engine.setSpeed(speed);
+
+        promptPanel.setVisible(false);
+        drawPanel.clearPresses();
+        Timer status = new Timer(REPLAY_STATUS_MILLIS, e -> {
+            long seconds = engine.getTime() / 1000;
+            bottomLabel.setText(String.format("Replay at %.1fx%s: %d digits, "
+                    + "%d:%02d (Left/Right: seek, +/-: speed, Space: pause)",
+                    engine.getSpeed(), engine.isPaused() ? ", paused" : "",
+                    engine.getPosition(), seconds / 60, seconds % 60));
+        });
+        SwingUtilities.invokeLater(() -> {
+            drawPanel.setReplayControls(true);
+            status.start();
+        });
+        engine.start(fromMillis);
+
+        int[] keys = new int[64];
+        long[] times = new long[64];
+        try {
+            replaying:
+            while (true) {
+                int n = drawPanel.takePresses(keys, times);
+                for (int i = 0; i < n; i++) {
+                    switch (keys[i]) {
+                        case KeyEvent.VK_ESCAPE:
+                            engine.stop();
+                            exit(pb);
+                            break;
+                        case KeyEvent.VK_PAUSE:
+                            break replaying;
+                        case KeyEvent.VK_LEFT:
+                            engine.seek(engine.getTime() - REPLAY_SEEK_MILLIS);
+                            break;
+                        case KeyEvent.VK_RIGHT:
+                            engine.seek(engine.getTime() + REPLAY_SEEK_MILLIS);
+                            break;
+                        case KeyEvent.VK_ADD:
+                            engine.setSpeed(engine.getSpeed() * 2);
+                            break;
+                        case KeyEvent.VK_SUBTRACT:
+                            engine.setSpeed(engine.getSpeed() / 2);
+                            break;
+                        case KeyEvent.VK_SPACE:
+                            engine.setPaused(!engine.isPaused());
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+        } finally {
+            engine.stop();
+            SwingUtilities.invokeLater(() -> {
+                status.stop();
+                drawPanel.setReplayControls(false);
+            });
         }
+
+        showMessage("The replay reached " + engine.getPosition()
+                + " digits of " + CONSTANT, "Replay over",
+                JOptionPane.INFORMATION_MESSAGE);
+        setStatus("");
     }
 
     /**
-     * Gets the digits of Pi from the PI file
+     * Shows some text in the bottom label. May be called from any thread.
+     *
+     * @param text the text to show
+     */
+    private void setStatus(String text) {
+        SwingUtilities.invokeLater(() -> bottomLabel.setText(text));
+    }
+
+    /**
+     * Tells the user that the journal stopped, and saves the PB so far
+     * straight to the PB file, since the journal no longer keeps it safe
+     *
+     * @param ex what made the journal stop
+     */
+    private void journalFailed(IOException ex) {
+        ex.printStackTrace();
+        setStatus(journalFailure(ex));
+        try {
+            savePB(pb);
+        } catch (IOException saveEx) {
+            saveEx.printStackTrace();
+        }
+    }
+
+    /**
+     * Describes a failure of the journal to the user
+     *
+     * @param ex what made the journal stop
+     * @return the message to show
+     */
+    private static String journalFailure(IOException ex) {
+        return "The session journal stopped (" + ex.getMessage()
+                + "), so PBs are saved straight to " + PB_FILE.getName();
+    }
+
+    /**
+     * Records a new PB in the journal, or straight in the PB file if there
+     * is no working journal to keep it safe
+     *
+     * @param journal the journal of sessions, or null
+     * @param pb the new PB
+     */
+    private static void recordPB(SessionJournal journal, int pb) {
+        if (journal != null && !journal.hasFailed()) {
+            journal.personalBest(pb);
+            return;
+        }
+        try {
+            savePB(pb);
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Records a judged key in the journal and the analytics
+     *
+     * @param position the position of the digit that was asked for
+     * @param key the key that was typed
+     * @param correct whether the key was right
+     * @param delta the nanoseconds since the previous key, or 0 if unknown
+     */
+    private void recordKey(long position, int key, boolean correct,
+            long delta) {
+        if (journal != null) {
+            journal.keystroke(position, key, correct, delta);
+        }
+        analytics.record(position, correct, delta);
+        heatmapPanel.refresh();
+    }
+
+    /**
+     * Shows a modal message dialog on the EDT, timing how long it stays up
+     *
+     * @param message the message to show
+     * @param title the title of the dialog
+     * @param messageType the JOptionPane message type
+     */
+    private void showMessage(String message, String title, int messageType) {
+        long start = System.nanoTime();
+        try {
+            dialog(title, () -> {
+                JOptionPane.showMessageDialog(this, message, title,
+                        messageType);
+                return null;
+            });
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        stats.dialogTime.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Shows a modal dialog on the EDT and waits for it to be dismissed,
+     * recording how long it was up for the flight recorder
+     *
+     * @param <T> the type of the result
+     * @param title the title of the dialog
+     * @param task shows the dialog
+     * @return what the task returned
+     * @throws InterruptedException if the wait is interrupted
+     */
+    private static <T> T dialog(String title, Callable<T> task)
+            throws InterruptedException {
+        Object span = FlightEvents.beginDialog();
+        try {
+            return onEdt(task);
+        } finally {
+            FlightEvents.endDialog(span, title);
+        }
+    }
+
+    /**
+     * Runs a task on the EDT and waits for it, so that dialogs are never
+     * shown from the game thread
+     *
+     * @param <T> the type of the result
+     * @param task the task to run
+     * @return what the task returned
+     * @throws InterruptedException if the wait is interrupted
+     */
+    private static <T> T onEdt(Callable<T> task) throws InterruptedException {
+        FutureTask<T> future = new FutureTask<>(task);
+        if (EventQueue.isDispatchThread()) {
+            future.run();
+        } else {
+            EventQueue.invokeLater(future);
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Asks the user which occurrence of a sequence of digits to start from.
+     *
+     * @param sequence the digits to look for
+     * @return the position of the chosen occurrence, or -1 if there is none
+     * @throws IOException if the position index cannot be built
+     * @throws InterruptedException if the wait for the index is interrupted
+     * @throws IllegalArgumentException if the sequence is not all digits
+     */
+    private long findSequence(String sequence) throws IOException,
+            InterruptedException {
+        PositionIndex index;
+        try {
+            index = indexFuture.get();
+        } catch (ExecutionException ex) {
+            throw new IOException("Could not index the digits of "
+                    + CONSTANT,
+                    ex.getCause());
+        }
+        if (index == null) {
+            showMessage("The digits of " + CONSTANT + " cannot be searched",
+                    "Not found", JOptionPane.ERROR_MESSAGE);
+            return -1;
+        }
+
+        long[] found = index.find(sequence, 10);
+        if (found.length == 0) {
+            showMessage(
+                    sequence + " does not appear in the digits of " + CONSTANT,
+                    "Not found", JOptionPane.ERROR_MESSAGE);
+            return -1;
+        } else if (found.length == 1) {
+            return found[0];
+        }
+
+        String[] choices = new String[found.length];
+        for (int i = 0; i < found.length; i++) {
+            choices[i] = "Digit " + (found[i] + 1);
+        }
+        Object choice = dialog("Explore?", () -> JOptionPane.showInputDialog(
+                this, sequence + " appears at these positions:", "Explore?",
+                JOptionPane.PLAIN_MESSAGE, null, choices, choices[0]));
+        return choice == null ? -1
+                : found[Arrays.asList(choices).indexOf(choice)];
+    }
+
+    /**
+     * Gets the digits of Pi. They are packed and memory-mapped instead of
+     * being read onto the heap, and read through the shared BlockCache.
      *
      * @return the digits of Pi, extracted from the Pi file
      * @throws IOException the standard IOException rules
      */
-    public static String getPi() throws IOException {
-        StringBuilder builder = new StringBuilder();
-        try (BufferedReader piIn = new BufferedReader(new FileReader(PI_FILE))) {
-            String line;
-            while ((line = piIn.readLine()) != null) {
-                builder.append(line);
-            }
+    public static DigitSource getPi() throws IOException {
+        return MathConstant.PI.open();
+    }
+
+    /**
+     * Gets the digits of the constant being memorized
+     *
+     * @return the digits of the constant
+     * @throws IOException the standard IOException rules
+     */
+    public static DigitSource getDigits() throws IOException {
+        return CONSTANT.open();
+    }
+
+    /**
+     * Returns the digits of the constant, waiting for them to finish loading
+     * if they have not yet
+     *
+     * @return the digits of the constant
+     * @throws IOException if the digits could not be loaded
+     * @throws InterruptedException if the wait is interrupted
+     */
+    private DigitSource digits() throws IOException, InterruptedException {
+        if (!digitsFuture.isDone()) {
+            setStatus(LOADING_TEXT);
         }
+        try {
+            return digitsFuture.get();
+        } catch (ExecutionException ex) {
+            throw new IOException("Could not load the digits of " + CONSTANT,
+                    ex.getCause());
+        } finally {
+            SwingUtilities.invokeLater(() -> {
+                if (LOADING_TEXT.equals(bottomLabel.getText())) {
+                    bottomLabel.setText("");
+                }
+            });
+        }
+    }
 
-        return builder.toString();
+    /**
+     * Checks a whole recitation against the digits of the constant and
+     * finds every mistake in it. Skipped and doubled digits count as one
+     * mistake each instead of throwing off the rest of the recitation.
+     *
+     * @param recited the recited digits; anything that is not a digit, like
+     * the decimal point or line breaks, is ignored
+     * @param start the zero-based position the recitation starts at
+     * @return every mistake in the recitation
+     * @throws IOException the standard IOException rules
+     */
+    public static RecitationVerifier.Result verifyRecitation(
+            CharSequence recited, long start) throws IOException {
+        return RecitationVerifier.verify(getDigits(), start, recited);
     }
 
     /**
@@ -361,7 +1318,8 @@ public final class Main extends JFrame {
      * @return your PB, extracted from the PB file
      */
     public static int getPB() {
-        try (BufferedReader pbIn = new BufferedReader(new FileReader(PB_FILE))) {
+        try (BufferedReader pbIn = new BufferedReader(new InputStreamReader(
+                DataFiles.open(PB_FILE.getName())))) {
             return Integer.parseInt(pbIn.readLine());
         } catch (Exception ex) {
             return 0;
@@ -375,11 +1333,20 @@ public final class Main extends JFrame {
      * @throws IOException the standard IOException reasons
      */
     private static void exit(int pb) throws IOException {
+        savePB(pb);
+        System.exit(0);
+    }
+
+    /**
+     * Writes the PB to the PB file
+     *
+     * @param pb the PB
+     * @throws IOException the standard IOException reasons
+     */
+    private static void savePB(int pb) throws IOException {
         try (PrintWriter out = new PrintWriter(new FileOutputStream(PB_FILE,
                 false))) {
             out.println(pb);
         }
-
-        System.exit(0);
     }
 }
@@ -0,0 +1,397 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A constant whose digits can be memorized, and the registry of every such
+ * constant. Most constants are backed by a digit file: a dense copy if there
+ * is one, else the ASCII file in the data folder or on the classpath, else
+ * one made by its generator the first time it is opened. The rest compute
+ * their digits on demand and have no file. Every constant reads its digits
+ * through the shared BlockCache.
+ * <p>
+ * The game plays the constant named by the CONSTANT_PROPERTY, pi by
+ * default. Pi keeps the data files it always had; every other constant
+ * keeps its own PB, journal, analytics, drills and recordings, named after
+ * it.
+ *
+ * @author Jed Wang
+ */
+public final class MathConstant {
+
+    /**
+     * Makes the digit file of a constant
+     */
+    @FunctionalInterface
+    public interface Generator {
+
+        /**
+         * Writes digits to a digit file
+         *
+         * @param digits the number of digits to write, including the
+         * integer part
+         * @param out the file to write them to
+         * @throws IOException the standard IOException reasons
+         */
+        void generate(int digits, File out) throws IOException;
+    }
+
+    /**
+     * The system property that names the constant to play
+     */
+    public static final String CONSTANT_PROPERTY = "pimemorization.constant";
+
+    /**
+     * The number of digits generators make
+     */
+    public static final int GENERATED_DIGITS = 100_000;
+
+    /**
+     * The registered constants by name, in the order they were registered
+     */
+    private static final Map<String, MathConstant> REGISTRY
+            = new LinkedHashMap<>();
+
+    /**
+     * Pi, whose digits ship with the game
+     */
+    public static final MathConstant PI = register("pi", "pi", "pi.dat",
+            (digits, out) -> new PiGenerator(digits,
+                    new File(out.getPath() + ".ckpt")).generate(out,
+                    (phase, fraction) -> {
+                    }));
+
+    /**
+     * Euler's number
+     */
+    public static final MathConstant E = register("e", "e", "e.dat",
+            ConstantGenerator::e);
+
+    /**
+     * The square root of 2
+     */
+    public static final MathConstant SQRT2 = register("sqrt2", "\u221a2",
+            "sqrt2.dat", (digits, out) -> ConstantGenerator.sqrt(2, digits,
+                    out));
+
+    /**
+     * The golden ratio
+     */
+    public static final MathConstant PHI = register("phi", "\u03c6",
+            "phi.dat", ConstantGenerator::phi);
+
+    /**
+     * Tau, twice pi; it has one digit fewer than pi has
+     */
+    public static final MathConstant TAU = register("tau", "\u03c4",
+            "tau.dat", (digits, out) -> {
+                DigitSource pi = PI.open();
+                ConstantGenerator.doubled(pi, (int) Math.min(digits,
+                        pi.length() - 1), out);
+            });
+
+    /**
+     * The natural logarithm of 2
+     */
+    public static final MathConstant LN2 = register("ln2", "ln 2", "ln2.dat",
+            ConstantGenerator::ln2);
+
+    /**
+     * The hexadecimal digits of pi, each one computed on its own
+     */
+    public static final MathConstant PI_HEX = register("pihex", "pi in hex",
+            16, BbpDigitSource.BLOCK_SIZE, BbpDigitSource::new);
+
+    /**
+     * The name of this constant, used in properties and file names
+     */
+    private final String name;
+
+    /**
+     * The name of this constant shown to the user
+     */
+    private final String displayName;
+
+    /**
+     * The name of the digit file of this constant, or null if its digits
+     * are computed
+     */
+    private final String fileName;
+
+    /**
+     * Makes the digit file if it is nowhere to be found
+     */
+    private final Generator generator;
+
+    /**
+     * The base of the digits
+     */
+    private final int radix;
+
+    /**
+     * The number of digits the BlockCache reads at a time
+     */
+    private final int blockSize;
+
+    /**
+     * Computes the digits of a constant without a file
+     */
+    private final Supplier<DigitSource> computer;
+
+    /**
+     * The digits, once opened
+     */
+    private DigitSource digits = null;
+
+    /**
+     * Creates a new MathConstant.
+     *
+     * @param name the name used in properties and file names
+     * @param displayName the name shown to the user
+     * @param fileName the name of the digit file, or null
+     * @param generator makes the digit file, or null
+     * @param radix the base of the digits
+     * @param blockSize the number of digits the BlockCache reads at a time
+     * @param computer computes the digits if there is no file, or null
+     */
+    private MathConstant(String name, String displayName, String fileName,
+            Generator generator, int radix, int blockSize,
+            Supplier<DigitSource> computer) {
+        this.name = name;
+        this.displayName = displayName;
+        this.fileName = fileName;
+        this.generator = generator;
+        this.radix = radix;
+        this.blockSize = blockSize;
+        this.computer = computer;
+    }
+
+    /**
+     * Registers a constant
+     *
+     * @param name the name used in properties and file names
+     * @param displayName the name shown to the user
+     * @param fileName the name of the digit file in the data folder
+     * @param generator makes the digit file if it is not there
+     * @return the constant
+     * @throws IllegalArgumentException if the name is taken
+     */
+    public static MathConstant register(String name, String displayName,
+            String fileName, Generator generator) {
+        return register(new MathConstant(name, displayName, fileName,
+                generator, 10, BlockCache.BLOCK_SIZE, null));
+    }
+
+    /**
+     * Registers a constant whose digits are computed on demand instead of
+     * read from a file
+     *
+     * @param name the name used in properties and file names
+     * @param displayName the name shown to the user
+     * @param radix the base of the digits, 10 or 16
+     * @param blockSize the number of digits to compute and cache at a time,
+     * a power of 2
+     * @param computer makes the source that computes the digits
+     * @return the constant
+     * @throws IllegalArgumentException if the name is taken
+     */
+    public static MathConstant register(String name, String displayName,
+            int radix, int blockSize, Supplier<DigitSource> computer) {
+        return register(new MathConstant(name, displayName, null, null, radix,
+                blockSize, computer));
+    }
+
+    /**
+     * Adds a constant to the registry
+     *
+     * @param constant the constant
+     * @return the constant
+     * @throws IllegalArgumentException if its name is taken
+     */
+    private static MathConstant register(MathConstant constant) {
+        synchronized (REGISTRY) {
+            if (REGISTRY.containsKey(constant.name)) {
+                throw new IllegalArgumentException(constant.name
+                        + " is already registered");
+            }
+            REGISTRY.put(constant.name, constant);
+            return constant;
+        }
+    }
+
+    /**
+     * Returns a registered constant
+     *
+     * @param name the name of the constant
+     * @return the constant, or null if none has that name
+     */
+    public static MathConstant forName(String name) {
+        synchronized (REGISTRY) {
+            return REGISTRY.get(name);
+        }
+    }
+
+    /**
+     * Returns every registered constant
+     *
+     * @return the constants, in the order they were registered
+     */
+    public static List<MathConstant> getAll() {
+        synchronized (REGISTRY) {
+            return new ArrayList<>(REGISTRY.values());
+        }
+    }
+
+    /**
+     * Returns the constant named by the CONSTANT_PROPERTY, or pi if it is
+     * not set or names no constant
+     *
+     * @return the constant to play
+     */
+    public static MathConstant current() {
+        String property = System.getProperty(CONSTANT_PROPERTY, PI.name);
+        MathConstant constant = forName(property);
+        if (constant == null) {
+            List<String> names = new ArrayList<>();
+            for (MathConstant c : getAll()) {
+                names.add(c.name);
+            }
+            System.err.println("Unknown constant " + property
+                    + "; playing pi. The constants are " + names);
+            return PI;
+        }
+        return constant;
+    }
+
+    /**
+     * Returns the digits of this constant, opening them the first time
+     *
+     * @return the digits, read through the shared BlockCache
+     * @throws IOException the standard IOException reasons
+     */
+    public synchronized DigitSource open() throws IOException {
+        if (digits == null) {
+            digits = BlockCache.getShared().cache(computer != null
+                    ? computer.get() : load(), blockSize);
+        }
+        return digits;
+    }
+
+    /**
+     * Opens the dense digit file if there is one and it is not older than
+     * the ASCII one, and the ASCII digit file otherwise or if the dense one
+     * is damaged, generating it if it is nowhere to be found
+     *
+     * @return the digits
+     * @throws IOException the standard IOException reasons
+     */
+    private DigitSource load() throws IOException {
+        File ascii = getFile();
+        Object span = FlightEvents.beginLoad();
+        try {
+            File dense = DataFiles.extract(
+                    DenseDigitSource.fileFor(ascii).getName());
+            if (!ascii.isFile() || dense.lastModified() >= ascii.lastModified()) {
+                DigitSource digits = new DenseDigitSource(dense);
+                loaded(span, "open dense", digits.length());
+                return digits;
+            }
+        } catch (FileNotFoundException ex) {
+            // no dense copy; read the ASCII one
+        } catch (IOException ex) {
+            System.err.println("Reading the ASCII digits of " + displayName
+                    + " instead: " + ex.getMessage());
+        }
+
+        span = FlightEvents.beginLoad();
+        try {
+            ascii = DataFiles.extract(fileName);
+            loaded(span, "extract", -1);
+        } catch (FileNotFoundException ex) {
+            generator.generate(GENERATED_DIGITS, ascii);
+            loaded(span, "generate", GENERATED_DIGITS);
+        }
+
+        span = FlightEvents.beginLoad();
+        DigitSource digits = PackedDigitSource.open(ascii);
+        loaded(span, "pack", digits.length());
+        return digits;
+    }
+
+    /**
+     * Ends a phase of loading the digits for the flight recorder
+     *
+     * @param span the span, begun when the phase started
+     * @param phase what was done
+     * @param digits the number of digits at the end of the phase, or -1
+     */
+    private void loaded(Object span, String phase, long digits) {
+        FlightEvents.endLoad(span, name, phase, digits);
+    }
+
+    /**
+     * Returns the name used in properties and file names
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the base of the digits of this constant
+     *
+     * @return 10, or 16 for hex
+     */
+    public int getRadix() {
+        return radix;
+    }
+
+    /**
+     * Returns the number of digits the BlockCache reads from this constant at
+     * a time
+     *
+     * @return the block size
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Returns the ASCII digit file of this constant, which may not exist yet
+     *
+     * @return the digit file, or null if the digits are computed
+     */
+    public File getFile() {
+        return fileName == null ? null : DataFiles.resolve(fileName);
+    }
+
+    /**
+     * Returns a file in the data folder that belongs to this constant. Pi's
+     * files keep their plain names; the names of other constants' files
+     * start with the name of the constant.
+     *
+     * @param file the plain name of the file
+     * @return the file
+     */
+    public File getDataFile(String file) {
+        return DataFiles.resolve(this == PI ? file : name + "-" + file);
+    }
+
+    /**
+     * Returns the name of this constant shown to the user
+     *
+     * @return the name shown to the user
+     */
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.leftisttachyon;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A DigitSource backed by a memory-mapped file that stores two digits per
+ * byte. The digits never live on the heap, so opening a file with hundreds of
+ * millions of digits costs about as much as opening one with a hundred.
+ *
+ * @author Jed Wang
+ */
+public final class PackedDigitSource implements DigitSource {
+
+    /**
+     * The magic number at the start of every packed file ("PI4B")
+     */
+    public static final int MAGIC = 0x50493442;
+
+    /**
+     * The version of the packed format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the header, in bytes: magic, version and digit count
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * The extension added to the name of a digit file to get its packed file
+     */
+    public static final String EXTENSION = ".nib";
+
+    /**
+     * log2 of the number of bytes in each mapped segment
+     */
+    private static final int SEGMENT_SHIFT = 30;
+
+    /**
+     * Masks a byte offset into an offset inside of a segment
+     */
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    /**
+     * The mapped segments of the packed digits, header excluded
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * The number of digits in this source
+     */
+    private final long length;
+
+    /**
+     * Creates a new PackedDigitSource by mapping the given packed file.
+     *
+     * @param packed the packed file to map
+     * @throws IOException if the file cannot be read or is not a packed file
+     */
+    public PackedDigitSource(File packed) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(packed, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE
+                    || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(packed + " is not a packed digit file");
+            }
+            length = header.getLong();
+
+            long bytes = (length + 1) / 2;
+            if (length < 0 || HEADER_SIZE + bytes > channel.size()) {
+                throw new IOException(packed + " is truncated");
+            }
+
+            int count = (int) ((bytes + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long offset = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + offset,
+                        Math.min(bytes - offset, 1L << SEGMENT_SHIFT));
+            }
+        }
+    }
+
+    /**
+     * Opens the given ASCII digit file, packing it first if its packed file
+     * does not exist yet or is older than it.
+     *
+     * @param digits the ASCII digit file
+     * @return a PackedDigitSource for the given digit file
+     * @throws IOException the standard IOException reasons
+     */
+    public static PackedDigitSource open(File digits) throws IOException {
+        File packed = new File(digits.getPath() + EXTENSION);
+        if (!packed.isFile() || packed.lastModified() < digits.lastModified()) {
+            try (InputStream in = new FileInputStream(digits)) {
+                pack(in, packed);
+            }
+        }
+
+        try {
+            return new PackedDigitSource(packed);
+        } catch (IOException ex) {
+            // the packed file is damaged; rebuild it once
+            try (InputStream in = new FileInputStream(digits)) {
+                pack(in, packed);
+            }
+            return new PackedDigitSource(packed);
+        }
+    }
+
+    /**
+     * Packs the ASCII digits read from the given stream into the given file.
+     * Anything that is not a digit (line breaks, a decimal point) is skipped.
+     *
+     * @param in the stream to read ASCII digits from
+     * @param packed the file to write the packed digits to
+     * @return the number of digits packed
+     * @throws IOException the standard IOException reasons
+     */
+    public static long pack(InputStream in, File packed) throws IOException {
+        File temp = new File(packed.getPath() + ".tmp");
+        long count = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+                FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            ByteBuffer out = ByteBuffer.allocate(1 << 16);
+            out.putInt(MAGIC).putInt(VERSION).putLong(0);
+
+            InputStream bin = new BufferedInputStream(in, 1 << 16);
+            int high = -1, c;
+            while ((c = bin.read()) >= 0) {
+                if (c < '0' || c > '9') {
+                    continue;
+                }
+                if (high < 0) {
+                    high = c - '0';
+                } else {
+                    out.put((byte) (high << 4 | (c - '0')));
+                    high = -1;
+                    if (!out.hasRemaining()) {
+                        out.flip();
+                        while (out.hasRemaining()) {
+                            channel.write(out);
+                        }
+                        out.clear();
+                    }
+                }
+                count++;
+            }
+            if (high >= 0) {
+                out.put((byte) (high << 4));
+            }
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putLong(count).flip();
+            channel.write(header, 8);
+        }
+
+        if (packed.exists() && !packed.delete()) {
+            throw new IOException("Could not replace " + packed);
+        }
+        if (!temp.renameTo(packed)) {
+            throw new IOException("Could not rename " + temp + " to " + packed);
+        }
+        return count;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int digitAt(long index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index
+                    + " out of [0, " + length + ")");
+        }
+
+        long offset = index >>> 1;
+        int b = segments[(int) (offset >>> SEGMENT_SHIFT)]
+                .get((int) (offset & SEGMENT_MASK));
+        return (index & 1) == 0 ? (b >>> 4) & 0xF : b & 0xF;
+    }
+
+    @Override
+    public byte[] copyRange(long start, int length) {
+        checkRange(start, length);
+        byte[] out = new byte[length];
+        int i = 0;
+        if (i < length && (start & 1) != 0) {
+            out[i++] = (byte) digitAt(start);
+        }
+        for (; i + 1 < length; i += 2) {
+            long offset = (start + i) >>> 1;
+            int b = segments[(int) (offset >>> SEGMENT_SHIFT)]
+                    .get((int) (offset & SEGMENT_MASK));
+            out[i] = (byte) ((b >>> 4) & 0xF);
+            out[i + 1] = (byte) (b & 0xF);
+        }
+        if (i < length) {
+            out[i] = (byte) digitAt(start + i);
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return "PackedDigitSource length=" + length;
+    }
+}
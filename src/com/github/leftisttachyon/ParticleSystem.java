@@ -0,0 +1,223 @@
+package com.github.leftisttachyon;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A pool of fading digit particles, stored as parallel primitive arrays.
+ * Every digit is pre-rendered once into a glyph atlas, and particles are
+ * drawn by compositing those images, so painting a frame allocates nothing.
+ * A ParticleSystem is not thread-safe: keys spawn particles on the EDT,
+ * while frames may be painted on the EDT or on a render thread, so every
+ * call must hold one lock shared by all of them, as DrawPanel does with
+ * its frame lock.
+ *
+ * @author Jed Wang
+ */
+public final class ParticleSystem {
+
+    /**
+     * How much opacity a particle loses every frame
+     */
+    public static final float FADE = 0.008f;
+
+    /**
+     * The number of distinct opacity levels that particles are drawn with
+     */
+    private static final int ALPHA_LEVELS = 256;
+
+    /**
+     * A composite for each opacity level
+     */
+    private static final Composite[] COMPOSITES = new Composite[ALPHA_LEVELS];
+
+    static {
+        for (int i = 0; i < ALPHA_LEVELS; i++) {
+            COMPOSITES[i] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER,
+                    i / (float) (ALPHA_LEVELS - 1));
+        }
+    }
+
+    /**
+     * The number of digits that have glyphs: 0-9 and the hex digits A-F
+     */
+    private static final int GLYPHS = 16;
+
+    /**
+     * The pre-rendered image of each digit
+     */
+    private final BufferedImage[] glyphs = new BufferedImage[GLYPHS];
+
+    /**
+     * How far left and up of a particle's position its glyph is drawn
+     */
+    private final int[] offsetX = new int[GLYPHS], offsetY = new int[GLYPHS];
+
+    /**
+     * The coordinates of the particles
+     */
+    private float[] x, y;
+
+    /**
+     * The x and y velocities of the particles
+     */
+    private float[] dx, dy;
+
+    /**
+     * The opacities of the particles
+     */
+    private float[] opacity;
+
+    /**
+     * The digit that each particle shows
+     */
+    private byte[] digit;
+
+    /**
+     * The number of live particles, which are kept at the front of the arrays
+     */
+    private int size = 0;
+
+    /**
+     * Creates a new ParticleSystem.
+     *
+     * @param font the font to render the digits in
+     * @param capacity the number of particles to make room for up front
+     */
+    public ParticleSystem(Font font, int capacity) {
+        allocate(Math.max(1, capacity));
+
+        BufferedImage scratch = new BufferedImage(1, 1,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D sg = scratch.createGraphics();
+        FontMetrics metrics = sg.getFontMetrics(font);
+        sg.dispose();
+
+        int height = metrics.getHeight(), ascent = metrics.getAscent();
+        for (int d = 0; d < GLYPHS; d++) {
+            String s = String.valueOf(Character.toUpperCase(
+                    Character.forDigit(d, GLYPHS)));
+            int width = Math.max(1, metrics.stringWidth(s));
+
+            BufferedImage glyph = new BufferedImage(width, height,
+                    BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2D = glyph.createGraphics();
+            g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            g2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2D.setFont(font);
+            g2D.setColor(Color.BLACK);
+            g2D.drawString(s, 0, ascent);
+            g2D.dispose();
+
+            glyphs[d] = glyph;
+            // same placement as the old drawString(x - width / 2, y + height / 4)
+            offsetX[d] = width / 2;
+            offsetY[d] = ascent - height / 4;
+        }
+    }
+
+    /**
+     * Adds a particle with a random velocity
+     *
+     * @param d the digit (0-9, or 0-15 in hex) the particle shows
+     * @param px the x-coordinate to start at
+     * @param py the y-coordinate to start at
+     */
+    public void spawn(int d, float px, float py) {
+        if (size == x.length) {
+            allocate(size * 2);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        x[size] = px;
+        y[size] = py;
+        dx[size] = random.nextFloat() * 4 - 2;
+        dy[size] = random.nextFloat() * 4 - 2;
+        opacity[size] = 1.0f;
+        digit[size] = (byte) d;
+        size++;
+    }
+
+    /**
+     * Draws every live particle, then moves and fades them by one frame.
+     * Particles that have faded out are recycled.
+     *
+     * @param g2D the Graphics2D object to use
+     */
+    public void paint(Graphics2D g2D) {
+        Composite old = g2D.getComposite();
+        for (int i = 0; i < size; i++) {
+            int d = digit[i];
+            g2D.setComposite(COMPOSITES[(int) (opacity[i] * (ALPHA_LEVELS - 1))]);
+            g2D.drawImage(glyphs[d], (int) x[i] - offsetX[d],
+                    (int) y[i] - offsetY[d], null);
+        }
+        g2D.setComposite(old);
+
+        for (int i = size - 1; i >= 0; i--) {
+            x[i] += dx[i];
+            y[i] += dy[i];
+            opacity[i] -= FADE;
+
+            if (opacity[i] <= 0) {
+                // move the last live particle into the dead one's slot
+                size--;
+                x[i] = x[size];
+                y[i] = y[size];
+                dx[i] = dx[size];
+                dy[i] = dy[size];
+                opacity[i] = opacity[size];
+                digit[i] = digit[size];
+            }
+        }
+    }
+
+    /**
+     * Removes every particle
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the number of live particles
+     *
+     * @return the number of live particles
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Resizes the particle arrays, keeping the live particles
+     *
+     * @param capacity the new capacity
+     */
+    private void allocate(int capacity) {
+        if (x == null) {
+            x = new float[capacity];
+            y = new float[capacity];
+            dx = new float[capacity];
+            dy = new float[capacity];
+            opacity = new float[capacity];
+            digit = new byte[capacity];
+        } else {
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            dx = Arrays.copyOf(dx, capacity);
+            dy = Arrays.copyOf(dy, capacity);
+            opacity = Arrays.copyOf(opacity, capacity);
+            digit = Arrays.copyOf(digit, capacity);
+        }
+    }
+}
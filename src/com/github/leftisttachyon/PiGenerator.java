@@ -0,0 +1,749 @@
+package com.github.leftisttachyon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes decimal digits of pi with the Chudnovsky series, evaluated by
+ * binary splitting on a fork/join pool. The digits are written in the same
+ * format as pi.dat: ASCII digits without a decimal point.
+ *
+ * @author Jed Wang
+ */
+public final class PiGenerator {
+
+    /**
+     * Listens to the progress of a generation
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * Called whenever the generation makes progress
+         *
+         * @param phase the name of the current phase
+         * @param fraction how far along the current phase is, from 0 to 1
+         */
+        void progress(String phase, double fraction);
+    }
+
+    /**
+     * C^3 / 24, where C = 640320
+     */
+    private static final BigInteger C3_OVER_24
+            = BigInteger.valueOf(640320).pow(3).divide(BigInteger.valueOf(24));
+
+    /**
+     * The number of digits that each term of the series adds
+     */
+    private static final double DIGITS_PER_TERM = Math.log10(
+            C3_OVER_24.doubleValue() / 72);
+
+    /**
+     * The number of extra digits computed to absorb rounding errors
+     */
+    private static final int GUARD_DIGITS = 16;
+
+    /**
+     * The extra bits of 1 / sqrt(n) computed so that sqrt(n) is off by one
+     * at most before it is corrected
+     */
+    private static final int SQRT_GUARD_BITS = 32;
+
+    /**
+     * Inverse square roots with at most this many bits start from a double
+     */
+    private static final int SQRT_DOUBLE_BITS = 26;
+
+    /**
+     * Ranges with fewer terms than this are split sequentially
+     */
+    private static final int SEQUENTIAL_TERMS = 256;
+
+    /**
+     * Products of numbers with more bits than this are forked in parallel
+     */
+    private static final int PARALLEL_BITS = 1 << 16;
+
+    /**
+     * The maximum number of checkpointed chunks that the series is split into
+     */
+    private static final int MAX_CHUNKS = 256;
+
+    /**
+     * Numbers with fewer digits than this are written out with toString()
+     */
+    private static final int LEAF_DIGITS = 1024;
+
+    /**
+     * The number of digits to generate, including the leading 3
+     */
+    private final int digits;
+
+    /**
+     * The directory to store checkpoints in, or null to not checkpoint
+     */
+    private final File checkpointDir;
+
+    /**
+     * The pool to compute on
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a new PiGenerator.
+     *
+     * @param digits the number of digits to generate, including the leading 3
+     * @param checkpointDir the directory to store checkpoints in, or null to
+     * not checkpoint
+     */
+    public PiGenerator(int digits, File checkpointDir) {
+        if (digits < 1) {
+            throw new IllegalArgumentException("digits must be positive");
+        }
+        this.digits = digits;
+        this.checkpointDir = checkpointDir;
+        pool = ForkJoinPool.commonPool();
+    }
+
+    /**
+     * The entry point for generating a digit file from the command line.
+     * Usage: {@code PiGenerator <digits> [output file] [checkpoint dir]}
+     *
+     * @param args the command line arguments
+     * @throws IOException the standard IOException reasons
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: PiGenerator <digits> [output file] "
+                    + "[checkpoint dir]");
+            return;
+        }
+
+        int digits = Integer.parseInt(args[0]);
+        File out = new File(args.length > 1 ? args[1]
+                : "pi-" + digits + ".dat");
+        File checkpoints = args.length > 2 ? new File(args[2])
+                : new File(out.getPath() + ".ckpt");
+
+        long start = System.nanoTime();
+        int[] lastPercent = {-1};
+        String[] lastPhase = {null};
+        new PiGenerator(digits, checkpoints).generate(out, (phase, fraction) -> {
+            int percent = (int) (fraction * 100);
+            synchronized (lastPercent) {
+                if (!phase.equals(lastPhase[0]) || percent != lastPercent[0]) {
+                    lastPhase[0] = phase;
+                    lastPercent[0] = percent;
+                    System.out.println(phase + ": " + percent + "%");
+                }
+            }
+        });
+        System.out.println("Wrote " + digits + " digits to " + out + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Generates the digits and writes them to the given file. If a
+     * checkpoint directory was given, finished parts of the series are saved
+     * there and reused by the next generation of the same size, and the
+     * directory is deleted once the file is written.
+     *
+     * @param out the file to write the digits to
+     * @param listener the listener to report progress to
+     * @throws IOException the standard IOException reasons
+     */
+    public void generate(File out, ProgressListener listener)
+            throws IOException {
+        int precision = digits - 1 + GUARD_DIGITS;
+        int terms = (int) (precision / DIGITS_PER_TERM) + 2;
+
+        Split series = computeSeries(terms, listener);
+        listener.progress("sqrt", 0);
+        BigInteger one = BigInteger.TEN.pow(precision);
+        BigInteger sqrtC = sqrt(BigInteger.valueOf(10005).multiply(one)
+                .multiply(one));
+        listener.progress("sqrt", 1);
+
+        listener.progress("divide", 0);
+        BigInteger pi = multiply(series.q, sqrtC)
+                .multiply(BigInteger.valueOf(426880))
+                .divide(series.t)
+                .divide(BigInteger.TEN.pow(GUARD_DIGITS));
+        listener.progress("divide", 1);
+
+        write(pi, digits, out, listener);
+
+        if (checkpointDir != null) {
+            File[] files = checkpointDir.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    f.delete();
+                }
+            }
+            checkpointDir.delete();
+        }
+    }
+
+    /**
+     * Computes P, Q and T over the whole series, one checkpointed chunk at a
+     * time, and combines the chunks.
+     *
+     * @param terms the number of terms in the series
+     * @param listener the listener to report progress to
+     * @return the binary splitting of the whole series
+     * @throws IOException if a checkpoint cannot be written
+     */
+    private Split computeSeries(int terms, ProgressListener listener)
+            throws IOException {
+        if (checkpointDir != null && !checkpointDir.isDirectory()
+                && !checkpointDir.mkdirs()) {
+            throw new IOException("Could not create " + checkpointDir);
+        }
+
+        int chunks = Math.max(1, Math.min(MAX_CHUNKS,
+                terms / SEQUENTIAL_TERMS));
+        Split[] parts = new Split[chunks];
+        List<ForkJoinTask<Split>> pending = new ArrayList<>();
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < chunks; i++) {
+            long first = (long) terms * i / chunks,
+                    last = (long) terms * (i + 1) / chunks;
+            parts[i] = loadCheckpoint(i, first, last);
+            if (parts[i] == null) {
+                final int chunk = i;
+                pending.add(pool.submit(new SplitTask(first, last) {
+                    @Override
+                    protected Split compute() {
+                        Split s = super.compute();
+                        saveCheckpoint(chunk, first, last, s);
+                        listener.progress("series",
+                                (double) done.incrementAndGet() / chunks);
+                        return s;
+                    }
+                }));
+            } else {
+                listener.progress("series",
+                        (double) done.incrementAndGet() / chunks);
+            }
+        }
+
+        for (int i = 0, j = 0; i < chunks; i++) {
+            if (parts[i] == null) {
+                try {
+                    parts[i] = pending.get(j++).join();
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+            }
+        }
+
+        listener.progress("combine", 0);
+        Split all = pool.invoke(new CombineTask(parts, 0, chunks));
+        listener.progress("combine", 1);
+        return all;
+    }
+
+    /**
+     * Returns the file that stores the given chunk
+     *
+     * @param chunk the index of the chunk
+     * @return the file that stores the given chunk
+     */
+    private File checkpointFile(int chunk) {
+        return new File(checkpointDir, "chunk-" + chunk + ".bin");
+    }
+
+    /**
+     * Loads a chunk from its checkpoint, if it was saved for the same range
+     *
+     * @param chunk the index of the chunk
+     * @param a the first term of the chunk
+     * @param b one past the last term of the chunk
+     * @return the saved chunk, or null if there is none
+     */
+    private Split loadCheckpoint(int chunk, long a, long b) {
+        if (checkpointDir == null) {
+            return null;
+        }
+        File file = checkpointFile(chunk);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            if (in.readLong() != a || in.readLong() != b) {
+                return null;
+            }
+            return new Split(readBig(in), readBig(in), readBig(in));
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves a chunk to its checkpoint
+     *
+     * @param chunk the index of the chunk
+     * @param a the first term of the chunk
+     * @param b one past the last term of the chunk
+     * @param s the computed chunk
+     */
+    private void saveCheckpoint(int chunk, long a, long b, Split s) {
+        if (checkpointDir == null) {
+            return;
+        }
+        File file = checkpointFile(chunk);
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeLong(a);
+                out.writeLong(b);
+                writeBig(out, s.p);
+                writeBig(out, s.q);
+                writeBig(out, s.t);
+            }
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Could not rename " + temp);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Writes a BigInteger to a stream
+     *
+     * @param out the stream to write to
+     * @param n the number to write
+     * @throws IOException the standard IOException reasons
+     */
+    private static void writeBig(DataOutputStream out, BigInteger n)
+            throws IOException {
+        byte[] bytes = n.toByteArray();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a BigInteger from a stream
+     *
+     * @param in the stream to read from
+     * @return the number that was read
+     * @throws IOException the standard IOException reasons
+     */
+    private static BigInteger readBig(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new BigInteger(bytes);
+    }
+
+    /**
+     * Writes a number to a digit file, in decimal padded with leading zeros
+     * to the given width. The file is written to a temporary file first and
+     * then renamed, so it is never left half written.
+     *
+     * @param n the number to write
+     * @param digits the number of digits to write
+     * @param out the file to write to
+     * @param listener the listener to report progress to
+     * @throws IOException the standard IOException reasons
+     */
+    static void write(BigInteger n, int digits, File out,
+            ProgressListener listener) throws IOException {
+        File temp = new File(out.getPath() + ".tmp");
+        try (OutputStream os = new BufferedOutputStream(
+                new FileOutputStream(temp), 1 << 16)) {
+            new DigitWriter(os, digits, listener).write(n, digits);
+        }
+        if (out.exists() && !out.delete()) {
+            throw new IOException("Could not replace " + out);
+        }
+        if (!temp.renameTo(out)) {
+            throw new IOException("Could not rename " + temp + " to " + out);
+        }
+    }
+
+    /**
+     * Computes the floor of the square root of a number. The root comes
+     * from an approximation of 1 / sqrt(n), which Newton's method refines
+     * with multiplications alone, doubling its precision each step from a
+     * double of the top bits of n. One product with the top of n then gives
+     * the root to within one, and the remainder corrects it.
+     *
+     * @param n the number to take the square root of
+     * @return the floor of the square root of n
+     */
+    static BigInteger sqrt(BigInteger n) {
+        if (n.bitLength() <= 62) {
+            long v = n.longValue(), r = (long) Math.sqrt(v);
+            while (r * r > v) {
+                r--;
+            }
+            while ((r + 1) * (r + 1) <= v) {
+                r++;
+            }
+            return BigInteger.valueOf(r);
+        }
+
+        int half = (n.bitLength() + 1) / 2;
+        int bits = half + SQRT_GUARD_BITS;
+        // the low half of n moves the root by less than 2^-7
+        int drop = half - 8;
+        BigInteger x = multiply(n.shiftRight(drop), inverseSqrt(n, half, bits))
+                .shiftRight(bits + half - drop);
+        BigInteger rem = n.subtract(multiply(x, x));
+        while (rem.signum() < 0) {
+            x = x.subtract(BigInteger.ONE);
+            rem = rem.add(x.shiftLeft(1).add(BigInteger.ONE));
+        }
+        while (rem.compareTo(x.shiftLeft(1)) > 0) {
+            rem = rem.subtract(x.shiftLeft(1).add(BigInteger.ONE));
+            x = x.add(BigInteger.ONE);
+        }
+        return x;
+    }
+
+    /**
+     * Approximates 2^(bits + half) / sqrt(n) to within a few units. With t,
+     * the top 2 * bits bits of n, in its place, the result r is about
+     * 2^(2 * bits) / sqrt(t), between 2^bits and 2^(bits + 1), and the
+     * Newton step for it is
+     * r += r * (2^(4 * bits) - t * r^2) / 2^(4 * bits + 1).
+     * Each product in the step is only taken to the precision it needs.
+     *
+     * @param n the number, at most 2 * half bits long
+     * @param half half the number of bits of n, rounded up
+     * @param bits the number of bits of precision to compute
+     * @return the approximation
+     */
+    private static BigInteger inverseSqrt(BigInteger n, int half, int bits) {
+        BigInteger t = n.shiftRight(2 * (half - bits));
+        if (bits <= SQRT_DOUBLE_BITS) {
+            return BigInteger.valueOf((long) (Math.scalb(1.0, 2 * bits)
+                    / Math.sqrt(t.doubleValue())));
+        }
+
+        // a few more bits than half, so the rounding of each step stays
+        // below the precision of the next
+        int lower = bits / 2 + 8;
+        BigInteger r = inverseSqrt(n, half, lower).shiftLeft(bits - lower);
+
+        // t * r^2 is about 2^(4 * bits), and its bits below 3 * bits - 16
+        // cannot change the correction, so both factors lose their low
+        // bits - 24 bits
+        int cut = bits - 24;
+        BigInteger error = BigInteger.ONE.shiftLeft(4 * bits - 2 * cut)
+                .subtract(multiply(t.shiftRight(cut),
+                        multiply(r, r).shiftRight(cut)))
+                .shiftRight(3 * bits - 16 - 2 * cut);
+        // the correction is about 2^(bits - lower), so the low bits of r
+        // only move it by a fraction
+        int low = lower - 8;
+        return r.add(multiply(r.shiftRight(low), error)
+                .shiftRight(bits + 17 - low));
+    }
+
+    /**
+     * Multiplies two numbers, splitting large products Karatsuba-style into
+     * three smaller ones that run in parallel, as long as the common pool
+     * has workers to run them on.
+     *
+     * @param a the first factor
+     * @param b the second factor
+     * @return a * b
+     */
+    static BigInteger multiply(BigInteger a, BigInteger b) {
+        return multiply(a, b, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Multiplies two numbers, splitting large products into three smaller
+     * ones while there are workers to run them on. Splitting costs a little
+     * more than one BigInteger product, so it only pays in parallel.
+     *
+     * @param a the first factor
+     * @param b the second factor
+     * @param workers the number of workers the product may use
+     * @return a * b
+     */
+    private static BigInteger multiply(BigInteger a, BigInteger b,
+            int workers) {
+        if (workers < 2 || a.bitLength() < PARALLEL_BITS
+                || b.bitLength() < PARALLEL_BITS) {
+            return a.multiply(b);
+        }
+
+        int half = Math.max(a.bitLength(), b.bitLength()) / 2;
+        BigInteger aHi = a.shiftRight(half),
+                aLo = a.subtract(aHi.shiftLeft(half)),
+                bHi = b.shiftRight(half),
+                bLo = b.subtract(bHi.shiftLeft(half));
+        int each = (workers + 2) / 3;
+
+        ForkJoinTask<BigInteger> hh = ForkJoinTask.adapt(() -> multiply(aHi, bHi, each)).fork(),
+                ll = ForkJoinTask.adapt(() -> multiply(aLo, bLo, each)).fork();
+        BigInteger mid = multiply(aHi.add(aLo), bHi.add(bLo), each);
+        BigInteger high = hh.join(), low = ll.join();
+
+        return high.shiftLeft(2 * half)
+                .add(mid.subtract(high).subtract(low).shiftLeft(half))
+                .add(low);
+    }
+
+    /**
+     * The P, Q and T values of a binary-split range of the series
+     */
+    private static final class Split {
+
+        /**
+         * The P, Q and T values
+         */
+        private final BigInteger p, q, t;
+
+        /**
+         * Creates a new Split.
+         *
+         * @param p the product of the numerators
+         * @param q the product of the denominators
+         * @param t the partial sum, scaled by q
+         */
+        Split(BigInteger p, BigInteger q, BigInteger t) {
+            this.p = p;
+            this.q = q;
+            this.t = t;
+        }
+
+        /**
+         * Combines this range with the range directly after it
+         *
+         * @param right the range directly after this one
+         * @return the split of both ranges
+         */
+        Split combine(Split right) {
+            if (q.bitLength() < PARALLEL_BITS) {
+                return new Split(p.multiply(right.p), q.multiply(right.q),
+                        right.q.multiply(t).add(p.multiply(right.t)));
+            }
+
+            ForkJoinTask<BigInteger> pp = ForkJoinTask.adapt(() -> multiply(p, right.p)).fork(),
+                    qq = ForkJoinTask.adapt(() -> multiply(q, right.q)).fork(),
+                    qt = ForkJoinTask.adapt(() -> multiply(right.q, t)).fork();
+            BigInteger pt = multiply(p, right.t);
+            return new Split(pp.join(), qq.join(), qt.join().add(pt));
+        }
+    }
+
+    /**
+     * Binary-splits a range of the series on the fork/join pool
+     */
+    private static class SplitTask extends RecursiveTask<Split> {
+
+        /**
+         * The range of terms: [a, b)
+         */
+        private final long a, b;
+
+        /**
+         * Creates a new SplitTask.
+         *
+         * @param a the first term
+         * @param b one past the last term
+         */
+        SplitTask(long a, long b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        protected Split compute() {
+            if (b - a <= SEQUENTIAL_TERMS) {
+                return split(a, b);
+            }
+
+            long m = (a + b) / 2;
+            SplitTask left = new SplitTask(a, m);
+            left.fork();
+            Split right = new SplitTask(m, b).compute();
+            return left.join().combine(right);
+        }
+
+        /**
+         * Binary-splits a range of the series on the current thread
+         *
+         * @param a the first term
+         * @param b one past the last term
+         * @return the split of the range
+         */
+        private static Split split(long a, long b) {
+            if (b - a == 1) {
+                if (a == 0) {
+                    return new Split(BigInteger.ONE, BigInteger.ONE,
+                            BigInteger.valueOf(13591409));
+                }
+
+                BigInteger p = BigInteger.valueOf(6 * a - 5)
+                        .multiply(BigInteger.valueOf(2 * a - 1))
+                        .multiply(BigInteger.valueOf(6 * a - 1));
+                BigInteger q = BigInteger.valueOf(a).pow(3)
+                        .multiply(C3_OVER_24);
+                BigInteger t = p.multiply(BigInteger.valueOf(13591409)
+                        .add(BigInteger.valueOf(545140134)
+                                .multiply(BigInteger.valueOf(a))));
+                return new Split(p, q, (a & 1) == 0 ? t : t.negate());
+            }
+
+            long m = (a + b) / 2;
+            return split(a, m).combine(split(m, b));
+        }
+    }
+
+    /**
+     * Combines adjacent chunks of the series on the fork/join pool
+     */
+    private static final class CombineTask extends RecursiveTask<Split> {
+
+        /**
+         * The chunks to combine
+         */
+        private final Split[] parts;
+
+        /**
+         * The range of chunks: [from, to)
+         */
+        private final int from, to;
+
+        /**
+         * Creates a new CombineTask.
+         *
+         * @param parts the chunks to combine
+         * @param from the first chunk
+         * @param to one past the last chunk
+         */
+        CombineTask(Split[] parts, int from, int to) {
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Split compute() {
+            if (to - from == 1) {
+                return parts[from];
+            }
+
+            int m = (from + to) / 2;
+            CombineTask left = new CombineTask(parts, from, m);
+            left.fork();
+            Split right = new CombineTask(parts, m, to).compute();
+            return left.join().combine(right);
+        }
+    }
+
+    /**
+     * Streams a large number to disk in decimal, splitting it recursively by
+     * powers of ten instead of building one huge String.
+     */
+    private static final class DigitWriter {
+
+        /**
+         * The stream to write to
+         */
+        private final OutputStream out;
+
+        /**
+         * The total number of digits to write
+         */
+        private final int total;
+
+        /**
+         * The listener to report progress to
+         */
+        private final ProgressListener listener;
+
+        /**
+         * 10^(LEAF_DIGITS * 2^i), computed on demand
+         */
+        private final List<BigInteger> powers = new ArrayList<>();
+
+        /**
+         * The number of digits written so far
+         */
+        private int written = 0;
+
+        /**
+         * Creates a new DigitWriter.
+         *
+         * @param out the stream to write to
+         * @param total the total number of digits to write
+         * @param listener the listener to report progress to
+         */
+        DigitWriter(OutputStream out, int total, ProgressListener listener) {
+            this.out = out;
+            this.total = total;
+            this.listener = listener;
+        }
+
+        /**
+         * Writes a number padded with leading zeros to the given width
+         *
+         * @param n the number to write
+         * @param width the number of digits to write
+         * @throws IOException the standard IOException reasons
+         */
+        void write(BigInteger n, int width) throws IOException {
+            if (width <= LEAF_DIGITS) {
+                String s = n.toString();
+                for (int i = s.length(); i < width; i++) {
+                    out.write('0');
+                }
+                out.write(s.getBytes(StandardCharsets.US_ASCII));
+                written += width;
+                listener.progress("write", (double) written / total);
+                return;
+            }
+
+            int level = 0;
+            while ((LEAF_DIGITS << (level + 1)) < width) {
+                level++;
+            }
+            BigInteger[] qr = n.divideAndRemainder(power(level));
+            write(qr[0], width - (LEAF_DIGITS << level));
+            write(qr[1], LEAF_DIGITS << level);
+        }
+
+        /**
+         * Returns 10^(LEAF_DIGITS * 2^level)
+         *
+         * @param level the level of the power
+         * @return 10^(LEAF_DIGITS * 2^level)
+         */
+        private BigInteger power(int level) {
+            while (powers.size() <= level) {
+                powers.add(powers.isEmpty() ? BigInteger.TEN.pow(LEAF_DIGITS)
+                        : multiply(powers.get(powers.size() - 1),
+                                powers.get(powers.size() - 1)));
+            }
+            return powers.get(level);
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * A persistent, memory-mapped index of where every k-digit sequence occurs
+ * in a DigitSource. Each k-gram has a posting list of the positions where it
+ * starts, sorted by position, so finding the first occurrences of a sequence
+ * only has to check the candidates of its rarest k-gram. A sequence shorter
+ * than k is answered by merging the posting lists of every k-gram that
+ * starts with it.
+ *
+ * @author Jed Wang
+ */
+public final class PositionIndex {
+
+    /**
+     * The magic number at the start of every index file ("PIDX")
+     */
+    public static final int MAGIC = 0x50494458;
+
+    /**
+     * The version of the index format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The extension added to the name of a digit file to get its index file
+     */
+    public static final String EXTENSION = ".idx";
+
+    /**
+     * The length of the indexed sequences
+     */
+    public static final int K = 6;
+
+    /**
+     * The number of different k-grams
+     */
+    private static final int BUCKETS = 1_000_000;
+
+    /**
+     * The size of the header: magic, version, k and digit count
+     */
+    private static final int HEADER_SIZE = 20;
+
+    /**
+     * The size of the offset table: one long per bucket, plus an end marker
+     */
+    private static final long OFFSETS_SIZE = 8L * (BUCKETS + 1);
+
+    /**
+     * The number of digits read from the source at a time while building
+     */
+    private static final int BLOCK = 1 << 16;
+
+    /**
+     * log2 of the number of bytes in each mapped segment of positions
+     */
+    private static final int SEGMENT_SHIFT = 30;
+
+    /**
+     * Masks a byte offset into an offset inside of a segment
+     */
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    /**
+     * The indexed digits
+     */
+    private final DigitSource digits;
+
+    /**
+     * The mapped offset table
+     */
+    private final MappedByteBuffer offsets;
+
+    /**
+     * The mapped segments of the posting lists
+     */
+    private final MappedByteBuffer[] positions;
+
+    /**
+     * Creates a new PositionIndex by mapping an index file.
+     *
+     * @param digits the indexed digits
+     * @param file the index file
+     * @throws IOException if the file cannot be read or does not index the
+     * given digits
+     */
+    private PositionIndex(DigitSource digits, File file) throws IOException {
+        this.digits = digits;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            long count = indexedCount(digits.length());
+            if (header.remaining() < HEADER_SIZE
+                    || header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getInt() != K || header.getLong() != digits.length()
+                    || channel.size() != HEADER_SIZE + OFFSETS_SIZE + 4 * count) {
+                throw new IOException(file + " does not index these digits");
+            }
+
+            offsets = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                    OFFSETS_SIZE);
+            positions = mapPositions(channel, FileChannel.MapMode.READ_ONLY,
+                    count);
+        }
+    }
+
+    /**
+     * Opens the index of the given digit file, building it first if it does
+     * not exist yet or is older than the digit file.
+     *
+     * @param digitFile the file that the digits were read from
+     * @param digits the digits in that file
+     * @return the index of the digits
+     * @throws IOException the standard IOException reasons
+     */
+    public static PositionIndex open(File digitFile, DigitSource digits)
+            throws IOException {
+        File file = new File(digitFile.getPath() + EXTENSION);
+        if (file.isFile() && file.lastModified() >= digitFile.lastModified()) {
+            try {
+                return new PositionIndex(digits, file);
+            } catch (IOException ex) {
+                // stale or damaged; fall through and rebuild it
+            }
+        }
+
+        build(digits, file);
+        return new PositionIndex(digits, file);
+    }
+
+    /**
+     * Builds an index of the given digits with two passes of a counting
+     * sort: one to size the posting lists and one to fill them.
+     *
+     * @param digits the digits to index
+     * @param file the file to write the index to
+     * @throws IOException the standard IOException reasons
+     */
+    public static void build(DigitSource digits, File file) throws IOException {
+        long count = indexedCount(digits.length());
+        if (count > Integer.MAX_VALUE) {
+            throw new IOException("Too many digits to index: "
+                    + digits.length());
+        }
+
+        long[] next = new long[BUCKETS + 1];
+        forEachGram(digits, count, (gram, pos) -> next[gram + 1]++);
+        for (int i = 1; i <= BUCKETS; i++) {
+            next[i] += next[i - 1];
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+                FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(K)
+                    .putLong(digits.length()).flip();
+            channel.write(header, 0);
+
+            MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE, OFFSETS_SIZE);
+            for (long offset : next) {
+                table.putLong(offset);
+            }
+            table.force();
+
+            MappedByteBuffer[] lists = mapPositions(channel,
+                    FileChannel.MapMode.READ_WRITE, count);
+            forEachGram(digits, count, (gram, pos) -> {
+                long at = 4 * next[gram]++;
+                lists[(int) (at >>> SEGMENT_SHIFT)]
+                        .putInt((int) (at & SEGMENT_MASK), (int) pos);
+            });
+            for (MappedByteBuffer list : lists) {
+                list.force();
+            }
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Finds the first occurrences of a sequence of digits
+     *
+     * @param sequence the values (0-9) of the digits to look for
+     * @param max the maximum number of occurrences to return
+     * @return the zero-based positions of the first occurrences, in order
+     */
+    public long[] find(byte[] sequence, int max) {
+        long[] found = new long[Math.max(0, max)];
+        int n = 0;
+        if (sequence.length == 0 || max <= 0) {
+            return found;
+        }
+
+        if (sequence.length < K) {
+            return findShort(sequence, max);
+        }
+
+        int shift = 0;
+        long fewest = Long.MAX_VALUE;
+        for (int s = 0; s + K <= sequence.length; s++) {
+            int gram = gramOf(sequence, s);
+            long size = offsets.getLong(8 * (gram + 1))
+                    - offsets.getLong(8 * gram);
+            if (size < fewest) {
+                fewest = size;
+                shift = s;
+            }
+        }
+
+        int gram = gramOf(sequence, shift);
+        long from = offsets.getLong(8 * gram),
+                to = offsets.getLong(8 * (gram + 1));
+        for (long i = from; i < to && n < max; i++) {
+            long pos = positionAt(i) - shift;
+            if (pos >= 0 && matches(sequence, pos)) {
+                found[n++] = pos;
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    /**
+     * Finds the first occurrences of a sequence shorter than k. The k-grams
+     * that start with it are consecutive, so their posting lists are too,
+     * and every position in them is an occurrence; they are merged in order
+     * of position. The last k - 1 positions start no k-gram, and come after
+     * every indexed one, so they are checked last.
+     *
+     * @param sequence the values (0-9) of the digits to look for, fewer
+     * than k of them
+     * @param max the maximum number of occurrences to return, at least 1
+     * @return the zero-based positions of the first occurrences, in order
+     */
+    private long[] findShort(byte[] sequence, int max) {
+        int span = 1, first = 0;
+        for (byte digit : sequence) {
+            first = first * 10 + digit;
+        }
+        for (int i = sequence.length; i < K; i++) {
+            span *= 10;
+        }
+        first *= span;
+
+        // the next unmerged entry and the end of each list, by list
+        long[] next = new long[span], end = new long[span],
+                head = new long[span];
+        int[] heap = new int[span];
+        int lists = 0;
+        for (int gram = first; gram < first + span; gram++) {
+            long from = offsets.getLong(8 * gram),
+                    to = offsets.getLong(8 * (gram + 1));
+            if (from < to) {
+                next[lists] = from + 1;
+                end[lists] = to;
+                head[lists] = positionAt(from);
+                heap[lists] = lists;
+                lists++;
+            }
+        }
+        for (int i = lists / 2 - 1; i >= 0; i--) {
+            siftDown(heap, lists, head, i);
+        }
+
+        long[] found = new long[max];
+        int n = 0;
+        while (n < max && lists > 0) {
+            int list = heap[0];
+            found[n++] = head[list];
+            if (next[list] < end[list]) {
+                head[list] = positionAt(next[list]++);
+            } else {
+                heap[0] = heap[--lists];
+            }
+            siftDown(heap, lists, head, 0);
+        }
+
+        long last = digits.length() - sequence.length;
+        for (long pos = indexedCount(digits.length()); pos <= last && n < max;
+                pos++) {
+            if (matches(sequence, pos)) {
+                found[n++] = pos;
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    /**
+     * Moves the list at a heap index down until its head comes before the
+     * heads of its children
+     *
+     * @param heap the heap of lists
+     * @param size the number of lists in the heap
+     * @param head the position at the head of each list
+     * @param i the heap index
+     */
+    private static void siftDown(int[] heap, int size, long[] head, int i) {
+        int list = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && head[heap[child + 1]] < head[heap[child]]) {
+                child++;
+            }
+            if (head[heap[child]] >= head[list]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = list;
+    }
+
+    /**
+     * Returns an entry of the posting lists
+     *
+     * @param i the index of the entry
+     * @return the position where the k-gram of the entry starts
+     */
+    private long positionAt(long i) {
+        long at = 4 * i;
+        return positions[(int) (at >>> SEGMENT_SHIFT)]
+                .getInt((int) (at & SEGMENT_MASK));
+    }
+
+    /**
+     * Finds the first occurrences of a sequence of digits
+     *
+     * @param sequence the digits to look for, as a String of '0'-'9'
+     * @param max the maximum number of occurrences to return
+     * @return the zero-based positions of the first occurrences, in order
+     * @throws IllegalArgumentException if the sequence is not all digits
+     */
+    public long[] find(String sequence, int max) {
+        byte[] values = new byte[sequence.length()];
+        for (int i = 0; i < values.length; i++) {
+            char c = sequence.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("not a digit: " + c);
+            }
+            values[i] = (byte) (c - '0');
+        }
+        return find(values, max);
+    }
+
+    /**
+     * Determines whether a sequence occurs at the given position
+     *
+     * @param sequence the values of the digits to look for
+     * @param pos the position to check
+     * @return whether the sequence occurs at the given position
+     */
+    private boolean matches(byte[] sequence, long pos) {
+        if (pos + sequence.length > digits.length()) {
+            return false;
+        }
+        for (int i = 0; i < sequence.length; i++) {
+            if (digits.digitAt(pos + i) != sequence[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the k-gram that starts at the given offset of a sequence
+     *
+     * @param sequence the values of the digits
+     * @param offset the offset of the k-gram
+     * @return the k-gram, as a number from 0 to 10^k - 1
+     */
+    private static int gramOf(byte[] sequence, int offset) {
+        int gram = 0;
+        for (int i = offset; i < offset + K; i++) {
+            gram = gram * 10 + sequence[i];
+        }
+        return gram;
+    }
+
+    /**
+     * Returns the number of positions where a k-gram starts
+     *
+     * @param length the number of digits
+     * @return the number of positions where a k-gram starts
+     */
+    private static long indexedCount(long length) {
+        return Math.max(0, length - K + 1);
+    }
+
+    /**
+     * Maps the posting lists of an index file
+     *
+     * @param channel the channel of the index file
+     * @param mode the mode to map with
+     * @param count the number of positions in the posting lists
+     * @return the mapped segments of the posting lists
+     * @throws IOException the standard IOException reasons
+     */
+    private static MappedByteBuffer[] mapPositions(FileChannel channel,
+            FileChannel.MapMode mode, long count) throws IOException {
+        long bytes = 4 * count;
+        int segments = (int) ((bytes + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        MappedByteBuffer[] out = new MappedByteBuffer[segments];
+        for (int i = 0; i < segments; i++) {
+            long offset = (long) i << SEGMENT_SHIFT;
+            out[i] = channel.map(mode, HEADER_SIZE + OFFSETS_SIZE + offset,
+                    Math.min(bytes - offset, 1L << SEGMENT_SHIFT));
+        }
+        return out;
+    }
+
+    /**
+     * Visits every k-gram of the digits, in order of position
+     *
+     * @param digits the digits
+     * @param count the number of k-grams
+     * @param visitor the visitor to call for each k-gram
+     */
+    private static void forEachGram(DigitSource digits, long count,
+            GramVisitor visitor) {
+        int gram = 0;
+        for (long start = 0; start < digits.length(); start += BLOCK) {
+            int length = (int) Math.min(BLOCK, digits.length() - start);
+            byte[] block = digits.copyRange(start, length);
+            for (int i = 0; i < length; i++) {
+                gram = (gram % (BUCKETS / 10)) * 10 + block[i];
+                long pos = start + i - K + 1;
+                if (pos >= 0 && pos < count) {
+                    visitor.visit(gram, pos);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits a k-gram
+     */
+    @FunctionalInterface
+    private interface GramVisitor {
+
+        /**
+         * Visits a k-gram
+         *
+         * @param gram the k-gram, as a number from 0 to 10^k - 1
+         * @param pos the position where the k-gram starts
+         */
+        void visit(int gram, long pos);
+    }
+}
@@ -0,0 +1,378 @@
+package com.github.leftisttachyon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Per-position aggregates over the whole practice history: how often each
+ * digit position was attempted and missed, and how long the answers took.
+ * Response times are kept as a mean plus a small histogram in half-octave
+ * buckets, so every position costs a few dozen bytes no matter how many
+ * sessions it has seen. The aggregates are updated as each key is judged,
+ * saved alongside the session journal, and caught up from the journal's
+ * tail when loaded.
+ *
+ * @author Jed Wang
+ */
+public final class PracticeAnalytics {
+
+    /**
+     * The magic number at the start of every analytics file ("PIA1")
+     */
+    public static final int MAGIC = 0x50494131;
+
+    /**
+     * The number of response-time buckets per position
+     */
+    public static final int TIME_BUCKETS = 16;
+
+    /**
+     * The upper bound of the first response-time bucket, in nanoseconds;
+     * each bucket after it is sqrt(2) times wider
+     */
+    private static final double FIRST_BUCKET_NANOS = 50e6;
+
+    /**
+     * The number of positions that have room in the arrays
+     */
+    private int capacity = 0;
+
+    /**
+     * One more than the largest position seen
+     */
+    private int size = 0;
+
+    /**
+     * How often each position was attempted
+     */
+    private int[] attempts = new int[0];
+
+    /**
+     * How often each position was missed
+     */
+    private int[] errors = new int[0];
+
+    /**
+     * How many response times each position has
+     */
+    private int[] timed = new int[0];
+
+    /**
+     * The mean response time of each position, in milliseconds
+     */
+    private float[] meanMillis = new float[0];
+
+    /**
+     * The response-time histogram of each position, TIME_BUCKETS counts per
+     * position, saturating at 65535
+     */
+    private char[] histograms = new char[0];
+
+    /**
+     * The journal offset that these aggregates are up to date with
+     */
+    private long journalOffset = 0;
+
+    /**
+     * Records a judged key
+     *
+     * @param position the position of the digit that was asked for
+     * @param correct whether the key was right
+     * @param responseNanos how long the answer took, or 0 if unknown (the
+     * first key of a session)
+     */
+    public synchronized void record(long position, boolean correct,
+            long responseNanos) {
+        if (position < 0 || position >= Integer.MAX_VALUE) {
+            return;
+        }
+        int p = (int) position;
+        ensureCapacity(p + 1);
+        size = Math.max(size, p + 1);
+
+        attempts[p]++;
+        if (!correct) {
+            errors[p]++;
+        }
+        if (responseNanos > 0) {
+            int n = ++timed[p];
+            meanMillis[p] += (responseNanos / 1e6f - meanMillis[p]) / n;
+            int h = p * TIME_BUCKETS + bucketOf(responseNanos);
+            if (histograms[h] != Character.MAX_VALUE) {
+                histograms[h]++;
+            }
+        }
+    }
+
+    /**
+     * Returns one more than the largest position seen
+     *
+     * @return one more than the largest position seen
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns how often a position was attempted
+     *
+     * @param position the position
+     * @return how often the position was attempted
+     */
+    public synchronized int getAttempts(int position) {
+        return position < size ? attempts[position] : 0;
+    }
+
+    /**
+     * Returns how often a position was missed
+     *
+     * @param position the position
+     * @return how often the position was missed
+     */
+    public synchronized int getErrors(int position) {
+        return position < size ? errors[position] : 0;
+    }
+
+    /**
+     * Returns the fraction of attempts at a position that were missed
+     *
+     * @param position the position
+     * @return the error rate, or 0 if it was never attempted
+     */
+    public synchronized float getErrorRate(int position) {
+        return position < size && attempts[position] > 0
+                ? (float) errors[position] / attempts[position] : 0;
+    }
+
+    /**
+     * Returns the mean response time at a position
+     *
+     * @param position the position
+     * @return the mean response time in milliseconds, or 0 if unknown
+     */
+    public synchronized float getMeanMillis(int position) {
+        return position < size ? meanMillis[position] : 0;
+    }
+
+    /**
+     * Returns a response-time percentile at a position, to the resolution
+     * of the histogram buckets
+     *
+     * @param position the position
+     * @param fraction the fraction, from 0 to 1
+     * @return the upper bound of the bucket holding the percentile, in
+     * milliseconds, or 0 if unknown
+     */
+    public synchronized float getPercentileMillis(int position,
+            double fraction) {
+        if (position >= size) {
+            return 0;
+        }
+        int base = position * TIME_BUCKETS;
+        long total = 0;
+        for (int b = 0; b < TIME_BUCKETS; b++) {
+            total += histograms[base + b];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * total)), seen = 0;
+        for (int b = 0; b < TIME_BUCKETS; b++) {
+            seen += histograms[base + b];
+            if (seen >= rank) {
+                return (float) (upperBoundOf(b) / 1e6);
+            }
+        }
+        return (float) (upperBoundOf(TIME_BUCKETS - 1) / 1e6);
+    }
+
+    /**
+     * Loads the aggregates saved in a file and catches them up with the
+     * records that the journal got after they were saved. A missing or
+     * damaged file starts over from the beginning of the journal.
+     *
+     * @param file the analytics file
+     * @param journal the session journal file
+     * @return the loaded aggregates
+     */
+    public static PracticeAnalytics load(File file, File journal) {
+        PracticeAnalytics analytics = new PracticeAnalytics();
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                analytics.readFrom(in);
+            } catch (IOException ex) {
+                analytics = new PracticeAnalytics();
+            }
+        }
+
+        if (journal.isFile()) {
+            try {
+                analytics.catchUp(journal);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return analytics;
+    }
+
+    /**
+     * Applies the journal records after the offset these aggregates are up
+     * to date with
+     *
+     * @param journal the session journal file
+     * @throws IOException if the journal cannot be read
+     */
+    public synchronized void catchUp(File journal) throws IOException {
+        if (journalOffset > journal.length()) {
+            // the journal was replaced; start over
+            clear();
+        }
+        journalOffset = SessionJournal.read(journal, journalOffset,
+                (type, payload) -> {
+                    if (type == SessionJournal.KEYSTROKE) {
+                        long position = payload.getLong();
+                        payload.get();
+                        boolean correct = payload.get() == 1;
+                        record(position, correct, payload.getLong());
+                    }
+                });
+    }
+
+    /**
+     * Saves the aggregates to a file
+     *
+     * @param file the analytics file
+     * @param journalOffset the journal offset that the aggregates are up to
+     * date with
+     * @throws IOException the standard IOException reasons
+     */
+    public synchronized void save(File file, long journalOffset)
+            throws IOException {
+        this.journalOffset = journalOffset;
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeLong(journalOffset);
+            out.writeInt(size);
+
+            ByteBuffer row = ByteBuffer.allocate(16 + 2 * TIME_BUCKETS);
+            for (int p = 0; p < size; p++) {
+                row.clear();
+                row.putInt(attempts[p]).putInt(errors[p]).putInt(timed[p])
+                        .putFloat(meanMillis[p]);
+                for (int b = 0; b < TIME_BUCKETS; b++) {
+                    row.putChar(histograms[p * TIME_BUCKETS + b]);
+                }
+                out.write(row.array());
+            }
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Reads aggregates written by save()
+     *
+     * @param in the stream to read from
+     * @throws IOException if the stream does not hold saved aggregates
+     */
+    private void readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not an analytics file");
+        }
+        journalOffset = in.readLong();
+        int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("bad size " + n);
+        }
+        ensureCapacity(n);
+        size = n;
+
+        byte[] bytes = new byte[16 + 2 * TIME_BUCKETS];
+        ByteBuffer row = ByteBuffer.wrap(bytes);
+        for (int p = 0; p < n; p++) {
+            in.readFully(bytes);
+            row.clear();
+            attempts[p] = row.getInt();
+            errors[p] = row.getInt();
+            timed[p] = row.getInt();
+            meanMillis[p] = row.getFloat();
+            for (int b = 0; b < TIME_BUCKETS; b++) {
+                histograms[p * TIME_BUCKETS + b] = row.getChar();
+            }
+        }
+    }
+
+    /**
+     * Forgets every aggregate
+     */
+    private void clear() {
+        capacity = 0;
+        size = 0;
+        attempts = new int[0];
+        errors = new int[0];
+        timed = new int[0];
+        meanMillis = new float[0];
+        histograms = new char[0];
+        journalOffset = 0;
+    }
+
+    /**
+     * Makes room for the given number of positions
+     *
+     * @param needed the number of positions to make room for
+     */
+    private void ensureCapacity(int needed) {
+        if (needed <= capacity) {
+            return;
+        }
+        int c = Math.max(needed, Math.max(1024, capacity * 2));
+        attempts = Arrays.copyOf(attempts, c);
+        errors = Arrays.copyOf(errors, c);
+        timed = Arrays.copyOf(timed, c);
+        meanMillis = Arrays.copyOf(meanMillis, c);
+        histograms = Arrays.copyOf(histograms, c * TIME_BUCKETS);
+        capacity = c;
+    }
+
+    /**
+     * Returns the response-time bucket of a duration
+     *
+     * @param nanos the duration, in nanoseconds
+     * @return the bucket, from 0 to TIME_BUCKETS - 1
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos <= FIRST_BUCKET_NANOS) {
+            return 0;
+        }
+        int b = (int) Math.ceil(2 * Math.log(nanos / FIRST_BUCKET_NANOS)
+                / Math.log(2));
+        return Math.min(TIME_BUCKETS - 1, b);
+    }
+
+    /**
+     * Returns the upper bound of a response-time bucket
+     *
+     * @param bucket the bucket
+     * @return the upper bound, in nanoseconds
+     */
+    private static double upperBoundOf(int bucket) {
+        return FIRST_BUCKET_NANOS * Math.pow(2, bucket / 2.0);
+    }
+}
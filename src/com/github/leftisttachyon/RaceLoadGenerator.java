@@ -0,0 +1,273 @@
+package com.github.leftisttachyon;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Puts load on a RaceServer: opens many connections from one thread, each
+ * typing the digits of Pi at a steady rate and occasionally missing one,
+ * then reports how many runs ended, how many standings arrived, and how
+ * long the server took to answer a wrong digit.
+ *
+ * @author Jed Wang
+ */
+public final class RaceLoadGenerator {
+
+    /**
+     * The digits the simulated racers type
+     */
+    private final DigitSource digits;
+
+    /**
+     * The address of the server
+     */
+    private final InetSocketAddress address;
+
+    /**
+     * The number of simulated racers
+     */
+    private final int clients;
+
+    /**
+     * The number of digits each racer types per second
+     */
+    private final double digitsPerSecond;
+
+    /**
+     * The chance that any one digit is typed wrong
+     */
+    private final double errorRate;
+
+    /**
+     * The time from sending a wrong digit to receiving its MISS
+     */
+    private final LatencyHistogram missLatency = new LatencyHistogram("miss");
+
+    /**
+     * The number of STANDINGS lines received
+     */
+    private long standings = 0;
+
+    /**
+     * The number of runs that ended
+     */
+    private long finished = 0;
+
+    /**
+     * The number of digits sent
+     */
+    private long sent = 0;
+
+    /**
+     * Creates a new RaceLoadGenerator.
+     *
+     * @param digits the digits the simulated racers type
+     * @param address the address of the server
+     * @param clients the number of simulated racers
+     * @param digitsPerSecond the number of digits each racer types per
+     * second
+     * @param errorRate the chance that any one digit is typed wrong
+     */
+    public RaceLoadGenerator(DigitSource digits, InetSocketAddress address,
+            int clients, double digitsPerSecond, double errorRate) {
+        this.digits = digits;
+        this.address = address;
+        this.clients = clients;
+        this.digitsPerSecond = digitsPerSecond;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Runs the load for a while
+     *
+     * @param seconds how long to run, in seconds
+     * @throws IOException the standard IOException reasons
+     */
+    public void run(double seconds) throws IOException {
+        Random random = new Random(314159);
+        long interval = (long) (1e9 / digitsPerSecond);
+        ByteBuffer in = ByteBuffer.allocate(1 << 16);
+
+        try (Selector selector = Selector.open()) {
+            Client[] all = new Client[clients];
+            for (int i = 0; i < clients; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                all[i] = new Client(channel);
+                // spread the racers out so they do not all type at once
+                all[i].nextSend = System.nanoTime()
+                        + (long) (random.nextDouble() * interval);
+                channel.register(selector, SelectionKey.OP_READ, all[i]);
+                write(channel, "racer" + i + "\n");
+            }
+
+            long end = System.nanoTime() + (long) (seconds * 1e9);
+            while (System.nanoTime() < end) {
+                selector.select(1);
+                Iterator<SelectionKey> keys = selector.selectedKeys()
+                        .iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    read((Client) key.attachment(), in);
+                }
+
+                long now = System.nanoTime();
+                for (Client c : all) {
+                    if (!c.racing || now < c.nextSend) {
+                        continue;
+                    }
+                    c.nextSend += interval;
+                    int d = digits.digitAt(c.position);
+                    if (random.nextDouble() < errorRate) {
+                        d = (d + 1) % 10;
+                        c.racing = false;
+                        c.missSent = now;
+                    } else {
+                        c.position++;
+                    }
+                    write(c.channel, String.valueOf(d));
+                    sent++;
+                }
+            }
+
+            for (Client c : all) {
+                c.channel.close();
+            }
+        }
+    }
+
+    /**
+     * Reads what the server sent to a client
+     *
+     * @param c the client
+     * @param in a buffer to read with
+     * @throws IOException the standard IOException reasons
+     */
+    private void read(Client c, ByteBuffer in) throws IOException {
+        in.clear();
+        if (c.channel.read(in) < 0) {
+            c.racing = false;
+            return;
+        }
+        in.flip();
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (b != '\n') {
+                if (c.line.length() < 64) {
+                    c.line.append((char) b);
+                }
+                continue;
+            }
+            String line = c.line.toString();
+            c.line.setLength(0);
+            if (line.startsWith("STANDINGS")) {
+                standings++;
+            } else if (line.startsWith("MISS")) {
+                finished++;
+                missLatency.record(System.nanoTime() - c.missSent);
+            } else if (line.startsWith("DONE")) {
+                finished++;
+                c.racing = false;
+            }
+        }
+    }
+
+    /**
+     * Writes a short message to a channel
+     *
+     * @param channel the channel
+     * @param message the message
+     * @throws IOException the standard IOException reasons
+     */
+    private static void write(SocketChannel channel, String message)
+            throws IOException {
+        ByteBuffer out = ByteBuffer.wrap(message.getBytes(
+                StandardCharsets.US_ASCII));
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return clients + " racers, " + sent + " digits sent, " + finished
+                + " runs ended, " + standings + " standings received\n"
+                + missLatency;
+    }
+
+    /**
+     * Runs a load against a RaceServer
+     *
+     * @param args host, port, racers, digits per second, error rate and
+     * seconds, all optional
+     * @throws IOException the standard IOException reasons
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1])
+                : RaceServer.DEFAULT_PORT;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        double rate = args.length > 3 ? Double.parseDouble(args[3]) : 5;
+        double errors = args.length > 4 ? Double.parseDouble(args[4]) : 0.01;
+        double seconds = args.length > 5 ? Double.parseDouble(args[5]) : 10;
+
+        RaceLoadGenerator load = new RaceLoadGenerator(Main.getPi(),
+                new InetSocketAddress(host, port), clients, rate, errors);
+        load.run(seconds);
+        System.out.println(load);
+    }
+
+    /**
+     * One simulated racer
+     */
+    private static final class Client {
+
+        /**
+         * The racer's connection
+         */
+        private final SocketChannel channel;
+
+        /**
+         * The line being received
+         */
+        private final StringBuilder line = new StringBuilder();
+
+        /**
+         * The number of digits typed right
+         */
+        private long position = 0;
+
+        /**
+         * Whether the racer is still typing
+         */
+        private boolean racing = true;
+
+        /**
+         * When the next digit is due, from System.nanoTime()
+         */
+        private long nextSend;
+
+        /**
+         * When the wrong digit was sent, from System.nanoTime()
+         */
+        private long missSent;
+
+        /**
+         * Creates a new Client.
+         *
+         * @param channel the racer's connection
+         */
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.github.leftisttachyon;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A server that hosts races: many people reciting from the first digit at
+ * once over TCP, against one shared, read-only DigitSource. Every
+ * connection is served by a single selector thread, so thousands of racers
+ * cost one thread and a few kilobytes each.
+ * <p>
+ * The protocol is line-based ASCII. The server greets each racer with
+ * {@code HELLO <digits>}; the racer sends its name on one line, then
+ * digits, with anything that is not a digit ignored. The first wrong digit
+ * ends the racer's run with {@code MISS <digit> <expected>}, and reciting
+ * every digit ends it with {@code DONE}. Once a second, every racer gets
+ * {@code STANDINGS <racers> <name>:<digits> ...} with the top ten, followed
+ * by {@code YOU <rank> <digits>}.
+ *
+ * @author Jed Wang
+ */
+public final class RaceServer implements AutoCloseable {
+
+    /**
+     * The port the server listens on by default
+     */
+    public static final int DEFAULT_PORT = 31415;
+
+    /**
+     * How often the standings are sent, in milliseconds
+     */
+    private static final long BROADCAST_MILLIS = 1000;
+
+    /**
+     * The number of racers listed in the standings
+     */
+    private static final int TOP = 10;
+
+    /**
+     * The longest name a racer can have
+     */
+    private static final int MAX_NAME = 24;
+
+    /**
+     * The size of each racer's queue of outgoing bytes
+     */
+    private static final int OUT_CAPACITY = 4096;
+
+    /**
+     * The digits being raced over
+     */
+    private final DigitSource digits;
+
+    /**
+     * The selector serving every connection
+     */
+    private final Selector selector;
+
+    /**
+     * The channel accepting connections
+     */
+    private final ServerSocketChannel server;
+
+    /**
+     * Every connected racer
+     */
+    private final List<Racer> racers = new ArrayList<>();
+
+    /**
+     * The buffer that every read goes through
+     */
+    private final ByteBuffer in = ByteBuffer.allocateDirect(1 << 16);
+
+    /**
+     * Whether the server should keep running
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Opens a RaceServer on a port. Call run() to serve.
+     *
+     * @param digits the digits to race over
+     * @param port the port to listen on, or 0 for any free port
+     * @throws IOException the standard IOException reasons
+     */
+    public RaceServer(DigitSource digits, int port) throws IOException {
+        this.digits = digits;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port), 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Returns the port the server listens on
+     *
+     * @return the port the server listens on
+     * @throws IOException the standard IOException reasons
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Serves connections until the server is closed
+     *
+     * @throws IOException if the selector fails
+     */
+    public void run() throws IOException {
+        long nextBroadcast = System.currentTimeMillis() + BROADCAST_MILLIS;
+        while (running) {
+            long wait = nextBroadcast - System.currentTimeMillis();
+            if (wait > 0) {
+                selector.select(wait);
+            } else {
+                selector.selectNow();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Racer racer = (Racer) key.attachment();
+                    if (key.isReadable()) {
+                        read(racer);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        racer.flush();
+                    }
+                } catch (IOException ex) {
+                    drop(key);
+                }
+            }
+
+            if (System.currentTimeMillis() >= nextBroadcast) {
+                broadcast();
+                nextBroadcast = System.currentTimeMillis() + BROADCAST_MILLIS;
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * Stops the server; run() returns shortly after
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Accepts every pending connection
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector,
+                    SelectionKey.OP_READ);
+            Racer racer = new Racer(key);
+            key.attach(racer);
+            racers.add(racer);
+            racer.send("HELLO " + digits.length() + "\n");
+        }
+    }
+
+    /**
+     * Reads what a racer sent and judges it
+     *
+     * @param racer the racer
+     * @throws IOException if the connection failed or was closed
+     */
+    private void read(Racer racer) throws IOException {
+        SocketChannel channel = (SocketChannel) racer.key.channel();
+        in.clear();
+        if (channel.read(in) < 0) {
+            throw new IOException("closed");
+        }
+        in.flip();
+
+        while (in.hasRemaining()) {
+            byte b = in.get();
+            if (racer.name == null) {
+                if (b == '\n') {
+                    racer.name = racer.nameBuilder.length() == 0 ? "anonymous"
+                            : racer.nameBuilder.toString();
+                    racer.nameBuilder = null;
+                } else if (b > ' ' && b < 127 && b != ':'
+                        && racer.nameBuilder.length() < MAX_NAME) {
+                    racer.nameBuilder.append((char) b);
+                }
+            } else if (racer.racing && b >= '0' && b <= '9') {
+                long p = racer.position;
+                int expected = digits.digitAt(p);
+                if (b - '0' != expected) {
+                    racer.racing = false;
+                    racer.send("MISS " + (p + 1) + " " + expected + "\n");
+                } else if (++racer.position == digits.length()) {
+                    racer.racing = false;
+                    racer.send("DONE\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the standings to every racer
+     */
+    private void broadcast() {
+        if (racers.isEmpty()) {
+            return;
+        }
+        Racer[] ranked = racers.toArray(new Racer[racers.size()]);
+        Arrays.sort(ranked, (a, b) -> Long.compare(b.position, a.position));
+
+        StringBuilder sb = new StringBuilder("STANDINGS ")
+                .append(ranked.length);
+        for (int i = 0; i < Math.min(TOP, ranked.length); i++) {
+            sb.append(' ').append(ranked[i].name == null ? "anonymous"
+                    : ranked[i].name).append(':').append(ranked[i].position);
+        }
+        sb.append('\n');
+        byte[] standings = sb.toString().getBytes(StandardCharsets.US_ASCII);
+
+        int rank = 0;
+        for (int i = 0; i < ranked.length; i++) {
+            if (i == 0 || ranked[i].position != ranked[i - 1].position) {
+                rank = i + 1;
+            }
+            Racer racer = ranked[i];
+            if (racer.out.remaining() < standings.length + 32) {
+                // a slow reader misses this update rather than holding up
+                // everyone else
+                continue;
+            }
+            racer.out.put(standings);
+            racer.send("YOU " + rank + " " + racer.position + "\n");
+        }
+    }
+
+    /**
+     * Closes a connection and forgets its racer
+     *
+     * @param key the key of the connection
+     */
+    private void drop(SelectionKey key) {
+        racers.remove((Racer) key.attachment());
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ex) {
+            // already gone
+        }
+    }
+
+    /**
+     * Starts a RaceServer over the digits of Pi
+     *
+     * @param args the port to listen on, optionally
+     * @throws IOException the standard IOException reasons
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        try (RaceServer server = new RaceServer(Main.getPi(), port)) {
+            System.out.println("Racing on port " + server.getPort());
+            server.run();
+        }
+    }
+
+    /**
+     * One connected racer
+     */
+    private final class Racer {
+
+        /**
+         * The key of the racer's connection
+         */
+        private final SelectionKey key;
+
+        /**
+         * The bytes waiting to be sent to the racer
+         */
+        private final ByteBuffer out = ByteBuffer.allocate(OUT_CAPACITY);
+
+        /**
+         * The name being received, or null once it has been
+         */
+        private StringBuilder nameBuilder = new StringBuilder();
+
+        /**
+         * The racer's name, or null until it has been received
+         */
+        private String name = null;
+
+        /**
+         * The number of digits the racer got right
+         */
+        private long position = 0;
+
+        /**
+         * Whether the racer's run is still going
+         */
+        private boolean racing = true;
+
+        /**
+         * Creates a new Racer.
+         *
+         * @param key the key of the racer's connection
+         */
+        Racer(SelectionKey key) {
+            this.key = key;
+        }
+
+        /**
+         * Queues a message and tries to send it
+         *
+         * @param message the message
+         */
+        void send(String message) {
+            byte[] bytes = message.getBytes(StandardCharsets.US_ASCII);
+            if (out.remaining() >= bytes.length) {
+                out.put(bytes);
+            }
+            try {
+                flush();
+            } catch (IOException ex) {
+                drop(key);
+            }
+        }
+
+        /**
+         * Sends as much of the queue as the connection takes, and waits for
+         * it to be writable if anything is left
+         *
+         * @throws IOException if the connection failed
+         */
+        void flush() throws IOException {
+            out.flip();
+            try {
+                ((SocketChannel) key.channel()).write(out);
+            } finally {
+                out.compact();
+            }
+            if (key.isValid()) {
+                key.interestOps(out.position() > 0
+                        ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                        : SelectionKey.OP_READ);
+            }
+        }
+    }
+}
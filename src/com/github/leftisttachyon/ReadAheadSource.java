@@ -0,0 +1,274 @@
+package com.github.leftisttachyon;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A DigitSource that keeps the digits just ahead of a cursor in a small,
+ * fixed pool of off-heap pages, filled in the background. The game moves
+ * the cursor as it goes, so by the time a digit is asked for it is usually
+ * already in a page, and reading it never waits on the disk or on
+ * computing it.
+ * <p>
+ * The pages are a ring: page p lives in slot p mod the number of slots, so
+ * the window of pages from the cursor on fills every slot once, and moving
+ * the cursor forward overwrites the pages behind it. Reads do not lock:
+ * each slot has a StampedLock that the prefetcher write-locks only while
+ * it copies a page in, and a read of the slot is optimistic, counting only
+ * if the lock validates afterwards. The validation fences the read, so a
+ * digit from a page being overwritten is never taken for the page that
+ * was asked for. Anything else is read from the source underneath and
+ * counted as a miss.
+ *
+ * @author Jed Wang
+ */
+public final class ReadAheadSource implements DigitSource {
+
+    /**
+     * The source pages are filled from
+     */
+    private final DigitSource source;
+
+    /**
+     * The number of digits in the source
+     */
+    private final long length;
+
+    /**
+     * The number of digits in a page
+     */
+    private final int pageSize;
+
+    /**
+     * The number of slots, and so of pages read ahead
+     */
+    private final int slots;
+
+    /**
+     * The pages, slot after slot
+     */
+    private final ByteBuffer pool;
+
+    /**
+     * The page in each slot, or -1 if there is none; written only under the
+     * slot's write lock
+     */
+    private final long[] tags;
+
+    /**
+     * The lock of each slot
+     */
+    private final StampedLock[] locks;
+
+    /**
+     * Fills pages
+     */
+    private final ExecutorService prefetcher;
+
+    /**
+     * Whether a fill of the window is waiting to run
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * The page the cursor is in
+     */
+    private volatile long cursorPage = -1;
+
+    /**
+     * The number of digits read from a page
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * The number of digits read from the source because their page was not
+     * there
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * The number of pages filled
+     */
+    private final LongAdder prefetches = new LongAdder();
+
+    /**
+     * How long filling each page takes, or null to not record it; only the
+     * prefetcher records into it
+     */
+    private final LatencyHistogram prefetchTime;
+
+    /**
+     * Creates a new ReadAheadSource. Nothing is read ahead until the cursor
+     * is first moved.
+     *
+     * @param source the source to read ahead of
+     * @param pageSize the number of digits in a page
+     * @param slots the number of pages to read ahead
+     * @param prefetchTime where to record how long filling each page takes,
+     * or null
+     */
+    public ReadAheadSource(DigitSource source, int pageSize, int slots,
+            LatencyHistogram prefetchTime) {
+        if (pageSize <= 0 || slots <= 0) {
+            throw new IllegalArgumentException("no pages");
+        }
+        this.source = source;
+        this.pageSize = pageSize;
+        this.slots = slots;
+        this.prefetchTime = prefetchTime;
+        length = source.length();
+        pool = ByteBuffer.allocateDirect(Math.multiplyExact(pageSize, slots));
+        tags = new long[slots];
+        locks = new StampedLock[slots];
+        for (int i = 0; i < slots; i++) {
+            tags[i] = -1;
+            locks[i] = new StampedLock();
+        }
+        prefetcher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "Digit prefetcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Moves the cursor, and reads ahead of it in the background if it moved
+     * to another page
+     *
+     * @param position the zero-based position of the next digit to be read
+     */
+    public void moveTo(long position) {
+        long page = position / pageSize;
+        if (page != cursorPage && !prefetcher.isShutdown()) {
+            cursorPage = page;
+            if (!scheduled.getAndSet(true)) {
+                prefetcher.execute(this::fillWindow);
+            }
+        }
+    }
+
+    /**
+     * Fills the pages of the window that are not there yet, nearest first,
+     * starting over if the cursor moves
+     */
+    private void fillWindow() {
+        scheduled.set(false);
+        long first = cursorPage;
+        for (long page = first; page < first + slots
+                && page * pageSize < length; page++) {
+            if (cursorPage != first) {
+                // moveTo() has queued another fill for the new window
+                return;
+            }
+            int slot = (int) (page % slots);
+            if (tags[slot] != page) {
+                fill(page, slot);
+            }
+        }
+    }
+
+    /**
+     * Reads a page into a slot
+     *
+     * @param page the number of the page
+     * @param slot the slot to put it in
+     */
+    private void fill(long page, int slot) {
+        long start = System.nanoTime();
+        long from = page * pageSize;
+        byte[] digits = source.copyRange(from,
+                (int) Math.min(pageSize, length - from));
+        ByteBuffer dst = pool.duplicate();
+        dst.position(slot * pageSize);
+        StampedLock lock = locks[slot];
+        long stamp = lock.writeLock();
+        try {
+            dst.put(digits);
+            tags[slot] = page;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        prefetches.increment();
+        if (prefetchTime != null) {
+            prefetchTime.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int radix() {
+        return source.radix();
+    }
+
+    @Override
+    public int digitAt(long index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index
+                    + " out of [0, " + length + ")");
+        }
+        long page = index / pageSize;
+        int slot = (int) (page % slots);
+        StampedLock lock = locks[slot];
+        long stamp = lock.tryOptimisticRead();
+        if (tags[slot] == page) {
+            int digit = pool.get(slot * pageSize
+                    + (int) (index - page * pageSize));
+            if (lock.validate(stamp)) {
+                hits.increment();
+                return digit;
+            }
+        }
+        misses.increment();
+        return source.digitAt(index);
+    }
+
+    /**
+     * Returns the number of digits read from a page
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of digits read from the source because their page
+     * was not there
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of pages filled
+     *
+     * @return the number of prefetches
+     */
+    public long getPrefetches() {
+        return prefetches.sum();
+    }
+
+    /**
+     * Stops reading ahead. Digits can still be read, from the pages already
+     * filled or from the source.
+     */
+    public void close() {
+        prefetcher.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "read-ahead: " + getHits() + " hits, " + getMisses()
+                + " misses, " + getPrefetches() + " pages prefetched";
+    }
+}
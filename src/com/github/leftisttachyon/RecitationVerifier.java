@@ -0,0 +1,590 @@
+package com.github.leftisttachyon;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks a whole recitation against the digits of a DigitSource in one call
+ * and reports every mistake. Matching runs are skipped eight digits at a
+ * time; wherever they stop matching, a banded edit-distance alignment of
+ * the next few dozen digits decides whether a digit was mistyped, skipped
+ * or doubled, so one slip does not make everything after it wrong.
+ *
+ * @author Jed Wang
+ */
+public final class RecitationVerifier {
+
+    /**
+     * The most digits that the recitation and the source can drift apart
+     * inside one aligned region
+     */
+    private static final int BAND = 16;
+
+    /**
+     * The number of recited digits aligned at a time
+     */
+    private static final int WINDOW = 96;
+
+    /**
+     * The number of matching digits after a mistake that count as being
+     * back in step
+     */
+    private static final int SYNC = 8;
+
+    /**
+     * The cost of an alignment that leaves the band
+     */
+    private static final int OUTSIDE = Integer.MAX_VALUE / 2;
+
+    /**
+     * The recited digit values
+     */
+    private final byte[] recited;
+
+    /**
+     * The source the expected digits are read from
+     */
+    private final DigitSource source;
+
+    /**
+     * The expected digit values read so far, starting at offset
+     */
+    private byte[] expected;
+
+    /**
+     * The recited digits, for comparing eight at a time
+     */
+    private final ByteBuffer recitedLongs;
+
+    /**
+     * The expected digits, for comparing eight at a time
+     */
+    private ByteBuffer expectedLongs;
+
+    /**
+     * The position in the source of the first expected digit
+     */
+    private final long offset;
+
+    /**
+     * The number of digits in the source from the offset on, or
+     * Integer.MAX_VALUE if there are more than that
+     */
+    private final int available;
+
+    /**
+     * The costs of the current alignment, one row per recited digit and one
+     * column per diagonal in the band
+     */
+    private final int[][] cost = new int[WINDOW + 1][2 * BAND + 1];
+
+    /**
+     * The mistakes found so far
+     */
+    private final List<Mistake> mistakes = new ArrayList<>();
+
+    /**
+     * The number of recited digits that matched
+     */
+    private long correct = 0;
+
+    /**
+     * Creates a new RecitationVerifier.
+     *
+     * @param source the digits to check against
+     * @param offset the position in the source of the first expected digit
+     * @param recited the recited digit values
+     */
+    private RecitationVerifier(DigitSource source, long offset,
+            byte[] recited) {
+        this.source = source;
+        this.offset = offset;
+        this.recited = recited;
+        available = (int) Math.min(Integer.MAX_VALUE,
+                source.length() - offset);
+        recitedLongs = ByteBuffer.wrap(recited);
+        expected = new byte[0];
+        expectedLongs = ByteBuffer.wrap(expected);
+        read((long) recited.length + BAND);
+    }
+
+    /**
+     * Checks a recitation against a source of digits
+     *
+     * @param source the digits to check against
+     * @param offset the zero-based position the recitation starts at
+     * @param recited the recited digit values (0-9)
+     * @return every mistake in the recitation
+     * @throws IndexOutOfBoundsException if the offset is out of range
+     */
+    public static Result verify(DigitSource source, long offset,
+            byte[] recited) {
+        if (offset < 0 || offset > source.length()) {
+            throw new IndexOutOfBoundsException("offset " + offset
+                    + " out of [0, " + source.length() + "]");
+        }
+        RecitationVerifier v = new RecitationVerifier(source, offset, recited);
+        v.run();
+        return new Result(recited.length, v.correct,
+                Collections.unmodifiableList(v.mistakes));
+    }
+
+    /**
+     * Checks a recitation against a source of digits, ignoring anything in
+     * it that is not a digit
+     *
+     * @param source the digits to check against
+     * @param offset the zero-based position the recitation starts at
+     * @param recited the recited digits, as text
+     * @return every mistake in the recitation
+     * @throws IndexOutOfBoundsException if the offset is out of range
+     */
+    public static Result verify(DigitSource source, long offset,
+            CharSequence recited) {
+        return verify(source, offset, digitsOf(recited, source.radix()));
+    }
+
+    /**
+     * Returns the values of the digits in some text, ignoring anything that
+     * is not a digit
+     *
+     * @param text the text
+     * @return the digit values
+     */
+    public static byte[] digitsOf(CharSequence text) {
+        byte[] digits = new byte[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits[n++] = (byte) (c - '0');
+            }
+        }
+        return n == digits.length ? digits : Arrays.copyOf(digits, n);
+    }
+
+    /**
+     * Returns the values of the digits of a base in some text, ignoring
+     * anything that is not one. Hex digits may be upper or lower case.
+     *
+     * @param text the text
+     * @param radix the base of the digits, 10 or 16
+     * @return the digit values
+     */
+    public static byte[] digitsOf(CharSequence text, int radix) {
+        if (radix == 10) {
+            return digitsOf(text);
+        }
+        byte[] digits = new byte[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int d = Character.digit(text.charAt(i), radix);
+            if (d >= 0) {
+                digits[n++] = (byte) d;
+            }
+        }
+        return n == digits.length ? digits : Arrays.copyOf(digits, n);
+    }
+
+    /**
+     * Makes sure the expected digits are read up to some point, reading at
+     * least half as many again as there are when more are needed, so that
+     * the source is read in a few large ranges even when the recitation
+     * keeps skipping ahead of it
+     *
+     * @param end how many expected digits are needed; fewer are read if the
+     * source runs out first
+     */
+    private void read(long end) {
+        int length = expected.length;
+        if (end <= length || length == available) {
+            return;
+        }
+        int size = (int) Math.min(available,
+                Math.max(end, length + (long) length / 2));
+        byte[] more = Arrays.copyOf(expected, size);
+        byte[] digits = source.copyRange(offset + length, size - length);
+        System.arraycopy(digits, 0, more, length, digits.length);
+        expected = more;
+        expectedLongs = ByteBuffer.wrap(more);
+    }
+
+    /**
+     * Walks the whole recitation, alternating between skipping matching
+     * runs and aligning the regions where they stop. The expected digits
+     * are read further whenever skipped digits have moved the recitation
+     * ahead of them, so that the band always has room to the end.
+     */
+    private void run() {
+        int n = recited.length;
+        int i = 0, j = 0;
+        while (i < n) {
+            read((long) j + n - i + BAND);
+            int m = expected.length;
+            int run = mismatch(i, j, Math.min(n - i, m - j));
+            correct += run;
+            i += run;
+            j += run;
+            if (i >= n) {
+                break;
+            }
+            if (j >= m) {
+                // the source ran out; everything else is extra
+                for (; i < n; i++) {
+                    mistakes.add(new Mistake(Kind.EXTRA, i, offset + j, -1,
+                            recited[i]));
+                }
+                break;
+            }
+
+            long next = align(i, j);
+            i = (int) (next >>> 32);
+            j = (int) next;
+        }
+    }
+
+    /**
+     * Returns how many digits match from a pair of positions onwards,
+     * comparing eight digits at a time
+     *
+     * @param i the position in the recitation
+     * @param j the position in the expected digits
+     * @param length the most digits to compare
+     * @return the number of matching digits
+     */
+    private int mismatch(int i, int j, int length) {
+        int k = 0;
+        for (; k + 8 <= length; k += 8) {
+            if (recitedLongs.getLong(i + k) != expectedLongs.getLong(j + k)) {
+                break;
+            }
+        }
+        while (k < length && recited[i + k] == expected[j + k]) {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * Aligns the digits from a pair of positions where they differ, records
+     * the mistakes up to the point where the two are back in step, and
+     * returns that point
+     *
+     * @param i the position in the recitation
+     * @param j the position in the expected digits
+     * @return the next position in the recitation in the upper 32 bits and
+     * the next position in the expected digits in the lower 32 bits
+     */
+    private long align(int i, int j) {
+        int w = Math.min(WINDOW, recited.length - i);
+        int h = Math.min(w + BAND, expected.length - j);
+
+        for (int x = 0; x <= w; x++) {
+            for (int d = 0; d <= 2 * BAND; d++) {
+                int y = x + d - BAND;
+                if (y < 0 || y > h) {
+                    cost[x][d] = OUTSIDE;
+                    continue;
+                }
+                int best = x == 0 && y == 0 ? 0 : OUTSIDE;
+                if (x > 0 && y > 0) {
+                    best = cost[x - 1][d]
+                            + (recited[i + x - 1] == expected[j + y - 1] ? 0 : 1);
+                }
+                if (x > 0 && d < 2 * BAND) {
+                    best = Math.min(best, cost[x - 1][d + 1] + 1);
+                }
+                if (d > 0) {
+                    best = Math.min(best, cost[x][d - 1] + 1);
+                }
+                cost[x][d] = Math.min(best, OUTSIDE);
+            }
+        }
+
+        // the end of the expected digits is free: pi goes on
+        int endD = 0;
+        for (int d = 1; d <= 2 * BAND; d++) {
+            if (cost[w][d] < cost[w][endD]) {
+                endD = d;
+            }
+        }
+
+        // trace back from the end: 0 match, 1 wrong, 2 extra, 3 missing
+        byte[] ops = new byte[w + h];
+        int count = 0;
+        int x = w, d = endD;
+        while (x > 0 || x + d - BAND > 0) {
+            int y = x + d - BAND;
+            int c = cost[x][d];
+            boolean same = x > 0 && y > 0
+                    && recited[i + x - 1] == expected[j + y - 1];
+            if (x > 0 && y > 0 && c == cost[x - 1][d] + (same ? 0 : 1)) {
+                ops[count++] = (byte) (same ? 0 : 1);
+                x--;
+            } else if (x > 0 && d < 2 * BAND && c == cost[x - 1][d + 1] + 1) {
+                ops[count++] = 2;
+                x--;
+                d++;
+            } else {
+                ops[count++] = 3;
+                d--;
+            }
+        }
+
+        // replay forwards, settling everything up to the last mistake
+        // before the two are back in step
+        List<Mistake> found = new ArrayList<>();
+        int ri = i, ej = j, run = 0, matches = 0;
+        int keptI = i, keptJ = j, kept = 0, keptMatches = 0;
+        for (int k = count - 1; k >= 0 && run < SYNC; k--) {
+            switch (ops[k]) {
+                case 0:
+                    ri++;
+                    ej++;
+                    run++;
+                    matches++;
+                    continue;
+                case 1:
+                    found.add(new Mistake(Kind.WRONG, ri, offset + ej,
+                            expected[ej], recited[ri]));
+                    ri++;
+                    ej++;
+                    break;
+                case 2:
+                    found.add(new Mistake(Kind.EXTRA, ri, offset + ej, -1,
+                            recited[ri]));
+                    ri++;
+                    break;
+                default:
+                    found.add(new Mistake(Kind.MISSING, ri, offset + ej,
+                            expected[ej], -1));
+                    ej++;
+                    break;
+            }
+            run = 0;
+            kept = found.size();
+            keptI = ri;
+            keptJ = ej;
+            keptMatches = matches;
+        }
+        if (run < SYNC) {
+            // never back in step inside the window: settle all of it
+            kept = found.size();
+            keptI = ri;
+            keptJ = ej;
+            keptMatches = matches;
+        }
+
+        correct += keptMatches;
+        mistakes.addAll(found.subList(0, kept));
+        return (long) keptI << 32 | keptJ;
+    }
+
+    /**
+     * The kinds of mistakes
+     */
+    public enum Kind {
+        /**
+         * A digit was recited in place of another
+         */
+        WRONG,
+        /**
+         * A digit was recited that should not have been, as when a digit is
+         * doubled
+         */
+        EXTRA,
+        /**
+         * A digit was skipped
+         */
+        MISSING
+    }
+
+    /**
+     * One mistake in a recitation
+     */
+    public static final class Mistake {
+
+        /**
+         * The kind of mistake
+         */
+        private final Kind kind;
+
+        /**
+         * The index in the recitation where the mistake is
+         */
+        private final int recitedIndex;
+
+        /**
+         * The zero-based position in the source where the mistake is
+         */
+        private final long position;
+
+        /**
+         * The digit that was expected, or -1 for an extra digit
+         */
+        private final int expected;
+
+        /**
+         * The digit that was recited, or -1 for a missing digit
+         */
+        private final int recited;
+
+        /**
+         * Creates a new Mistake.
+         *
+         * @param kind the kind of mistake
+         * @param recitedIndex the index in the recitation
+         * @param position the zero-based position in the source
+         * @param expected the digit that was expected, or -1
+         * @param recited the digit that was recited, or -1
+         */
+        Mistake(Kind kind, int recitedIndex, long position, int expected,
+                int recited) {
+            this.kind = kind;
+            this.recitedIndex = recitedIndex;
+            this.position = position;
+            this.expected = expected;
+            this.recited = recited;
+        }
+
+        /**
+         * Returns the kind of mistake
+         *
+         * @return the kind of mistake
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Returns the index in the recitation where the mistake is
+         *
+         * @return the index in the recitation
+         */
+        public int getRecitedIndex() {
+            return recitedIndex;
+        }
+
+        /**
+         * Returns the zero-based position in the source where the mistake
+         * is
+         *
+         * @return the position in the source
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Returns the digit that was expected
+         *
+         * @return the digit that was expected, or -1 for an extra digit
+         */
+        public int getExpected() {
+            return expected;
+        }
+
+        /**
+         * Returns the digit that was recited
+         *
+         * @return the digit that was recited, or -1 for a missing digit
+         */
+        public int getRecited() {
+            return recited;
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case WRONG:
+                    return "digit " + (position + 1) + ": recited " + recited
+                            + ", should be " + expected;
+                case EXTRA:
+                    return "before digit " + (position + 1) + ": extra "
+                            + recited;
+                default:
+                    return "digit " + (position + 1) + ": skipped " + expected;
+            }
+        }
+    }
+
+    /**
+     * The outcome of checking a recitation
+     */
+    public static final class Result {
+
+        /**
+         * The number of recited digits
+         */
+        private final int length;
+
+        /**
+         * The number of recited digits that matched
+         */
+        private final long correct;
+
+        /**
+         * Every mistake, in order
+         */
+        private final List<Mistake> mistakes;
+
+        /**
+         * Creates a new Result.
+         *
+         * @param length the number of recited digits
+         * @param correct the number of recited digits that matched
+         * @param mistakes every mistake, in order
+         */
+        Result(int length, long correct, List<Mistake> mistakes) {
+            this.length = length;
+            this.correct = correct;
+            this.mistakes = mistakes;
+        }
+
+        /**
+         * Returns the number of recited digits
+         *
+         * @return the number of recited digits
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the number of recited digits that matched
+         *
+         * @return the number of recited digits that matched
+         */
+        public long getCorrect() {
+            return correct;
+        }
+
+        /**
+         * Returns every mistake, in order
+         *
+         * @return every mistake, in order
+         */
+        public List<Mistake> getMistakes() {
+            return mistakes;
+        }
+
+        /**
+         * Returns whether the recitation had no mistakes
+         *
+         * @return whether the recitation had no mistakes
+         */
+        public boolean isPerfect() {
+            return mistakes.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return correct + " of " + length + " digits correct, "
+                    + mistakes.size()
+                    + (mistakes.size() == 1 ? " mistake" : " mistakes");
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.github.leftisttachyon;
+
+import java.awt.EventQueue;
+import java.awt.event.KeyEvent;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a SessionRecording back into a DrawPanel, through the same path as
+ * live typing: each key is handed to the panel on the EDT at the moment it
+ * was typed, scaled by the playback speed. When the recording ends, a Pause
+ * key is sent so that whoever is reading the panel's presses knows. The
+ * speed can be changed, the playback paused and moved at any time.
+ *
+ * @author Jed Wang
+ */
+public final class ReplayEngine {
+
+    /**
+     * The slowest playback speed
+     */
+    public static final double MIN_SPEED = 1;
+
+    /**
+     * The fastest playback speed
+     */
+    public static final double MAX_SPEED = 100;
+
+    /**
+     * The recording being played
+     */
+    private final SessionRecording recording;
+
+    /**
+     * The panel keys are played into
+     */
+    private final DrawPanel panel;
+
+    /**
+     * The playback speed
+     */
+    private volatile double speed = 1;
+
+    /**
+     * Whether the playback is paused
+     */
+    private volatile boolean paused = false;
+
+    /**
+     * The time to move the playback to, or -1 if no move is pending
+     */
+    private volatile long seekTo = -1;
+
+    /**
+     * The position in the digits after the last key played
+     */
+    private volatile long position;
+
+    /**
+     * The time of the last key played, in milliseconds since the first
+     */
+    private volatile long time = 0;
+
+    /**
+     * Whether the playback should keep going
+     */
+    private volatile boolean running = false;
+
+    /**
+     * The thread playing the keys
+     */
+    private Thread thread = null;
+
+    /**
+     * Creates a new ReplayEngine.
+     *
+     * @param recording the recording to play
+     * @param panel the panel to play keys into
+     */
+    public ReplayEngine(SessionRecording recording, DrawPanel panel) {
+        this.recording = recording;
+        this.panel = panel;
+        position = recording.getStartPosition();
+    }
+
+    /**
+     * Starts playing
+     *
+     * @param fromMillis the time to start at, in milliseconds since the
+     * first key
+     */
+    public synchronized void start(long fromMillis) {
+        if (thread != null) {
+            throw new IllegalStateException("already started");
+        }
+        running = true;
+        thread = new Thread(() -> play(fromMillis), "Replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops playing
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Sets the playback speed
+     *
+     * @param speed the speed, from MIN_SPEED to MAX_SPEED times as fast as
+     * it was typed
+     */
+    public void setSpeed(double speed) {
+        this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+        wake();
+    }
+
+    /**
+     * Returns the playback speed
+     *
+     * @return the playback speed
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Pauses or resumes the playback
+     *
+     * @param paused whether to pause
+     */
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+        wake();
+    }
+
+    /**
+     * Returns whether the playback is paused
+     *
+     * @return whether the playback is paused
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Moves the playback to a time
+     *
+     * @param millis the time, in milliseconds since the first key
+     */
+    public void seek(long millis) {
+        seekTo = Math.max(0, millis);
+        wake();
+    }
+
+    /**
+     * Returns the position in the digits after the last key played
+     *
+     * @return the position in the digits
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the time of the last key played
+     *
+     * @return the time, in milliseconds since the first key
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Wakes the playback thread so it sees a new speed, pause or seek
+     */
+    private synchronized void wake() {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Plays keys until the recording ends or the playback is stopped
+     *
+     * @param fromMillis the time to start at
+     */
+    private void play(long fromMillis) {
+        SessionRecording.Cursor cursor = recording.seek(fromMillis);
+        long anchorMillis = fromMillis;
+        long anchorNanos = System.nanoTime();
+        double anchorSpeed = speed;
+
+        while (running && cursor.hasNext()) {
+            long s = seekTo;
+            if (s >= 0) {
+                seekTo = -1;
+                cursor = recording.seek(s);
+                position = cursor.getPosition();
+                time = s;
+                anchorMillis = s;
+                anchorNanos = System.nanoTime();
+                continue;
+            }
+            // while paused, the recording's clock runs at a speed of 0
+            double current = paused ? 0 : speed;
+            if (current != anchorSpeed) {
+                long now = System.nanoTime();
+                anchorMillis += (long) ((now - anchorNanos) / 1e6 * anchorSpeed);
+                anchorNanos = now;
+                anchorSpeed = current;
+            }
+            if (anchorSpeed == 0) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            long wait = anchorNanos + (long) ((cursor.peekTime() - anchorMillis)
+                    * 1e6 / anchorSpeed) - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+
+            cursor.next();
+            char digit = Character.toUpperCase(Character.forDigit(
+                    cursor.getDigit(), 16));
+            position = cursor.getPosition();
+            time = cursor.getTime();
+            EventQueue.invokeLater(() -> panel.digitPressed(digit,
+                    System.nanoTime()));
+        }
+
+        if (running) {
+            EventQueue.invokeLater(() -> panel.keyPressed(KeyEvent.VK_PAUSE,
+                    System.nanoTime()));
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only binary journal of practice sessions and every keystroke in
+ * them. Records are queued without blocking by the game thread and written
+ * in batches by a background thread, which forces them to disk
+ * periodically. Every record carries a CRC, so a journal cut off by a crash
+ * is truncated back to its last whole record when it is opened again, and
+ * the PB is recovered from what survived. If a write fails, the writer stops
+ * for good: the failure is handed to the handler given when the journal was
+ * opened, and every record after it is dropped instead of being queued.
+ *
+ * @author Jed Wang
+ */
+public final class SessionJournal implements AutoCloseable {
+
+    /**
+     * The magic number at the start of every journal ("PIJ1")
+     */
+    public static final int MAGIC = 0x50494A31;
+
+    /**
+     * Record type: a session started
+     */
+    public static final byte SESSION_START = 1;
+
+    /**
+     * Record type: a key was judged
+     */
+    public static final byte KEYSTROKE = 2;
+
+    /**
+     * Record type: a session ended
+     */
+    public static final byte SESSION_END = 3;
+
+    /**
+     * Record type: the PB changed
+     */
+    public static final byte PERSONAL_BEST = 4;
+
+    /**
+     * The size of the file header: the magic number
+     */
+    private static final int HEADER_SIZE = 4;
+
+    /**
+     * How long the writer waits between batches, in nanoseconds
+     */
+    private static final long BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /**
+     * How often written records are forced to disk, in nanoseconds
+     */
+    private static final long FORCE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * The number of bytes of a record before its payload: type and length
+     */
+    private static final int RECORD_HEADER = 2;
+
+    /**
+     * The number of bytes after the payload of a record: its CRC
+     */
+    private static final int RECORD_TRAILER = 4;
+
+    /**
+     * The channel that records are appended to
+     */
+    private final FileChannel channel;
+
+    /**
+     * Records waiting to be written, each without its CRC
+     */
+    private final ConcurrentLinkedQueue<byte[]> pending
+            = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The thread that writes records
+     */
+    private final Thread writer;
+
+    /**
+     * The PB recovered from the journal when it was opened
+     */
+    private final int recoveredPB;
+
+    /**
+     * Called on the writer thread if writing fails, or null
+     */
+    private final Consumer<IOException> failureHandler;
+
+    /**
+     * What made the writer stop, or null while it is writing
+     */
+    private volatile IOException failure = null;
+
+    /**
+     * Whether the writer should keep running
+     */
+    private volatile boolean running = true;
+
+    /**
+     * The offset just after the last record that was written
+     */
+    private volatile long committed = 0;
+
+    /**
+     * Whether the journal has been closed
+     */
+    private boolean closed = false;
+
+    /**
+     * Opens a journal, creating it if needed, and starts its writer. A
+     * shutdown hook flushes it when the JVM exits.
+     *
+     * @param file the journal file
+     * @throws IOException if the file is not a journal, or the standard
+     * IOException reasons
+     */
+    public SessionJournal(File file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * Opens a journal, creating it if needed, and starts its writer. A
+     * shutdown hook flushes it when the JVM exits.
+     *
+     * @param file the journal file
+     * @param failureHandler called on the writer thread if writing fails,
+     * or null
+     * @throws IOException if the file is not a journal, or the standard
+     * IOException reasons
+     */
+    public SessionJournal(File file, Consumer<IOException> failureHandler)
+            throws IOException {
+        this.failureHandler = failureHandler;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            recoveredPB = recover(file);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+
+        writer = new Thread(this::writeLoop, "Session journal writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close,
+                "Session journal flush"));
+    }
+
+    /**
+     * Returns the PB recovered from the journal when it was opened: the best
+     * of every recorded PB and every session that memorized from the start
+     *
+     * @return the recovered PB
+     */
+    public int getRecoveredPB() {
+        return recoveredPB;
+    }
+
+    /**
+     * Records that a session started
+     *
+     * @param exploring whether the session explores instead of memorizing
+     * @param start the position the session starts at
+     */
+    public void sessionStarted(boolean exploring, long start) {
+        enqueue(record(SESSION_START, 17)
+                .putLong(System.currentTimeMillis())
+                .put((byte) (exploring ? 1 : 0))
+                .putLong(start));
+    }
+
+    /**
+     * Records a judged keystroke
+     *
+     * @param position the position of the digit that was asked for
+     * @param typed the key that was typed
+     * @param correct whether the key was right
+     * @param delta the nanoseconds since the previous key of the session, or
+     * 0 for its first key
+     */
+    public void keystroke(long position, int typed, boolean correct,
+            long delta) {
+        enqueue(record(KEYSTROKE, 18)
+                .putLong(position)
+                .put((byte) typed)
+                .put((byte) (correct ? 1 : 0))
+                .putLong(delta));
+    }
+
+    /**
+     * Records that a session ended
+     *
+     * @param count the number of digits the session got through
+     */
+    public void sessionEnded(long count) {
+        enqueue(record(SESSION_END, 8).putLong(count));
+    }
+
+    /**
+     * Records a new PB
+     *
+     * @param pb the new PB
+     */
+    public void personalBest(int pb) {
+        enqueue(record(PERSONAL_BEST, 4).putInt(pb));
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Returns whether writing the journal failed, so that nothing more is
+     * recorded in it
+     *
+     * @return whether the writer stopped because of a failure
+     */
+    public boolean hasFailed() {
+        return failure != null;
+    }
+
+    /**
+     * Returns the offset just after the last record that was written. Once
+     * the journal is closed, this is its length.
+     *
+     * @return the offset just after the last record that was written
+     */
+    public long getCommittedOffset() {
+        return committed;
+    }
+
+    /**
+     * Writes every queued record, forces the journal to disk and stops the
+     * writer. If another thread is already closing the journal, waits for it
+     * to finish.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        running = false;
+
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts a record
+     *
+     * @param type the type of the record
+     * @param length the length of its payload
+     * @return a buffer with the type and length written, and room for the
+     * payload
+     */
+    private static ByteBuffer record(byte type, int length) {
+        return ByteBuffer.allocate(RECORD_HEADER + length)
+                .put(type).put((byte) length);
+    }
+
+    /**
+     * Queues a record to be written, unless writing has failed
+     *
+     * @param record the record, with its payload written
+     */
+    private void enqueue(ByteBuffer record) {
+        if (failure == null) {
+            pending.add(record.array());
+        }
+    }
+
+    /**
+     * Writes queued records in batches until the journal is closed or a
+     * write fails
+     */
+    private void writeLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+        CRC32 crc = new CRC32();
+        long lastForce = System.nanoTime();
+        boolean dirty = false;
+
+        while (true) {
+            boolean stopping = !running;
+            byte[] r;
+            while (buffer.remaining() >= 255 + RECORD_HEADER + RECORD_TRAILER
+                    && (r = pending.poll()) != null) {
+                crc.reset();
+                crc.update(r, 0, r.length);
+                buffer.put(r).putInt((int) crc.getValue());
+            }
+
+            try {
+                if (buffer.position() > 0) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    buffer.clear();
+                    committed = channel.position();
+                    dirty = true;
+                }
+                long now = System.nanoTime();
+                if (dirty && (stopping || now - lastForce >= FORCE_NANOS)) {
+                    channel.force(false);
+                    lastForce = now;
+                    dirty = false;
+                }
+            } catch (IOException ex) {
+                failure = ex;
+                pending.clear();
+                if (failureHandler == null) {
+                    ex.printStackTrace();
+                } else {
+                    failureHandler.accept(ex);
+                }
+                return;
+            }
+
+            if (stopping && pending.isEmpty()) {
+                return;
+            }
+            if (pending.isEmpty()) {
+                LockSupport.parkNanos(BATCH_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Reads the journal from the start, truncating it after its last whole
+     * record, and leaves the channel positioned at the end. A file that is
+     * not a journal is left as it is.
+     *
+     * @param file the journal file
+     * @return the PB recovered from the journal
+     * @throws IOException if the file is not a journal
+     */
+    private int recover(File file) throws IOException {
+        if (channel.size() > 0) {
+            ByteBuffer magic = ByteBuffer.allocate(HEADER_SIZE);
+            while (magic.hasRemaining()
+                    && channel.read(magic, magic.position()) >= 0) {
+            }
+            magic.flip();
+            if (magic.remaining() == HEADER_SIZE && magic.getInt() != MAGIC) {
+                throw new IOException(file + " is not a session journal");
+            }
+        }
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer magic = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+            magic.flip();
+            channel.truncate(0);
+            channel.write(magic, 0);
+            channel.position(HEADER_SIZE);
+            committed = HEADER_SIZE;
+            return 0;
+        }
+
+        long[] best = {0};
+        boolean[] memorizing = {false};
+        long good = scan(channel, HEADER_SIZE, (type, payload) -> {
+            switch (type) {
+                case SESSION_START:
+                    payload.getLong();
+                    memorizing[0] = payload.get() == 0
+                            && payload.getLong() == 0;
+                    break;
+                case KEYSTROKE:
+                    long position = payload.getLong();
+                    payload.get();
+                    if (memorizing[0] && payload.get() == 1) {
+                        best[0] = Math.max(best[0], position + 1);
+                    }
+                    break;
+                case SESSION_END:
+                    if (memorizing[0]) {
+                        best[0] = Math.max(best[0], payload.getLong());
+                    }
+                    memorizing[0] = false;
+                    break;
+                case PERSONAL_BEST:
+                    best[0] = Math.max(best[0], payload.getInt());
+                    break;
+                default:
+                    break;
+            }
+        });
+
+        if (good < channel.size()) {
+            channel.truncate(good);
+        }
+        channel.position(good);
+        committed = good;
+        return (int) Math.min(Integer.MAX_VALUE, best[0]);
+    }
+
+    /**
+     * Reads the whole records of a journal file, starting at an offset that
+     * a previous read returned
+     *
+     * @param file the journal file
+     * @param from the offset to start at, or 0 to start at the beginning
+     * @param visitor the visitor to call for each record
+     * @return the offset just after the last whole record
+     * @throws IOException if the file is not a journal
+     */
+    public static long read(File file, long from, RecordVisitor visitor)
+            throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(HEADER_SIZE);
+            in.read(magic, 0);
+            magic.flip();
+            if (magic.remaining() < HEADER_SIZE || magic.getInt() != MAGIC) {
+                throw new IOException(file + " is not a session journal");
+            }
+            return scan(in, Math.max(HEADER_SIZE, from), visitor);
+        }
+    }
+
+    /**
+     * Visits the whole records of a journal, stopping at the first torn or
+     * corrupt one
+     *
+     * @param channel the channel of the journal
+     * @param from the offset of the first record to visit
+     * @param visitor the visitor to call for each record
+     * @return the offset just after the last whole record
+     * @throws IOException the standard IOException reasons
+     */
+    private static long scan(FileChannel channel, long from,
+            RecordVisitor visitor) throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(1 << 16);
+        in.flip();
+        CRC32 crc = new CRC32();
+        byte[] r = new byte[255 + RECORD_HEADER];
+        long pos = from, good = from;
+
+        while (true) {
+            if (in.remaining() < r.length + RECORD_TRAILER) {
+                in.compact();
+                int n;
+                while (in.hasRemaining() && (n = channel.read(in, pos)) > 0) {
+                    pos += n;
+                }
+                in.flip();
+            }
+            if (in.remaining() < RECORD_HEADER) {
+                return good;
+            }
+
+            in.mark();
+            byte type = in.get();
+            int length = in.get() & 0xFF;
+            if (in.remaining() < length + RECORD_TRAILER) {
+                return good;
+            }
+            in.reset();
+            in.get(r, 0, RECORD_HEADER + length);
+            crc.reset();
+            crc.update(r, 0, RECORD_HEADER + length);
+            if (in.getInt() != (int) crc.getValue()) {
+                return good;
+            }
+            good += RECORD_HEADER + length + RECORD_TRAILER;
+
+            visitor.visit(type, ByteBuffer.wrap(r, RECORD_HEADER, length)
+                    .slice());
+        }
+    }
+
+    /**
+     * Visits the records of a journal
+     */
+    @FunctionalInterface
+    public interface RecordVisitor {
+
+        /**
+         * Visits a record
+         *
+         * @param type the type of the record
+         * @param payload the payload of the record
+         */
+        void visit(byte type, ByteBuffer payload);
+    }
+}
@@ -0,0 +1,545 @@
+package com.github.leftisttachyon;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * A compact recording of every key typed in a session, for replaying it
+ * exactly as it happened. Each key is one varint holding the milliseconds
+ * since the previous key, whether the key was right, and the digit in four
+ * bits, so most keys take two bytes. Every INDEX_INTERVAL keys, a sparse
+ * index entry remembers where the decoder was, so seeking only decodes from
+ * the nearest entry before the target.
+ *
+ * @author Jed Wang
+ */
+public final class SessionRecording {
+
+    /**
+     * The magic number at the start of every recording ("PIR1")
+     */
+    public static final int MAGIC = 0x50495231;
+
+    /**
+     * The extension of recording files
+     */
+    public static final String EXTENSION = ".pirec";
+
+    /**
+     * The number of keys between index entries
+     */
+    private static final int INDEX_INTERVAL = 256;
+
+    /**
+     * The size of the file header: magic, exploring, start time, start
+     * position, key count and index count
+     */
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 8 + 4 + 4;
+
+    /**
+     * The size of each index entry: time, byte offset, key number and
+     * position
+     */
+    private static final int ENTRY_SIZE = 8 + 4 + 4 + 8;
+
+    /**
+     * Whether the session explored instead of memorizing
+     */
+    private final boolean exploring;
+
+    /**
+     * When the session started, from System.currentTimeMillis()
+     */
+    private final long startMillis;
+
+    /**
+     * The position the session started at
+     */
+    private final long startPosition;
+
+    /**
+     * The number of keys recorded
+     */
+    private final int count;
+
+    /**
+     * The encoded keys
+     */
+    private final byte[] events;
+
+    /**
+     * The time of each index entry, in milliseconds since the first key
+     */
+    private final long[] indexTimes;
+
+    /**
+     * The offset into the encoded keys of each index entry
+     */
+    private final int[] indexOffsets;
+
+    /**
+     * The number of keys before each index entry
+     */
+    private final int[] indexKeys;
+
+    /**
+     * The position in the digits at each index entry
+     */
+    private final long[] indexPositions;
+
+    /**
+     * Creates a new SessionRecording.
+     *
+     * @param exploring whether the session explored
+     * @param startMillis when the session started
+     * @param startPosition the position the session started at
+     * @param count the number of keys recorded
+     * @param events the encoded keys
+     * @param indexTimes the time of each index entry
+     * @param indexOffsets the offset of each index entry
+     * @param indexKeys the number of keys before each index entry
+     * @param indexPositions the position at each index entry
+     */
+    private SessionRecording(boolean exploring, long startMillis,
+            long startPosition, int count, byte[] events, long[] indexTimes,
+            int[] indexOffsets, int[] indexKeys, long[] indexPositions) {
+        this.exploring = exploring;
+        this.startMillis = startMillis;
+        this.startPosition = startPosition;
+        this.count = count;
+        this.events = events;
+        this.indexTimes = indexTimes;
+        this.indexOffsets = indexOffsets;
+        this.indexKeys = indexKeys;
+        this.indexPositions = indexPositions;
+    }
+
+    /**
+     * Reads a recording from a file
+     *
+     * @param file the recording file
+     * @return the recording
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public static SessionRecording read(File file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a recording");
+            }
+            boolean exploring = in.get() != 0;
+            long startMillis = in.getLong();
+            long startPosition = in.getLong();
+            int count = in.getInt();
+            int entries = in.getInt();
+            if (count < 0 || entries < 0
+                    || entries > in.remaining() / ENTRY_SIZE) {
+                throw new IOException(file + " is damaged");
+            }
+
+            long[] times = new long[entries];
+            int[] offsets = new int[entries];
+            int[] keys = new int[entries];
+            long[] positions = new long[entries];
+            for (int i = 0; i < entries; i++) {
+                times[i] = in.getLong();
+                offsets[i] = in.getInt();
+                keys[i] = in.getInt();
+                positions[i] = in.getLong();
+            }
+            byte[] events = new byte[in.remaining()];
+            in.get(events);
+            return new SessionRecording(exploring, startMillis, startPosition,
+                    count, events, times, offsets, keys, positions);
+        } catch (RuntimeException ex) {
+            throw new IOException(file + " is damaged", ex);
+        }
+    }
+
+    /**
+     * Returns whether the session explored instead of memorizing
+     *
+     * @return whether the session explored
+     */
+    public boolean isExploring() {
+        return exploring;
+    }
+
+    /**
+     * Returns when the session started
+     *
+     * @return when the session started, from System.currentTimeMillis()
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Returns the position the session started at
+     *
+     * @return the position the session started at
+     */
+    public long getStartPosition() {
+        return startPosition;
+    }
+
+    /**
+     * Returns the number of keys recorded
+     *
+     * @return the number of keys recorded
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes the keys take
+     *
+     * @return the number of bytes the keys take
+     */
+    public int getEncodedSize() {
+        return events.length;
+    }
+
+    /**
+     * Returns a cursor at the first key typed at or after a time. Decoding
+     * starts from the index entry just before the time.
+     *
+     * @param millis the time, in milliseconds since the first key
+     * @return a cursor whose next() returns that key
+     */
+    public Cursor seek(long millis) {
+        // the last entry before the time; every key before it is earlier
+        int lo = 0, hi = indexTimes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (indexTimes[mid] < millis) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int e = lo - 1;
+
+        Cursor cursor = new Cursor();
+        if (e >= 0) {
+            cursor.offset = indexOffsets[e];
+            cursor.key = indexKeys[e];
+            cursor.time = indexTimes[e];
+            cursor.position = indexPositions[e];
+        }
+        while (cursor.peekTime() < millis) {
+            cursor.next();
+        }
+        return cursor;
+    }
+
+    /**
+     * Reads the keys of a recording in order
+     */
+    public final class Cursor {
+
+        /**
+         * The offset of the next key in the encoded keys
+         */
+        private int offset = 0;
+
+        /**
+         * The number of keys read
+         */
+        private int key = 0;
+
+        /**
+         * The time of the last key read, in milliseconds since the first
+         */
+        private long time = 0;
+
+        /**
+         * The position in the digits before the next key
+         */
+        private long position = startPosition;
+
+        /**
+         * The digit of the last key read
+         */
+        private int digit = -1;
+
+        /**
+         * Whether the last key read was right
+         */
+        private boolean correct = false;
+
+        /**
+         * Creates a new Cursor at the first key.
+         */
+        private Cursor() {
+        }
+
+        /**
+         * Returns whether there is another key
+         *
+         * @return whether there is another key
+         */
+        public boolean hasNext() {
+            return key < count;
+        }
+
+        /**
+         * Reads the next key
+         *
+         * @throws IllegalStateException if there are no more keys
+         */
+        public void next() {
+            if (!hasNext()) {
+                throw new IllegalStateException("no more keys");
+            }
+            long v = readVarLong();
+            time += v >>> 5;
+            correct = (v & 0x10) != 0;
+            digit = (int) (v & 0xF);
+            if (correct) {
+                position++;
+            }
+            key++;
+        }
+
+        /**
+         * Returns the time of the next key without reading it
+         *
+         * @return the time of the next key, in milliseconds since the first,
+         * or Long.MAX_VALUE if there are no more keys
+         */
+        public long peekTime() {
+            if (!hasNext()) {
+                return Long.MAX_VALUE;
+            }
+            int saved = offset;
+            long v = readVarLong();
+            offset = saved;
+            return time + (v >>> 5);
+        }
+
+        /**
+         * Returns the time of the last key read
+         *
+         * @return the time, in milliseconds since the first key
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the digit of the last key read
+         *
+         * @return the digit, 0-9, or 0-15 in hex
+         */
+        public int getDigit() {
+            return digit;
+        }
+
+        /**
+         * Returns whether the last key read was right
+         *
+         * @return whether the last key read was right
+         */
+        public boolean isCorrect() {
+            return correct;
+        }
+
+        /**
+         * Returns the position in the digits after the last key read
+         *
+         * @return the position in the digits
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * Returns the number of keys read
+         *
+         * @return the number of keys read
+         */
+        public int getKeyNumber() {
+            return key;
+        }
+
+        /**
+         * Reads a varint from the encoded keys
+         *
+         * @return the value read
+         */
+        private long readVarLong() {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = events[offset++];
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return v;
+        }
+    }
+
+    /**
+     * Records the keys of a session as they are typed
+     */
+    public static final class Recorder {
+
+        /**
+         * Whether the session explores
+         */
+        private final boolean exploring;
+
+        /**
+         * When the session started
+         */
+        private final long startMillis;
+
+        /**
+         * The position the session started at
+         */
+        private final long startPosition;
+
+        /**
+         * The encoded keys
+         */
+        private byte[] events = new byte[1024];
+
+        /**
+         * The number of bytes of encoded keys
+         */
+        private int length = 0;
+
+        /**
+         * The number of keys recorded
+         */
+        private int count = 0;
+
+        /**
+         * The index entries: time, offset, key number and position for
+         * each
+         */
+        private long[] index = new long[64];
+
+        /**
+         * The number of longs used in the index
+         */
+        private int indexLength = 0;
+
+        /**
+         * The System.nanoTime() of the first key, or 0 before it
+         */
+        private long firstNanos = 0;
+
+        /**
+         * The time of the last key, in milliseconds since the first
+         */
+        private long lastMillis = 0;
+
+        /**
+         * The position in the digits after the last key
+         */
+        private long position;
+
+        /**
+         * Creates a new Recorder.
+         *
+         * @param exploring whether the session explores
+         * @param startPosition the position the session starts at
+         */
+        public Recorder(boolean exploring, long startPosition) {
+            this.exploring = exploring;
+            this.startPosition = startPosition;
+            position = startPosition;
+            startMillis = System.currentTimeMillis();
+        }
+
+        /**
+         * Records a typed key
+         *
+         * @param digit the digit typed, 0-9, or 0-15 in hex
+         * @param correct whether it was right
+         * @param nanos when it was typed, from System.nanoTime()
+         */
+        public void record(int digit, boolean correct, long nanos) {
+            if (firstNanos == 0) {
+                firstNanos = nanos;
+            }
+            long millis = Math.max(lastMillis, (nanos - firstNanos) / 1_000_000);
+            if (count % INDEX_INTERVAL == 0) {
+                if (indexLength + 4 > index.length) {
+                    index = Arrays.copyOf(index, index.length * 2);
+                }
+                index[indexLength++] = lastMillis;
+                index[indexLength++] = length;
+                index[indexLength++] = count;
+                index[indexLength++] = position;
+            }
+
+            long v = (millis - lastMillis) << 5 | (correct ? 0x10 : 0)
+                    | (digit & 0xF);
+            if (length + 10 > events.length) {
+                events = Arrays.copyOf(events, events.length * 2);
+            }
+            while ((v & ~0x7FL) != 0) {
+                events[length++] = (byte) (v & 0x7F | 0x80);
+                v >>>= 7;
+            }
+            events[length++] = (byte) v;
+
+            lastMillis = millis;
+            if (correct) {
+                position++;
+            }
+            count++;
+        }
+
+        /**
+         * Returns the number of keys recorded
+         *
+         * @return the number of keys recorded
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Writes the recording to a file
+         *
+         * @param file the file to write to
+         * @throws IOException the standard IOException reasons
+         */
+        public void save(File file) throws IOException {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create " + parent);
+            }
+            int entries = indexLength / 4;
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file),
+                            HEADER_SIZE + entries * ENTRY_SIZE + length))) {
+                out.writeInt(MAGIC);
+                out.writeByte(exploring ? 1 : 0);
+                out.writeLong(startMillis);
+                out.writeLong(startPosition);
+                out.writeInt(count);
+                out.writeInt(entries);
+                for (int i = 0; i < indexLength; i += 4) {
+                    out.writeLong(index[i]);
+                    out.writeInt((int) index[i + 1]);
+                    out.writeInt((int) index[i + 2]);
+                    out.writeLong(index[i + 3]);
+                }
+                out.write(events, 0, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.github.leftisttachyon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Times memorizing sessions like a speed run. The clock starts at the first
+ * key and a split is taken every SPLIT correct digits, so the splits every
+ * 100 and 1000 digits are among them. Every time comes from when the keys
+ * were typed, as the GameEngine passes them on, never from when a frame is
+ * drawn, so how the frames are scheduled does not change the times.
+ * <p>
+ * The splits of the record run, the one that got the furthest and the
+ * faster one on ties, are kept to compare against: the difference at the
+ * current digit says how far ahead or behind the record the run is.
+ * Between two of its splits, the record is taken to have gone at an even
+ * pace. A SpeedRun is changed by the game thread and read by the thread
+ * that draws it, so every method is synchronized.
+ *
+ * @author Jed Wang
+ */
+public final class SpeedRun implements GameEngine.Listener {
+
+    /**
+     * The system property that turns on timed runs
+     */
+    public static final String SPEED_RUN_PROPERTY = "pimemorization.speedrun";
+
+    /**
+     * The magic number at the start of every split file ("PIS1")
+     */
+    public static final int MAGIC = 0x50495331;
+
+    /**
+     * The number of digits between two splits
+     */
+    public static final int SPLIT = 10;
+
+    /**
+     * The longest stretch of digits that splits are shown for; the
+     * stretches are SPLIT digits and every power of 10 times it up to this
+     */
+    public static final int LONGEST_SPLIT = 1000;
+
+    /**
+     * The splits of the record run, in nanoseconds since its first key
+     */
+    private long[] record = new long[0];
+
+    /**
+     * The splits of the current run, in nanoseconds since its first key
+     */
+    private long[] splits = new long[64];
+
+    /**
+     * The number of splits of the current run
+     */
+    private int splitCount = 0;
+
+    /**
+     * The number of correct digits of the current run
+     */
+    private long digits = 0;
+
+    /**
+     * When the first key of the current run was typed
+     */
+    private long first;
+
+    /**
+     * When the last correct key of the current run was typed
+     */
+    private long last;
+
+    /**
+     * Whether the current session is being timed
+     */
+    private boolean timing = false;
+
+    /**
+     * Whether the last run that ended beat the record
+     */
+    private boolean newRecord = false;
+
+    /**
+     * Counts the changes to this run, so that what is shown of it only has
+     * to be worked out again when it changes
+     */
+    private long version = 0;
+
+    /**
+     * Loads the record splits saved in a file. A missing or damaged file
+     * starts with no record.
+     *
+     * @param file the split file
+     * @return the loaded SpeedRun
+     */
+    public static SpeedRun load(File file) {
+        SpeedRun run = new SpeedRun();
+        if (!file.isFile()) {
+            return run;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != SPLIT) {
+                return run;
+            }
+            // a count the file is too short for is damage, not a record
+            int n = in.readInt();
+            if (n < 0 || n > (file.length() - 12) / 8) {
+                return run;
+            }
+            long[] splits = new long[n];
+            for (int i = 0; i < n; i++) {
+                splits[i] = in.readLong();
+            }
+            run.record = splits;
+            return run;
+        } catch (IOException ex) {
+            return new SpeedRun();
+        }
+    }
+
+    /**
+     * Saves the record splits to a file
+     *
+     * @param file the split file
+     * @throws IOException the standard IOException reasons
+     */
+    public synchronized void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(SPLIT);
+            out.writeInt(record.length);
+            for (long split : record) {
+                out.writeLong(split);
+            }
+        }
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file);
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not rename " + temp + " to " + file);
+        }
+    }
+
+    @Override
+    public synchronized void sessionStarted(GameEngine engine,
+            boolean exploring, long start) {
+        // only memorizing from the first digit is a run to compare
+        timing = !exploring;
+        splitCount = 0;
+        digits = 0;
+        first = last = 0;
+        newRecord = false;
+        version++;
+    }
+
+    @Override
+    public synchronized void keyJudged(GameEngine engine, long position,
+            int key, boolean correct, long time, long delta) {
+        if (!timing || !correct) {
+            return;
+        }
+        if (digits == 0) {
+            first = time;
+        }
+        last = time;
+        digits++;
+        if (digits % SPLIT == 0) {
+            if (splitCount == splits.length) {
+                splits = Arrays.copyOf(splits, splitCount * 2);
+            }
+            splits[splitCount++] = time - first;
+        }
+        version++;
+    }
+
+    @Override
+    public synchronized void sessionEnded(GameEngine engine,
+            boolean exploring, long start, long end) {
+        if (!timing) {
+            return;
+        }
+        timing = false;
+        if (splitCount > record.length || splitCount > 0
+                && splitCount == record.length
+                && splits[splitCount - 1] < record[splitCount - 1]) {
+            record = Arrays.copyOf(splits, splitCount);
+            newRecord = true;
+        }
+        version++;
+    }
+
+    /**
+     * Returns whether the current session is being timed
+     *
+     * @return whether the current session is being timed
+     */
+    public synchronized boolean isTiming() {
+        return timing;
+    }
+
+    /**
+     * Returns whether the last run that ended beat the record
+     *
+     * @return whether the last run beat the record
+     */
+    public synchronized boolean isNewRecord() {
+        return newRecord;
+    }
+
+    /**
+     * Returns a number that changes whenever this run changes
+     *
+     * @return the number of changes so far
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the number of correct digits of the current run
+     *
+     * @return the number of digits
+     */
+    public synchronized long getDigits() {
+        return digits;
+    }
+
+    /**
+     * Returns the time from the first key of the current run to its last
+     * correct key
+     *
+     * @return the time, in nanoseconds
+     */
+    public synchronized long getElapsed() {
+        return last - first;
+    }
+
+    /**
+     * Returns how fast the current run has gone, counting the digits typed
+     * after the first one, which started the clock
+     *
+     * @return the digits per second, or 0 before the second digit
+     */
+    public synchronized double getRate() {
+        return digits < 2 ? 0 : (digits - 1) * 1e9 / (last - first);
+    }
+
+    /**
+     * Returns how long the current run took to type a stretch of digits
+     *
+     * @param end the number of digits at the end of the stretch, a multiple
+     * of SPLIT
+     * @param length the number of digits in the stretch, a multiple of SPLIT
+     * @return the time, in nanoseconds, or -1 if the run has not got to the
+     * end of the stretch
+     */
+    public synchronized long getSegment(long end, int length) {
+        return segment(splits, splitCount, end, length);
+    }
+
+    /**
+     * Returns how long the record run took to type a stretch of digits
+     *
+     * @param end the number of digits at the end of the stretch, a multiple
+     * of SPLIT
+     * @param length the number of digits in the stretch, a multiple of SPLIT
+     * @return the time, in nanoseconds, or -1 if the record did not get to
+     * the end of the stretch
+     */
+    public synchronized long getRecordSegment(long end, int length) {
+        return segment(record, record.length, end, length);
+    }
+
+    /**
+     * Returns how far behind the record the current run is at its last
+     * correct digit
+     *
+     * @return the nanoseconds behind the record, less than 0 if ahead, or
+     * Long.MIN_VALUE if there is nothing to compare
+     */
+    public synchronized long getDelta() {
+        long recordTime = recordTime(digits);
+        return recordTime < 0 ? Long.MIN_VALUE : last - first - recordTime;
+    }
+
+    /**
+     * Returns the number of correct digits the record run got to
+     *
+     * @return the number of digits of the record, in whole splits
+     */
+    public synchronized long getRecordDigits() {
+        return (long) record.length * SPLIT;
+    }
+
+    /**
+     * Returns when the record run typed a digit, going at an even pace
+     * between two of its splits
+     *
+     * @param n the number of digits
+     * @return the nanoseconds since its first key, or -1 if the record did
+     * not get that far or there is no digit to compare
+     */
+    private long recordTime(long n) {
+        if (n < 1 || n > (long) record.length * SPLIT) {
+            return -1;
+        }
+        int split = (int) (n / SPLIT);
+        long from = split == 0 ? 1 : (long) split * SPLIT;
+        long fromTime = split == 0 ? 0 : record[split - 1];
+        if (n == from) {
+            return fromTime;
+        }
+        long to = (long) (split + 1) * SPLIT;
+        return fromTime + (record[split] - fromTime) * (n - from) / (to - from);
+    }
+
+    /**
+     * Returns how long a stretch of digits took
+     *
+     * @param splits the splits
+     * @param count the number of splits
+     * @param end the number of digits at the end of the stretch
+     * @param length the number of digits in the stretch
+     * @return the time, in nanoseconds, or -1 if the splits do not get to
+     * the end of the stretch
+     */
+    private static long segment(long[] splits, int count, long end,
+            int length) {
+        long to = end / SPLIT, from = (end - length) / SPLIT;
+        if (from < 0 || to < 1 || to > count) {
+            return -1;
+        }
+        return splits[(int) to - 1] - (from == 0 ? 0 : splits[(int) from - 1]);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d digits in %.3f s (%.2f digits/s)", digits,
+                (last - first) / 1e9, getRate());
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Records when each phase of startup finished, measured from when the JVM
+ * started, and can write them to a file when the JVM exits. With the
+ * EXIT_PROPERTY set, the game quits as soon as its first frame is up and its
+ * digits are loaded, which is how the class data sharing archive is trained
+ * and how cold starts are timed.
+ *
+ * @author Jed Wang
+ */
+public final class StartupLog {
+
+    /**
+     * The system property that names the file the phases are appended to;
+     * without it, or with an empty value, they are not written
+     */
+    public static final String LOG_FILE_PROPERTY = "pimemorization.startup";
+
+    /**
+     * The system property that makes the game quit once it has started
+     */
+    public static final String EXIT_PROPERTY = "pimemorization.exitAfterStartup";
+
+    /**
+     * The System.nanoTime() when this class was loaded
+     */
+    private static final long ORIGIN_NANOS = System.nanoTime();
+
+    /**
+     * The System.currentTimeMillis() when this class was loaded
+     */
+    private static final long ORIGIN_MILLIS = System.currentTimeMillis();
+
+    /**
+     * The names of the phases, in the order they finished
+     */
+    private static final List<String> phases = new ArrayList<>();
+
+    /**
+     * When each phase finished, from System.nanoTime()
+     */
+    private static long[] times = new long[16];
+
+    /**
+     * No instances
+     */
+    private StartupLog() {
+    }
+
+    /**
+     * Records that a phase finished. Only the first time each phase is
+     * marked counts.
+     *
+     * @param phase the name of the phase
+     */
+    public static synchronized void mark(String phase) {
+        if (phases.contains(phase)) {
+            return;
+        }
+        if (phases.size() == times.length) {
+            times = Arrays.copyOf(times, times.length * 2);
+        }
+        times[phases.size()] = System.nanoTime();
+        phases.add(phase);
+        StartupLog.class.notifyAll();
+    }
+
+    /**
+     * Waits until every one of the given phases has finished
+     *
+     * @param names the names of the phases
+     * @throws InterruptedException if the wait is interrupted
+     */
+    public static synchronized void await(String... names)
+            throws InterruptedException {
+        while (!phases.containsAll(Arrays.asList(names))) {
+            StartupLog.class.wait();
+        }
+    }
+
+    /**
+     * Writes the phases to a file, appending to it so that starts with
+     * different settings can be compared
+     *
+     * @param file the file to write to
+     * @throws IOException the standard IOException reasons
+     */
+    public static synchronized void dump(File file) throws IOException {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        double jvmToOrigin = ORIGIN_MILLIS - runtime.getStartTime();
+        try (PrintWriter out = new PrintWriter(new FileOutputStream(file,
+                true))) {
+            out.println("# startup " + new Date(ORIGIN_MILLIS) + ", java "
+                    + System.getProperty("java.version") + ", flags "
+                    + runtime.getInputArguments());
+            out.printf("%10.1f ms  jvm started main%n", jvmToOrigin);
+            for (int i = 0; i < phases.size(); i++) {
+                out.printf("%10.1f ms  %s%n",
+                        jvmToOrigin + (times[i] - ORIGIN_NANOS) / 1e6,
+                        phases.get(i));
+            }
+            out.println();
+        }
+    }
+
+    /**
+     * Dumps the phases when the JVM exits, to the file named by the
+     * LOG_FILE_PROPERTY, if it is set
+     */
+    public static void dumpOnExit() {
+        String name = System.getProperty(LOG_FILE_PROPERTY, "");
+        if (name.isEmpty()) {
+            return;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                dump(new File(name));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }, "Startup log dump"));
+    }
+}
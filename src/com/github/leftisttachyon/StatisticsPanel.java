@@ -0,0 +1,176 @@
+package com.github.leftisttachyon;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+
+/**
+ * A JPanel that shows the statistics of the digits being memorized: how
+ * often each digit appears overall and in the block of the current
+ * position, the longest run of one digit, and the runs and repeated
+ * patterns around the current position. The statistics are computed in
+ * the background by a DigitStatistics, which caches them by block.
+ *
+ * @author Jed Wang
+ */
+public final class StatisticsPanel extends JPanel {
+
+    /**
+     * How many digits on either side of the current position are looked at
+     */
+    private static final int RADIUS = 50;
+
+    /**
+     * The shortest run around the current position that is shown
+     */
+    private static final int MIN_RUN = 3;
+
+    /**
+     * The longest repeated pattern around the current position that is
+     * shown
+     */
+    private static final int MAX_PATTERN = 3;
+
+    /**
+     * Computes the statistics
+     */
+    private final DigitStatistics statistics = new DigitStatistics();
+
+    /**
+     * Runs the scans, one at a time
+     */
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(
+            r -> {
+                Thread t = new Thread(r, "Digit statistics");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+
+    /**
+     * Where the statistics are shown
+     */
+    private final JTextArea text;
+
+    /**
+     * Creates a new StatisticsPanel.
+     */
+    public StatisticsPanel() {
+        super(new BorderLayout());
+
+        text = new JTextArea("Reading the digits...");
+        text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        text.setEditable(false);
+        text.setFocusable(false);
+        add(new JScrollPane(text), BorderLayout.CENTER);
+
+        setPreferredSize(new Dimension(320, 150));
+    }
+
+    /**
+     * Computes the statistics of some digits around a position in the
+     * background and shows them. May be called from any thread.
+     *
+     * @param source the digits, the same ones every time
+     * @param position the zero-based current position
+     */
+    public void show(DigitSource source, long position) {
+        worker.execute(() -> {
+            String report;
+            try {
+                report = report(source, position);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+                report = "Could not compute the statistics: " + ex;
+            }
+            String shown = report;
+            SwingUtilities.invokeLater(() -> {
+                text.setText(shown);
+                text.setCaretPosition(0);
+            });
+        });
+    }
+
+    /**
+     * Shows a message instead of statistics. May be called from any thread.
+     *
+     * @param message the message
+     */
+    public void showMessage(String message) {
+        SwingUtilities.invokeLater(() -> text.setText(message));
+    }
+
+    /**
+     * Computes the statistics and writes them up
+     *
+     * @param source the digits
+     * @param position the zero-based current position
+     * @return the report
+     */
+    private String report(DigitSource source, long position) {
+        long time = System.nanoTime();
+        DigitStatistics.Summary all = statistics.scan(source);
+        time = System.nanoTime() - time;
+        position = Math.max(0, Math.min(source.length() - 1, position));
+        long number = position / DigitStatistics.BLOCK_SIZE;
+        DigitStatistics.Summary block = statistics.block(source, number);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Digits 1 to %,d (%,d ms)%n", all.getLength(),
+                time / 1_000_000));
+        sb.append(String.format("digit %12s %8s  block %d%n", "count",
+                "share", number + 1));
+        for (int d = 0; d < all.getRadix(); d++) {
+            sb.append(String.format("  %c   %12s %7.3f%% %7.3f%%%n",
+                    digit(d), String.format("%,d", all.getCount(d)),
+                    100 * all.getFrequency(d), 100 * block.getFrequency(d)));
+        }
+
+        DigitStatistics.Run longest = all.getLongestRun();
+        if (longest != null) {
+            sb.append(String.format("Longest run: %d %c's at digit %,d%n",
+                    longest.getLength(), digit(longest.getDigit()),
+                    longest.getStart() + 1));
+        }
+
+        sb.append(String.format("Within %d of digit %,d:%n", RADIUS,
+                position + 1));
+        List<DigitStatistics.Run> runs = DigitStatistics.runsAround(source,
+                position, RADIUS, MIN_RUN);
+        if (runs.isEmpty()) {
+            sb.append(String.format("  no runs of %d or more%n", MIN_RUN));
+        }
+        for (DigitStatistics.Run run : runs) {
+            sb.append(String.format("  %d %c's at digit %,d%n",
+                    run.getLength(), digit(run.getDigit()),
+                    run.getStart() + 1));
+        }
+        for (int length = 1; length <= MAX_PATTERN; length++) {
+            DigitStatistics.Pattern p = DigitStatistics.mostRepeatedAround(
+                    source, position, RADIUS, length);
+            if (p != null) {
+                sb.append(String.format("  %s appears %d times, first at "
+                        + "digit %,d%n", p.getDigits(), p.getCount(),
+                        p.getStart() + 1));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a digit as a character
+     *
+     * @param d the digit
+     * @return '0'-'9', or 'A'-'F'
+     */
+    private static char digit(int d) {
+        return Character.toUpperCase(Character.forDigit(d, 16));
+    }
+}
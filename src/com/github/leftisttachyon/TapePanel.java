@@ -0,0 +1,288 @@
+package com.github.leftisttachyon;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+
+/**
+ * A JPanel that shows every key typed in the current attempt as a tape of
+ * rows, in chunks of 10, with the wrong keys in red. The keys are kept as
+ * bytes with a bitset of the wrong ones, and only the rows inside the clip
+ * are drawn, so a repaint costs the same at 100,000 keys as at 10.
+ *
+ * @author Jed Wang
+ */
+public final class TapePanel extends JPanel {
+
+    /**
+     * The number of keys in each row
+     */
+    private static final int COLUMNS = 50;
+
+    /**
+     * The number of keys in each chunk of a row
+     */
+    private static final int CHUNK = 10;
+
+    /**
+     * The font keys are drawn in
+     */
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 14);
+
+    /**
+     * The color of the position at the start of each row
+     */
+    private static final Color LABEL = new Color(150, 150, 150);
+
+    /**
+     * The color behind wrong keys
+     */
+    private static final Color WRONG = new Color(255, 190, 190);
+
+    /**
+     * The keys typed in the attempt; guarded by this panel
+     */
+    private byte[] keys = new byte[1024];
+
+    /**
+     * Which of the keys were wrong; guarded by this panel
+     */
+    private final BitSet errors = new BitSet();
+
+    /**
+     * The position that the first key of each row was typed at; guarded by
+     * this panel
+     */
+    private long[] rowPositions = new long[32];
+
+    /**
+     * The number of keys typed in the attempt; guarded by this panel
+     */
+    private int count = 0;
+
+    /**
+     * Whether an update of the tape is waiting to run on the EDT
+     */
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+
+    /**
+     * The scroll pane the tape is in
+     */
+    private final JScrollPane scroll;
+
+    /**
+     * The rows of keys
+     */
+    private final Tape tape;
+
+    /**
+     * Creates a new TapePanel.
+     */
+    public TapePanel() {
+        super(new BorderLayout());
+
+        tape = new Tape();
+        scroll = new JScrollPane(tape,
+                JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
+                JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        scroll.getVerticalScrollBar().setUnitIncrement(tape.lineHeight);
+        add(scroll, BorderLayout.CENTER);
+
+        setPreferredSize(new Dimension(tape.getPreferredSize().width + 30,
+                tape.lineHeight * 5 + 10));
+    }
+
+    /**
+     * Clears the tape for a new attempt. May be called from any thread.
+     *
+     * @param start the position the attempt starts at
+     */
+    public void start(long start) {
+        synchronized (this) {
+            count = 0;
+            errors.clear();
+            rowPositions[0] = start;
+        }
+        update();
+    }
+
+    /**
+     * Adds a key to the tape. May be called from any thread.
+     *
+     * @param key the key that was typed
+     * @param correct whether it was right
+     * @param position the position it was typed at
+     */
+    public void append(int key, boolean correct, long position) {
+        synchronized (this) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+            }
+            if (count % COLUMNS == 0) {
+                int row = count / COLUMNS;
+                if (row == rowPositions.length) {
+                    rowPositions = Arrays.copyOf(rowPositions, row * 2);
+                }
+                rowPositions[row] = position;
+            }
+            if (!correct) {
+                errors.set(count);
+            }
+            keys[count++] = (byte) key;
+        }
+        update();
+    }
+
+    /**
+     * Returns the number of keys on the tape
+     *
+     * @return the number of keys
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Resizes and repaints the tape on the EDT, following the newest keys if
+     * the tape was scrolled to the end. Updates asked for while one is
+     * waiting are folded into it.
+     */
+    private void update() {
+        if (updatePending.getAndSet(true)) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            updatePending.set(false);
+            Rectangle view = scroll.getViewport().getViewRect();
+            boolean following = view.y + view.height
+                    >= tape.getHeight() - tape.lineHeight;
+            tape.revalidate();
+            tape.repaint();
+            if (following) {
+                // after the revalidation queued above has resized the tape
+                SwingUtilities.invokeLater(() -> {
+                    int height = tape.getPreferredSize().height;
+                    tape.scrollRectToVisible(new Rectangle(0,
+                            height - tape.lineHeight, 1, tape.lineHeight));
+                });
+            }
+        });
+    }
+
+    /**
+     * The component that draws the rows. Only the rows inside the clip are
+     * drawn.
+     */
+    private final class Tape extends JComponent {
+
+        /**
+         * The width of a key, in pixels
+         */
+        final int cellWidth;
+
+        /**
+         * The height of a row, in pixels
+         */
+        final int lineHeight;
+
+        /**
+         * The distance from the top of a row to the baseline of its text
+         */
+        final int ascent;
+
+        /**
+         * The width of the position at the start of each row
+         */
+        final int labelWidth;
+
+        /**
+         * Where in a row each key is drawn
+         */
+        final int[] columnX = new int[COLUMNS];
+
+        /**
+         * A row of keys, as characters to draw
+         */
+        private final char[] row = new char[COLUMNS];
+
+        /**
+         * Creates a new Tape.
+         */
+        Tape() {
+            FontMetrics metrics = getFontMetrics(FONT);
+            cellWidth = metrics.charWidth('0');
+            lineHeight = metrics.getHeight();
+            ascent = metrics.getAscent();
+            labelWidth = metrics.stringWidth("000000000 ");
+            for (int col = 0; col < COLUMNS; col++) {
+                columnX[col] = labelWidth + col * cellWidth
+                        + col / CHUNK * cellWidth;
+            }
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            int rows;
+            synchronized (TapePanel.this) {
+                rows = Math.max(1, (count + COLUMNS - 1) / COLUMNS);
+            }
+            return new Dimension(columnX[COLUMNS - 1] + 2 * cellWidth,
+                    rows * lineHeight);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) {
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            }
+            g.setColor(Color.WHITE);
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+            g.setFont(FONT);
+
+            int firstRow = Math.max(0, clip.y / lineHeight);
+            int lastRow = (clip.y + clip.height - 1) / lineHeight;
+            synchronized (TapePanel.this) {
+                for (int r = firstRow; r <= lastRow; r++) {
+                    int from = r * COLUMNS;
+                    if (from >= count) {
+                        return;
+                    }
+                    int n = Math.min(COLUMNS, count - from);
+                    int y = r * lineHeight;
+
+                    g.setColor(LABEL);
+                    g.drawString(Long.toString(rowPositions[r] + 1), 0,
+                            y + ascent);
+
+                    for (int i = errors.nextSetBit(from); i >= 0
+                            && i < from + n; i = errors.nextSetBit(i + 1)) {
+                        g.setColor(WRONG);
+                        g.fillRect(columnX[i - from], y, cellWidth,
+                                lineHeight);
+                    }
+
+                    g.setColor(Color.BLACK);
+                    for (int col = 0; col < n; col++) {
+                        row[col] = (char) keys[from + col];
+                    }
+                    for (int col = 0; col < n; col += CHUNK) {
+                        g.drawChars(row, col, Math.min(CHUNK, n - col),
+                                columnX[col], y + ascent);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.github.leftisttachyon;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the DenseDigitSource
+ *
+ * @author Jed Wang
+ */
+public class DenseDigitSourceTest {
+
+    /**
+     * Where the digit files are written
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Makes random digit values
+     *
+     * @param count the number of digits
+     * @param seed the seed of the digits
+     * @return the digit values
+     */
+    private static byte[] digits(int count, long seed) {
+        Random random = new Random(seed);
+        byte[] digits = new byte[count];
+        for (int i = 0; i < count; i++) {
+            digits[i] = (byte) random.nextInt(10);
+        }
+        return digits;
+    }
+
+    /**
+     * Spells digit values out in ASCII, the way a digit file does, with a
+     * decimal point and a line break that the conversion has to skip
+     *
+     * @param digits the digit values
+     * @return the ASCII digit file
+     */
+    private static byte[] ascii(byte[] digits) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < digits.length; i++) {
+            builder.append((char) ('0' + digits[i]));
+            if (i == 0) {
+                builder.append('.');
+            } else if (i % 100 == 0) {
+                builder.append('\n');
+            }
+        }
+        return builder.toString().getBytes();
+    }
+
+    /**
+     * Converts digit values into a dense file and maps it
+     *
+     * @param digits the digit values
+     * @return the mapped dense file
+     * @throws IOException the standard IOException reasons
+     */
+    private DenseDigitSource convert(byte[] digits) throws IOException {
+        File dense = new File(folder.getRoot(),
+                digits.length + DenseDigitSource.EXTENSION);
+        assertEquals(digits.length, DenseDigitSource.convert(
+                new ByteArrayInputStream(ascii(digits)), dense));
+        return new DenseDigitSource(dense);
+    }
+
+    /**
+     * Tests that digits come back as they went in, whether the last word is
+     * full or padded
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        int perWord = DenseDigitSource.DIGITS_PER_WORD;
+        for (int count : new int[]{1, perWord - 1, perWord, perWord + 1,
+            10 * perWord + 7}) {
+            byte[] digits = digits(count, count);
+            DenseDigitSource source = convert(digits);
+            assertTrue(source.verify());
+            assertEquals(count, source.length());
+            for (int i = 0; i < count; i++) {
+                assertEquals("digit " + i + " of " + count, digits[i],
+                        source.digitAt(i));
+            }
+            assertArrayEquals(digits, source.copyRange(0, count));
+        }
+    }
+
+    /**
+     * Tests decoding ranges that start and end inside words, into the
+     * middle of an array, including one longer than a chunk of words
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Test
+    public void testUnalignedDecode() throws IOException {
+        byte[] digits = digits(50_000, 3);
+        DenseDigitSource source = convert(digits);
+        Random random = new Random(4);
+        for (int trial = 0; trial < 200; trial++) {
+            int start = random.nextInt(digits.length);
+            int length = trial == 0 ? digits.length - start
+                    : random.nextInt(Math.min(100, digits.length - start) + 1);
+            byte[] out = new byte[length + 6];
+            source.decode(start, out, 3, length);
+            assertArrayEquals("from " + start + " for " + length,
+                    Arrays.copyOfRange(digits, start, start + length),
+                    Arrays.copyOfRange(out, 3, 3 + length));
+        }
+    }
+
+    /**
+     * Tests that open() converts a dense file again when its words do not
+     * match the checksum
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Test
+    public void testOpenReconvertsDamagedFile() throws IOException {
+        byte[] digits = digits(1000, 5);
+        File file = folder.newFile("digits.txt");
+        Files.write(file.toPath(), ascii(digits));
+        assertArrayEquals(digits,
+                DenseDigitSource.open(file).copyRange(0, digits.length));
+
+        File dense = DenseDigitSource.fileFor(file);
+        try (RandomAccessFile raf = new RandomAccessFile(dense, "rw")) {
+            raf.seek(DenseDigitSource.HEADER_SIZE + 8);
+            int b = raf.read();
+            raf.seek(DenseDigitSource.HEADER_SIZE + 8);
+            raf.write(b ^ 1);
+        }
+        dense.setLastModified(file.lastModified() + 1000);
+        assertFalse(new DenseDigitSource(dense).verify());
+
+        DenseDigitSource source = DenseDigitSource.open(file);
+        assertTrue(source.verify());
+        assertArrayEquals(digits, source.copyRange(0, digits.length));
+    }
+}
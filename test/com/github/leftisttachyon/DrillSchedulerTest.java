@@ -0,0 +1,109 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the DrillScheduler
+ *
+ * @author Jed Wang
+ */
+public class DrillSchedulerTest {
+
+    /**
+     * Where the drill files are written
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Checks that the chunk served next is the one due first, the weaker
+     * one on ties, by comparing it with every chunk
+     *
+     * @param drills the scheduler
+     */
+    private static void assertHeapOrder(DrillScheduler drills) {
+        int first = 0;
+        for (int c = 1; c < drills.size(); c++) {
+            if (drills.getDue(c) < drills.getDue(first)
+                    || drills.getDue(c) == drills.getDue(first)
+                    && drills.getEase(c) < drills.getEase(first)) {
+                first = c;
+            }
+        }
+        int next = drills.next(Long.MAX_VALUE, 0, 0);
+        assertEquals(drills.getDue(first), drills.getDue(next));
+        assertEquals(drills.getEase(first), drills.getEase(next), 0);
+        assertFalse(drills.isDue(drills.getDue(first) - 1));
+        assertTrue(drills.isDue(drills.getDue(first)));
+    }
+
+    /**
+     * Tests that the most overdue chunk is served after every grade, and
+     * after saving and loading
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Test
+    public void testHeapOrderAfterGrade() throws IOException {
+        DrillScheduler drills = new DrillScheduler(10);
+        Random random = new Random(161803);
+        long now = 1_000_000_000_000L;
+        for (int c = 0; c < 300; c++) {
+            if (!drills.isDue(now)) {
+                assertEquals(c, drills.next(now, 10_000, 1));
+            }
+            drills.grade(c, random.nextInt(6), now);
+            assertEquals(c + 1, drills.size());
+            assertHeapOrder(drills);
+            now += TimeUnit.MINUTES.toMillis(random.nextInt(30));
+        }
+        for (int i = 0; i < 2000; i++) {
+            // mostly the chunk that is served, sometimes any chunk
+            int chunk = random.nextInt(4) == 0
+                    ? random.nextInt(drills.size())
+                    : drills.next(Long.MAX_VALUE, 0, 0);
+            drills.grade(chunk, random.nextInt(6), now);
+            assertHeapOrder(drills);
+            now += TimeUnit.MINUTES.toMillis(random.nextInt(120));
+        }
+
+        File file = folder.newFile("drills.dat");
+        drills.save(file);
+        DrillScheduler loaded = DrillScheduler.load(file, 10);
+        assertEquals(drills.size(), loaded.size());
+        for (int c = 0; c < drills.size(); c++) {
+            assertEquals(drills.getDue(c), loaded.getDue(c));
+            assertEquals(drills.getEase(c), loaded.getEase(c), 0);
+        }
+        assertHeapOrder(loaded);
+    }
+
+    /**
+     * Tests that new chunks are only served within the known digits, while
+     * the session may still introduce some, and never before a due chunk
+     */
+    @Test
+    public void testNewChunks() {
+        DrillScheduler drills = new DrillScheduler(10);
+        long now = 1_000_000_000_000L;
+        assertEquals(-1, drills.next(now, 9, 5));
+        assertEquals(-1, drills.next(now, 100, 0));
+        assertEquals(0, drills.next(now, 10, 1));
+
+        drills.grade(0, 0, now);
+        assertEquals(1, drills.next(now, 100, 1));
+        assertEquals(-1, drills.next(now, 100, 0));
+        long later = drills.getDue(0);
+        assertEquals(0, drills.next(later, 100, 1));
+    }
+}
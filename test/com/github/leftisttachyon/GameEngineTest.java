@@ -0,0 +1,70 @@
+package com.github.leftisttachyon;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the GameEngine
+ *
+ * @author Jed Wang
+ */
+public class GameEngineTest {
+
+    /**
+     * The digits to play with
+     */
+    private static final DigitSource DIGITS = new DigitSource() {
+        @Override
+        public long length() {
+            return 100;
+        }
+
+        @Override
+        public int digitAt(long index) {
+            return (int) (index % 10);
+        }
+    };
+
+    /**
+     * Tests that restarting the clock after a mistake keeps the time until
+     * then out of the next key's delta
+     */
+    @Test
+    public void testRestartClock() {
+        GameEngine engine = new GameEngine(DIGITS, 0);
+        List<Long> deltas = new ArrayList<>();
+        engine.addListener(new GameEngine.Listener() {
+            @Override
+            public void keyJudged(GameEngine engine, long position, int key,
+                    boolean correct, long time, long delta) {
+                deltas.add(delta);
+            }
+
+            @Override
+            public void mistake(GameEngine engine, long position,
+                    char expected) {
+                // a dialog is up from 1000 to 5000
+                engine.restartClock(5000);
+            }
+        });
+        engine.answer(true);
+        engine.explore(0);
+
+        engine.key('0', 100);
+        engine.key('9', 1000);
+        engine.key('1', 2000);
+        engine.key('2', 5300);
+        engine.key('3', 5500);
+
+        assertEquals(5, deltas.size());
+        assertEquals(0, (long) deltas.get(0));
+        assertEquals(900, (long) deltas.get(1));
+        // typed before the dialog was dismissed
+        assertEquals(0, (long) deltas.get(2));
+        assertEquals(300, (long) deltas.get(3));
+        assertEquals(200, (long) deltas.get(4));
+    }
+}
@@ -0,0 +1,93 @@
+package com.github.leftisttachyon;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the KeyPressQueue
+ *
+ * @author Jed Wang
+ */
+public class KeyPressQueueTest {
+
+    /**
+     * Tests that presses come out in order as the ring wraps around many
+     * times, and that presses that do not fit are dropped and counted
+     */
+    @Test
+    public void testWraparound() {
+        KeyPressQueue queue = new KeyPressQueue(5);
+        int[] keys = new int[3];
+        long[] times = new long[3];
+        Random random = new Random(42);
+        int written = 0, read = 0;
+        long dropped = 0;
+        for (int round = 0; round < 1000; round++) {
+            for (int n = random.nextInt(10); n > 0; n--) {
+                if (queue.offer(written, 1000L * written)) {
+                    written++;
+                } else {
+                    // the capacity is rounded up to 8
+                    assertEquals(8, written - read);
+                    dropped++;
+                }
+            }
+            assertEquals(written - read, queue.size());
+            assertEquals(dropped, queue.getDropped());
+
+            int n = queue.poll(keys, times);
+            assertEquals(Math.min(3, written - read), n);
+            for (int j = 0; j < n; j++, read++) {
+                assertEquals(read, keys[j]);
+                assertEquals(1000L * read, times[j]);
+            }
+        }
+        assertTrue(dropped > 0);
+
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertEquals(0, queue.poll(keys, times));
+        assertTrue(queue.offer(-1, -1));
+        assertEquals(1, queue.poll(keys, times));
+        assertEquals(-1, keys[0]);
+    }
+
+    /**
+     * Tests that a consumer taking presses gets every one a producer on
+     * another thread offers, in order, as the ring wraps around
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    @Test
+    public void testTakeAcrossThreads() throws InterruptedException {
+        int count = 200_000;
+        KeyPressQueue queue = new KeyPressQueue(16);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                while (!queue.offer(i, i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        int[] keys = new int[7];
+        long[] times = new long[7];
+        int read = 0;
+        while (read < count) {
+            int n = queue.take(keys, times);
+            assertTrue(n > 0);
+            for (int j = 0; j < n; j++, read++) {
+                assertEquals(read, keys[j]);
+                assertEquals(read, times[j]);
+            }
+        }
+        producer.join();
+        assertEquals(0, queue.size());
+        assertFalse(producer.isAlive());
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.leftisttachyon;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the PackedDigitSource
+ *
+ * @author Jed Wang
+ */
+public class PackedDigitSourceTest {
+
+    /**
+     * Where the digit files are written
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Spells random digit values out in ASCII, with the decimal point and
+     * line breaks of a digit file
+     *
+     * @param digits where to put the digit values
+     * @return the ASCII digit file
+     */
+    private static byte[] ascii(byte[] digits) {
+        Random random = new Random(digits.length);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < digits.length; i++) {
+            digits[i] = (byte) random.nextInt(10);
+            builder.append((char) ('0' + digits[i]));
+            if (i == 0) {
+                builder.append('.');
+            } else if (i % 100 == 0) {
+                builder.append('\n');
+            }
+        }
+        return builder.toString().getBytes();
+    }
+
+    /**
+     * Tests that both nibbles of every byte come back as they went in, for
+     * an even and an odd number of digits, from every start
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (int count : new int[]{1, 2, 999, 1000}) {
+            byte[] digits = new byte[count];
+            File packed = new File(folder.getRoot(),
+                    count + PackedDigitSource.EXTENSION);
+            assertEquals(count, PackedDigitSource.pack(
+                    new ByteArrayInputStream(ascii(digits)), packed));
+
+            PackedDigitSource source = new PackedDigitSource(packed);
+            assertEquals(count, source.length());
+            for (int i = 0; i < count; i++) {
+                assertEquals("digit " + i + " of " + count, digits[i],
+                        source.digitAt(i));
+            }
+            for (int start = 0; start < Math.min(count, 4); start++) {
+                for (int length = 0; start + length <= count
+                        && length < 8; length++) {
+                    assertArrayEquals(Arrays.copyOfRange(digits, start,
+                            start + length), source.copyRange(start, length));
+                }
+                assertArrayEquals(Arrays.copyOfRange(digits, start, count),
+                        source.copyRange(start, count - start));
+            }
+        }
+    }
+
+    /**
+     * Tests that open() packs a digit file next to it and reads it back
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Test
+    public void testOpen() throws IOException {
+        byte[] digits = new byte[501];
+        File file = folder.newFile("digits.txt");
+        Files.write(file.toPath(), ascii(digits));
+
+        assertArrayEquals(digits, PackedDigitSource.open(file)
+                .copyRange(0, digits.length));
+        assertArrayEquals(digits, PackedDigitSource.open(file)
+                .copyRange(0, digits.length));
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Tests the PositionIndex
+ *
+ * @author Jed Wang
+ */
+public class PositionIndexTest {
+
+    /**
+     * Random digits to index
+     */
+    private static final byte[] DIGITS = new byte[200_000];
+
+    static {
+        Random random = new Random(271828);
+        for (int i = 0; i < DIGITS.length; i++) {
+            DIGITS[i] = (byte) random.nextInt(10);
+        }
+    }
+
+    /**
+     * The digits, as a DigitSource
+     */
+    private static final DigitSource SOURCE = new DigitSource() {
+        @Override
+        public long length() {
+            return DIGITS.length;
+        }
+
+        @Override
+        public int digitAt(long index) {
+            return DIGITS[(int) index];
+        }
+    };
+
+    /**
+     * Where the index is written
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Finds the first occurrences of a sequence by checking every position
+     *
+     * @param sequence the values of the digits to look for
+     * @param max the maximum number of occurrences to return
+     * @return the zero-based positions of the first occurrences, in order
+     */
+    private static long[] scan(byte[] sequence, int max) {
+        long[] found = new long[max];
+        int n = 0;
+        for (int pos = 0; pos + sequence.length <= DIGITS.length && n < max;
+                pos++) {
+            if (Arrays.equals(sequence, Arrays.copyOfRange(DIGITS, pos,
+                    pos + sequence.length))) {
+                found[n++] = pos;
+            }
+        }
+        return Arrays.copyOf(found, n);
+    }
+
+    /**
+     * Tests that sequences shorter than, as long as and longer than k are
+     * found where a scan finds them, including at the very end
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Test
+    public void testFindMatchesScan() throws IOException {
+        PositionIndex index = PositionIndex.open(
+                new File(folder.getRoot(), "digits.txt"), SOURCE);
+        Random random = new Random(1);
+        for (int length = 1; length <= 9; length++) {
+            for (int trial = 0; trial < 20; trial++) {
+                byte[] sequence;
+                if (trial % 2 == 0) {
+                    sequence = new byte[length];
+                    for (int i = 0; i < length; i++) {
+                        sequence[i] = (byte) random.nextInt(10);
+                    }
+                } else {
+                    int from = trial == 1 ? DIGITS.length - length
+                            : random.nextInt(DIGITS.length - length + 1);
+                    sequence = Arrays.copyOfRange(DIGITS, from, from + length);
+                }
+                int max = trial < 10 ? 10 : 1000;
+                assertArrayEquals(Arrays.toString(sequence),
+                        scan(sequence, max), index.find(sequence, max));
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.leftisttachyon;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the RecitationVerifier
+ *
+ * @author Jed Wang
+ */
+public class RecitationVerifierTest {
+
+    /**
+     * Random digits to check recitations against
+     */
+    private static final byte[] DIGITS = new byte[5000];
+
+    static {
+        Random random = new Random(314159);
+        for (int i = 0; i < DIGITS.length; i++) {
+            DIGITS[i] = (byte) random.nextInt(10);
+        }
+    }
+
+    /**
+     * The digits, as a DigitSource
+     */
+    private static final DigitSource SOURCE = new DigitSource() {
+        @Override
+        public long length() {
+            return DIGITS.length;
+        }
+
+        @Override
+        public int digitAt(long index) {
+            return DIGITS[(int) index];
+        }
+    };
+
+    /**
+     * Returns the first digits with some of them skipped
+     *
+     * @param length the number of digits to recite from
+     * @param skipEvery how often a digit is skipped
+     * @return the recitation
+     */
+    private static byte[] skipping(int length, int skipEvery) {
+        byte[] recited = new byte[length];
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            if (i % skipEvery != skipEvery / 2) {
+                recited[n++] = DIGITS[i];
+            }
+        }
+        return Arrays.copyOf(recited, n);
+    }
+
+    /**
+     * Tests that skips adding up to more than the band are all found, and
+     * that the digits after them still count as correct
+     */
+    @Test
+    public void testManySkips() {
+        byte[] recited = skipping(1000, 50);
+        RecitationVerifier.Result result
+                = RecitationVerifier.verify(SOURCE, 0, recited);
+
+        assertEquals(20, result.getMistakes().size());
+        for (RecitationVerifier.Mistake m : result.getMistakes()) {
+            assertEquals(RecitationVerifier.Kind.MISSING, m.getKind());
+        }
+        assertEquals(recited.length, result.getCorrect());
+    }
+
+    /**
+     * Tests that skipping more digits than are left in the source leaves
+     * the rest of the recitation extra
+     */
+    @Test
+    public void testPastTheEnd() {
+        byte[] recited = Arrays.copyOf(skipping(DIGITS.length, 100),
+                DIGITS.length - 50 + 3);
+        RecitationVerifier.Result result
+                = RecitationVerifier.verify(SOURCE, 0, recited);
+
+        long extra = result.getMistakes().stream().filter(
+                m -> m.getKind() == RecitationVerifier.Kind.EXTRA).count();
+        assertEquals(3, extra);
+        assertEquals(50, result.getMistakes().size() - extra);
+    }
+
+    /**
+     * Tests the summary of a result
+     */
+    @Test
+    public void testToString() {
+        byte[] recited = Arrays.copyOf(DIGITS, 100);
+        recited[40] = (byte) ((recited[40] + 1) % 10);
+
+        assertEquals("99 of 100 digits correct, 1 mistake", RecitationVerifier
+                .verify(SOURCE, 0, recited).toString());
+        assertEquals("100 of 100 digits correct, 0 mistakes",
+                RecitationVerifier.verify(SOURCE, 0,
+                        Arrays.copyOf(DIGITS, 100)).toString());
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the SessionJournal
+ *
+ * @author Jed Wang
+ */
+public class SessionJournalTest {
+
+    /**
+     * Where the journals are written
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that a file that is not a journal is refused and left alone
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Test
+    public void testNotAJournal() throws IOException {
+        File file = folder.newFile("sessions.journal");
+        byte[] garbage = "not a journal at all".getBytes("US-ASCII");
+        Files.write(file.toPath(), garbage);
+
+        try {
+            new SessionJournal(file).close();
+            fail("opened a file that is not a journal");
+        } catch (IOException expected) {
+            // the file is left as it was
+        }
+        assertArrayEquals(garbage, Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Tests that the PB is recovered when a journal is opened again
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Test
+    public void testReopen() throws IOException {
+        File file = new File(folder.getRoot(), "sessions.journal");
+        SessionJournal journal = new SessionJournal(file);
+        journal.sessionStarted(false, 0);
+        journal.sessionEnded(42);
+        journal.close();
+
+        journal = new SessionJournal(file);
+        assertEquals(42, journal.getRecoveredPB());
+        journal.close();
+    }
+
+    /**
+     * Tests that a failed write stops the journal, is handed to the failure
+     * handler and keeps later records out
+     *
+     * @throws Exception if the failure is not reported in time
+     */
+    @Test
+    public void testWriteFailure() throws Exception {
+        File file = new File(folder.getRoot(), "sessions.journal");
+        CompletableFuture<IOException> failure = new CompletableFuture<>();
+        SessionJournal journal = new SessionJournal(file, failure::complete);
+        long committed = journal.getCommittedOffset();
+
+        // interrupting the writer closes its channel under it
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if ("Session journal writer".equals(t.getName())) {
+                t.interrupt();
+            }
+        }
+        journal.sessionStarted(false, 0);
+        failure.get(10, TimeUnit.SECONDS);
+
+        assertTrue(journal.hasFailed());
+        journal.keystroke(0, '3', true, 0);
+        journal.personalBest(1);
+        journal.close();
+        assertEquals(committed, journal.getCommittedOffset());
+        assertEquals(committed, file.length());
+    }
+}
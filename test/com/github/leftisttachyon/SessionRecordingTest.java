@@ -0,0 +1,110 @@
+package com.github.leftisttachyon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the SessionRecording
+ *
+ * @author Jed Wang
+ */
+public class SessionRecordingTest {
+
+    /**
+     * Where the recordings are written
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that a saved recording reads back key for key, and that seeking
+     * to any time lands on the first key at or after it, on either side of
+     * every index entry
+     *
+     * @throws IOException the standard IOException reasons
+     */
+    @Test
+    public void testSeekAcrossIndex() throws IOException {
+        int count = 1000;
+        long start = 3;
+        long[] times = new long[count];
+        int[] digits = new int[count];
+        boolean[] correct = new boolean[count];
+        long[] positions = new long[count + 1];
+
+        Random random = new Random(314);
+        SessionRecording.Recorder recorder
+                = new SessionRecording.Recorder(false, start);
+        positions[0] = start;
+        for (int i = 0; i < count; i++) {
+            // same-millisecond keys, and gaps that take several varint bytes
+            int gap = i % 97 == 0 ? 100_000 : random.nextInt(4) * 150;
+            times[i] = (i == 0 ? 0 : times[i - 1] + gap);
+            digits[i] = random.nextInt(10);
+            correct[i] = random.nextInt(5) != 0;
+            positions[i + 1] = positions[i] + (correct[i] ? 1 : 0);
+            recorder.record(digits[i], correct[i],
+                    1_000_000_000L + times[i] * 1_000_000);
+        }
+        File file = new File(folder.getRoot(),
+                "session" + SessionRecording.EXTENSION);
+        recorder.save(file);
+
+        SessionRecording recording = SessionRecording.read(file);
+        assertEquals(count, recording.size());
+        assertEquals(start, recording.getStartPosition());
+        assertFalse(recording.isExploring());
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && times[i] > times[i - 1] + 1) {
+                assertSeek(recording, times[i - 1] + 1, times, digits,
+                        correct, positions);
+            }
+            assertSeek(recording, times[i], times, digits, correct,
+                    positions);
+        }
+        assertSeek(recording, times[count - 1] + 1, times, digits, correct,
+                positions);
+    }
+
+    /**
+     * Seeks in a recording and checks the key the cursor lands on
+     *
+     * @param recording the recording
+     * @param millis the time to seek to
+     * @param times the time of every key recorded
+     * @param digits the digit of every key recorded
+     * @param correct whether every key recorded was right
+     * @param positions the position before every key recorded, and after
+     * the last
+     */
+    private static void assertSeek(SessionRecording recording, long millis,
+            long[] times, int[] digits, boolean[] correct, long[] positions) {
+        int expected = 0;
+        while (expected < times.length && times[expected] < millis) {
+            expected++;
+        }
+        SessionRecording.Cursor cursor = recording.seek(millis);
+        assertEquals("seek to " + millis, expected, cursor.getKeyNumber());
+        assertEquals("seek to " + millis, positions[expected],
+                cursor.getPosition());
+        if (expected == times.length) {
+            assertFalse(cursor.hasNext());
+            return;
+        }
+        assertTrue(cursor.hasNext());
+        cursor.next();
+        assertEquals(times[expected], cursor.getTime());
+        assertEquals(digits[expected], cursor.getDigit());
+        assertEquals(correct[expected], cursor.isCorrect());
+        assertEquals(positions[expected + 1], cursor.getPosition());
+    }
+}